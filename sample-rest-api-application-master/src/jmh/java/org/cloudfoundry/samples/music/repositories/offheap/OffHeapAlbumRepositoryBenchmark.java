@@ -0,0 +1,71 @@
+package org.cloudfoundry.samples.music.repositories.offheap;
+
+import org.cloudfoundry.samples.music.domain.Album;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookup latency of {@link OffHeapAlbumRepository} by id and by artist and title, over
+ * catalogs of different sizes. Lookups cycle through every album so the slabs are not
+ * served from a single cache line.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OffHeapAlbumRepositoryBenchmark {
+
+    @Param({"1000", "100000"})
+    public int albums;
+
+    private OffHeapAlbumRepository repository;
+
+    private String[] ids;
+
+    private int next;
+
+    @Setup
+    public void setUp() {
+        repository = new OffHeapAlbumRepository(new OffHeapAlbumProperties());
+        List<Album> catalog = new ArrayList<>(albums);
+        for (int i = 0; i < albums; i++) {
+            Album album = new Album("Title " + i, "Artist " + (i % 100), "1973", "Rock");
+            album.setTrackCount(10);
+            catalog.add(album);
+        }
+        repository.saveAll(catalog);
+        ids = catalog.stream().map(Album::getId).toArray(String[]::new);
+    }
+
+    @Benchmark
+    public Optional<Album> findById() {
+        return repository.findById(ids[next++ % ids.length]);
+    }
+
+    @Benchmark
+    public boolean existsById() {
+        return repository.existsById(ids[next++ % ids.length]);
+    }
+
+    @Benchmark
+    public boolean existsByArtistAndTitle() {
+        int i = next++ % ids.length;
+        return repository.existsByArtistAndTitle("Artist " + (i % 100), "Title " + i);
+    }
+}
@@ -0,0 +1,64 @@
+package org.cloudfoundry.samples.music.repositories.redis;
+
+import org.cloudfoundry.samples.music.domain.Album;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Album value encoding cost of the original {@link Jackson2JsonRedisSerializer} against
+ * {@link AlbumRedisSerializer} in its binary layout. The encoded size of each, which is
+ * what drives Redis memory use, is pinned by
+ * {@code AlbumRedisSerializerTest#shouldKeepBenchmarkAlbumValueSizes}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AlbumRedisSerializerBenchmark {
+
+    @Param({"jackson", "binary"})
+    public String serializer;
+
+    private RedisSerializer<Album> albumSerializer;
+
+    private Album album;
+
+    private byte[] value;
+
+    @Setup
+    public void setUp() {
+        albumSerializer = "binary".equals(serializer)
+                ? new AlbumRedisSerializer(AlbumRedisSerializer.Codec.BINARY)
+                : new Jackson2JsonRedisSerializer<>(Album.class);
+
+        album = new Album("The Dark Side of the Moon", "Pink Floyd", "1973", "Rock");
+        album.setId("5f1d7c2ab3e94c0d8a6f41e27b9c03d5");
+        album.setTrackCount(10);
+        value = albumSerializer.serialize(album);
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return albumSerializer.serialize(album);
+    }
+
+    @Benchmark
+    public Album deserialize() {
+        return albumSerializer.deserialize(value);
+    }
+}
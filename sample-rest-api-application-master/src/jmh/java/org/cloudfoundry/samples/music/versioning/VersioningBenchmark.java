@@ -0,0 +1,146 @@
+package org.cloudfoundry.samples.music.versioning;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.cloudfoundry.samples.music.domain.Album;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.MediaType;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the versioning layer per request and response body, for album lists of
+ * different sizes with either the default no-op chain or a chain that rewrites every
+ * album. The request and response body advices only delegate to {@link VersioningManager},
+ * so reads are measured through the manager plus the tree-binding converter and writes
+ * through the manager plus serialization. Run with {@code ./gradlew jmh}, which adds the
+ * GC profiler for allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VersioningBenchmark {
+
+    private static final Type ALBUM_LIST_TYPE = new TypeReference<List<Album>>() {}.getType();
+
+    @Param({"1", "100", "10000"})
+    public int albumCount;
+
+    @Param({"noop", "mutating"})
+    public String chain;
+
+    private ObjectMapper objectMapper;
+
+    private VersioningManager versioningManager;
+
+    private VersioningJackson2HttpMessageConverter converter;
+
+    private List<Album> albums;
+
+    private byte[] requestBody;
+
+    private HttpHeaders headers;
+
+    @Setup
+    public void setUp() throws Exception {
+        objectMapper = new ObjectMapper();
+        List<VersionHandler> handlers = "mutating".equals(chain)
+                ? Arrays.asList(new DefaultVersionHandler(), new RenamingVersionHandler())
+                : Collections.singletonList(new DefaultVersionHandler());
+        versioningManager = new VersioningManager(objectMapper, handlers);
+        converter = new VersioningJackson2HttpMessageConverter(objectMapper);
+
+        albums = new ArrayList<>(albumCount);
+        for (int i = 0; i < albumCount; i++) {
+            Album album = new Album("Title " + i, "Artist " + (i % 97), String.valueOf(1960 + i % 60), "Rock");
+            album.setId(String.format("%032x", i));
+            album.setTrackCount(8 + i % 12);
+            albums.add(album);
+        }
+
+        headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.set(VersioningManager.VERSION_HEADER_NAME, "2017-01-01");
+
+        // requests arrive in the shape the same client version is sent
+        requestBody = objectMapper.writeValueAsBytes(versioningManager.beforeBodyWrite(albums, headers));
+    }
+
+    @Benchmark
+    public Object beforeBodyRead() throws Exception {
+        HttpInputMessage inputMessage = versioningManager.beforeBodyRead(new BytesInputMessage(requestBody, headers), ALBUM_LIST_TYPE);
+        return converter.read(ALBUM_LIST_TYPE, null, inputMessage);
+    }
+
+    @Benchmark
+    public byte[] beforeBodyWrite() throws Exception {
+        return objectMapper.writeValueAsBytes(versioningManager.beforeBodyWrite(albums, headers));
+    }
+
+    private static class BytesInputMessage implements HttpInputMessage {
+
+        private final byte[] body;
+
+        private final HttpHeaders headers;
+
+        BytesInputMessage(byte[] body, HttpHeaders headers) {
+            this.body = body;
+            this.headers = headers;
+        }
+
+        @Override
+        public InputStream getBody() {
+            return new ByteArrayInputStream(body);
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+    }
+
+    // Renames artist to performer on the way out and back on the way in, for every album.
+    private static class RenamingVersionHandler implements VersionHandler {
+
+        @Override
+        public void beforeBodyRead(JsonNode bodyJsonNode, Type targetType, LocalDate localDate) {
+            for (JsonNode albumJsonNode : bodyJsonNode) {
+                ObjectNode albumObjectNode = (ObjectNode) albumJsonNode;
+                albumObjectNode.set("artist", albumObjectNode.remove("performer"));
+            }
+        }
+
+        @Override
+        public void beforeBodyWrite(JsonNode bodyJsonNode, Class<?> returnType, LocalDate localDate) {
+            for (JsonNode albumJsonNode : bodyJsonNode) {
+                ObjectNode albumObjectNode = (ObjectNode) albumJsonNode;
+                albumObjectNode.set("performer", albumObjectNode.remove("artist"));
+            }
+        }
+    }
+}
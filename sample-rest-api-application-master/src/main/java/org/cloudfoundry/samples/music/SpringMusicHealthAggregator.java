@@ -34,6 +34,10 @@ public class SpringMusicHealthAggregator implements HealthAggregator   {
         } else if( environment.acceptsProfiles("mongodb")) {
             excluded.add("redis");
             excluded.add("db");
+        } else if( environment.acceptsProfiles("offheap", "compact", "file")) {
+            excluded.add("mongo");
+            excluded.add("redis");
+            excluded.add("db");
         } else {
             excluded.add("mongo");
             excluded.add("redis");
@@ -0,0 +1,47 @@
+package org.cloudfoundry.samples.music.config;
+
+import org.cloudfoundry.samples.music.repositories.cache.InProcessInvalidationChannel;
+import org.cloudfoundry.samples.music.repositories.cache.InvalidationChannel;
+import org.cloudfoundry.samples.music.repositories.cache.NearCacheBeanPostProcessor;
+import org.cloudfoundry.samples.music.repositories.cache.NearCacheProperties;
+import org.cloudfoundry.samples.music.repositories.cache.RedisInvalidationChannel;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+@Configuration
+@ConditionalOnProperty(prefix = "albums.near-cache", name = "enabled", havingValue = "true")
+@EnableConfigurationProperties(NearCacheProperties.class)
+public class NearCacheConfig {
+
+    @Bean
+    public static NearCacheBeanPostProcessor nearCacheBeanPostProcessor() {
+        return new NearCacheBeanPostProcessor();
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "albums.near-cache", name = "invalidation", havingValue = "local", matchIfMissing = true)
+    public InvalidationChannel inProcessInvalidationChannel() {
+        return new InProcessInvalidationChannel();
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "albums.near-cache", name = "invalidation", havingValue = "redis")
+    public RedisMessageListenerContainer nearCacheListenerContainer(RedisConnectionFactory redisConnectionFactory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        return container;
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "albums.near-cache", name = "invalidation", havingValue = "redis")
+    public InvalidationChannel redisInvalidationChannel(RedisConnectionFactory redisConnectionFactory,
+                                                        RedisMessageListenerContainer nearCacheListenerContainer,
+                                                        NearCacheProperties properties) {
+        return new RedisInvalidationChannel(redisConnectionFactory, nearCacheListenerContainer, properties.getChannel());
+    }
+
+}
@@ -0,0 +1,20 @@
+package org.cloudfoundry.samples.music.config;
+
+import org.cloudfoundry.samples.music.repositories.writebehind.WriteBehindBeanPostProcessor;
+import org.cloudfoundry.samples.music.repositories.writebehind.WriteBehindProperties;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConditionalOnProperty(prefix = "albums.write-behind", name = "enabled", havingValue = "true")
+@EnableConfigurationProperties(WriteBehindProperties.class)
+public class WriteBehindConfig {
+
+    @Bean
+    public static WriteBehindBeanPostProcessor writeBehindBeanPostProcessor() {
+        return new WriteBehindBeanPostProcessor();
+    }
+
+}
@@ -6,12 +6,13 @@ import javax.sql.DataSource;
 
 public class AbstractLocalDataSourceConfig {
 
-    protected DataSource createDataSource(String jdbcUrl, String driverClass, String userName, String password) {
+    protected DataSource createDataSource(String jdbcUrl, String driverClass, String userName, String password,
+                                          DataSourcePoolConfigurer poolConfigurer) {
         BasicDataSource dataSource = new BasicDataSource();
         dataSource.setUrl(jdbcUrl);
         dataSource.setDriverClassName(driverClass);
         dataSource.setUsername(userName);
         dataSource.setPassword(password);
-        return dataSource;
+        return poolConfigurer.configure(dataSource, "local");
     }
 }
@@ -0,0 +1,19 @@
+package org.cloudfoundry.samples.music.config.data;
+
+import org.cloudfoundry.samples.music.domain.IdGenerator;
+import org.cloudfoundry.samples.music.repositories.compact.CompactAlbumRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+@Configuration
+@Profile("compact")
+public class CompactConfig {
+
+    @Bean
+    public CompactAlbumRepository compactRepository(@Value("${albums.id-generator:time-ordered}") String idGenerator) {
+        return new CompactAlbumRepository(IdGenerator.forName(idGenerator));
+    }
+
+}
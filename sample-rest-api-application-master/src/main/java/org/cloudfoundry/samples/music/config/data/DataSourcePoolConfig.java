@@ -0,0 +1,20 @@
+package org.cloudfoundry.samples.music.config.data;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+@Configuration
+@Profile({"mysql-local", "postgres-local", "mysql-cloud", "postgres-cloud", "oracle-cloud", "sqlserver-cloud"})
+@EnableConfigurationProperties({DataSourcePoolProperties.class, DataSourceReplicaProperties.class})
+public class DataSourcePoolConfig {
+
+    @Bean
+    public DataSourcePoolConfigurer dataSourcePoolConfigurer(DataSourcePoolProperties properties, DataSourceReplicaProperties replicaProperties,
+                                                             MeterRegistry meterRegistry) {
+        return new DataSourcePoolConfigurer(properties, replicaProperties, meterRegistry);
+    }
+
+}
@@ -0,0 +1,87 @@
+package org.cloudfoundry.samples.music.config.data;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.commons.dbcp2.BasicDataSource;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Applies {@link DataSourcePoolProperties} to a dbcp2 pool and wraps it in an
+ * {@link InstrumentedDataSource}, so local and cloud profiles pool and report the same way.
+ * With {@link DataSourceReplicaProperties#getUrls() replicas} configured, each replica is
+ * pooled the same way and read-only transactions are routed to them.
+ *
+ * <p>MySQL URLs get {@code useCursorFetch=true}: without it Connector/J ignores the fetch
+ * size and buffers whole result sets, so album streams would not be bounded.
+ */
+public class DataSourcePoolConfigurer {
+
+    private final DataSourcePoolProperties properties;
+
+    private final DataSourceReplicaProperties replicaProperties;
+
+    private final MeterRegistry meterRegistry;
+
+    public DataSourcePoolConfigurer(DataSourcePoolProperties properties, MeterRegistry meterRegistry) {
+        this(properties, new DataSourceReplicaProperties(), meterRegistry);
+    }
+
+    public DataSourcePoolConfigurer(DataSourcePoolProperties properties, DataSourceReplicaProperties replicaProperties,
+                                    MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.replicaProperties = replicaProperties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public DataSource configure(BasicDataSource primary, String poolName) {
+        DataSource pooledPrimary = pool(primary, poolName);
+        if (replicaProperties.getUrls().isEmpty()) {
+            return pooledPrimary;
+        }
+
+        List<DataSource> replicas = new ArrayList<>();
+        for (String url : replicaProperties.getUrls()) {
+            BasicDataSource replica = new BasicDataSource();
+            replica.setUrl(url);
+            replica.setDriverClassName(primary.getDriverClassName());
+            replica.setUsername(replicaProperties.getUsername() != null ? replicaProperties.getUsername() : primary.getUsername());
+            replica.setPassword(replicaProperties.getPassword() != null ? replicaProperties.getPassword() : primary.getPassword());
+            replica.setDefaultReadOnly(true);
+            replicas.add(pool(replica, poolName + "-replica-" + replicas.size()));
+        }
+        return new ReplicaRoutingDataSource(pooledPrimary, replicas, replicaProperties.getSelection(), replicaProperties.getPrimaryAfterWrite());
+    }
+
+    private DataSource pool(BasicDataSource dataSource, String poolName) {
+        dataSource.setUrl(withCursorFetch(dataSource.getUrl()));
+
+        int maxTotal = properties.resolveMaxTotal();
+        dataSource.setMaxTotal(maxTotal);
+        dataSource.setMaxIdle(maxTotal);
+        dataSource.setMinIdle(Math.min(properties.getMinIdle(), maxTotal));
+        dataSource.setMaxWaitMillis(properties.getMaxWait().toMillis());
+
+        dataSource.setPoolPreparedStatements(properties.isPoolPreparedStatements());
+        dataSource.setMaxOpenPreparedStatements(properties.getMaxOpenPreparedStatements());
+
+        // no validation query: dbcp2 falls back to Connection.isValid, which every driver here supports
+        dataSource.setValidationQuery(null);
+        dataSource.setValidationQueryTimeout((int) properties.getValidationTimeout().getSeconds());
+        dataSource.setTestOnBorrow(true);
+        dataSource.setTestWhileIdle(true);
+        dataSource.setTimeBetweenEvictionRunsMillis(properties.getEvictionInterval().toMillis());
+        dataSource.setMaxConnLifetimeMillis(properties.getMaxConnectionLifetime().toMillis());
+
+        return new InstrumentedDataSource(dataSource, poolName, meterRegistry);
+    }
+
+    // an explicit useCursorFetch in the URL is left as configured
+    static String withCursorFetch(String url) {
+        if (url == null || !url.startsWith("jdbc:mysql:") || url.contains("useCursorFetch=")) {
+            return url;
+        }
+        return url + (url.indexOf('?') < 0 ? "?" : "&") + "useCursorFetch=true";
+    }
+}
@@ -0,0 +1,105 @@
+package org.cloudfoundry.samples.music.config.data;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Connection pool settings shared by the local and cloud relational profiles, bound from
+ * {@code datasource.pool}.
+ */
+@ConfigurationProperties(prefix = "datasource.pool")
+public class DataSourcePoolProperties {
+
+    /** Maximum open connections; 0 derives it from the core count as {@code cores * 2 + 1}. */
+    private int maxTotal = 0;
+
+    /** Idle connections kept open between bursts. */
+    private int minIdle = 2;
+
+    /** How long a request waits for a free connection before failing. */
+    private Duration maxWait = Duration.ofSeconds(5);
+
+    /** Cache prepared statements per connection, so repeated repository queries skip re-parsing. */
+    private boolean poolPreparedStatements = true;
+
+    /** Prepared statements cached per connection. */
+    private int maxOpenPreparedStatements = 100;
+
+    /** Timeout of the JDBC 4 {@code isValid} check run on borrow and while idle. */
+    private Duration validationTimeout = Duration.ofSeconds(2);
+
+    /** Interval of the idle connection evictor, which also validates idle connections. */
+    private Duration evictionInterval = Duration.ofSeconds(30);
+
+    /** Connections older than this are closed instead of returned to the pool. */
+    private Duration maxConnectionLifetime = Duration.ofMinutes(30);
+
+    public int resolveMaxTotal() {
+        return maxTotal > 0 ? maxTotal : Runtime.getRuntime().availableProcessors() * 2 + 1;
+    }
+
+    public int getMaxTotal() {
+        return maxTotal;
+    }
+
+    public void setMaxTotal(int maxTotal) {
+        this.maxTotal = maxTotal;
+    }
+
+    public int getMinIdle() {
+        return minIdle;
+    }
+
+    public void setMinIdle(int minIdle) {
+        this.minIdle = minIdle;
+    }
+
+    public Duration getMaxWait() {
+        return maxWait;
+    }
+
+    public void setMaxWait(Duration maxWait) {
+        this.maxWait = maxWait;
+    }
+
+    public boolean isPoolPreparedStatements() {
+        return poolPreparedStatements;
+    }
+
+    public void setPoolPreparedStatements(boolean poolPreparedStatements) {
+        this.poolPreparedStatements = poolPreparedStatements;
+    }
+
+    public int getMaxOpenPreparedStatements() {
+        return maxOpenPreparedStatements;
+    }
+
+    public void setMaxOpenPreparedStatements(int maxOpenPreparedStatements) {
+        this.maxOpenPreparedStatements = maxOpenPreparedStatements;
+    }
+
+    public Duration getValidationTimeout() {
+        return validationTimeout;
+    }
+
+    public void setValidationTimeout(Duration validationTimeout) {
+        this.validationTimeout = validationTimeout;
+    }
+
+    public Duration getEvictionInterval() {
+        return evictionInterval;
+    }
+
+    public void setEvictionInterval(Duration evictionInterval) {
+        this.evictionInterval = evictionInterval;
+    }
+
+    public Duration getMaxConnectionLifetime() {
+        return maxConnectionLifetime;
+    }
+
+    public void setMaxConnectionLifetime(Duration maxConnectionLifetime) {
+        this.maxConnectionLifetime = maxConnectionLifetime;
+    }
+}
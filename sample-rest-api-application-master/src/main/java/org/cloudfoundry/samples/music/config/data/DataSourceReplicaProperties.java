@@ -0,0 +1,70 @@
+package org.cloudfoundry.samples.music.config.data;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read replicas of the relational database, bound from {@code datasource.replicas}. Each
+ * replica gets its own pool sized by {@link DataSourcePoolProperties}.
+ */
+@ConfigurationProperties(prefix = "datasource.replicas")
+public class DataSourceReplicaProperties {
+
+    /** JDBC URLs of the replicas; read-only transactions stay on the primary while empty. */
+    private List<String> urls = new ArrayList<>();
+
+    /** Replica user; the primary's user when not set. */
+    private String username;
+
+    /** Replica password; the primary's password when not set. */
+    private String password;
+
+    /** How a read-only transaction picks its replica. */
+    private ReplicaRoutingDataSource.Selection selection = ReplicaRoutingDataSource.Selection.ROUND_ROBIN;
+
+    /** How long read-only transactions stay on the primary after a write; should cover replica lag. */
+    private Duration primaryAfterWrite = Duration.ofSeconds(5);
+
+    public List<String> getUrls() {
+        return urls;
+    }
+
+    public void setUrls(List<String> urls) {
+        this.urls = urls;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    public void setPassword(String password) {
+        this.password = password;
+    }
+
+    public ReplicaRoutingDataSource.Selection getSelection() {
+        return selection;
+    }
+
+    public void setSelection(ReplicaRoutingDataSource.Selection selection) {
+        this.selection = selection;
+    }
+
+    public Duration getPrimaryAfterWrite() {
+        return primaryAfterWrite;
+    }
+
+    public void setPrimaryAfterWrite(Duration primaryAfterWrite) {
+        this.primaryAfterWrite = primaryAfterWrite;
+    }
+}
@@ -0,0 +1,23 @@
+package org.cloudfoundry.samples.music.config.data;
+
+import org.cloudfoundry.samples.music.domain.IdGenerator;
+import org.cloudfoundry.samples.music.repositories.file.FileAlbumProperties;
+import org.cloudfoundry.samples.music.repositories.file.FileAlbumRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+@Configuration
+@Profile("file")
+@EnableConfigurationProperties(FileAlbumProperties.class)
+public class FileConfig {
+
+    @Bean
+    public FileAlbumRepository fileRepository(FileAlbumProperties properties,
+                                              @Value("${albums.id-generator:time-ordered}") String idGenerator) {
+        return new FileAlbumRepository(properties, IdGenerator.forName(idGenerator));
+    }
+
+}
@@ -0,0 +1,92 @@
+package org.cloudfoundry.samples.music.config.data;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pooled data source that records how long callers wait for a connection.
+ *
+ * <p>Meters, tagged with {@code pool}:
+ * <ul>
+ * <li>{@code datasource.pool.acquire} - time spent in {@code getConnection}, tagged with
+ * {@code outcome} success or failure;</li>
+ * <li>{@code datasource.pool.pending} - callers currently inside {@code getConnection},
+ * i.e. the wait queue when the pool is exhausted;</li>
+ * <li>{@code datasource.pool.active}, {@code datasource.pool.idle} and
+ * {@code datasource.pool.max} - the dbcp2 pool state.</li>
+ * </ul>
+ */
+public class InstrumentedDataSource extends DelegatingDataSource implements AutoCloseable {
+
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private final Timer acquired;
+
+    private final Timer failed;
+
+    public InstrumentedDataSource(BasicDataSource pool, String poolName, MeterRegistry meterRegistry) {
+        super(pool);
+        this.acquired = acquireTimer(meterRegistry, poolName, "success");
+        this.failed = acquireTimer(meterRegistry, poolName, "failure");
+
+        Gauge.builder("datasource.pool.pending", pending, AtomicInteger::get)
+                .tag("pool", poolName).register(meterRegistry);
+        Gauge.builder("datasource.pool.active", pool, BasicDataSource::getNumActive)
+                .tag("pool", poolName).register(meterRegistry);
+        Gauge.builder("datasource.pool.idle", pool, BasicDataSource::getNumIdle)
+                .tag("pool", poolName).register(meterRegistry);
+        Gauge.builder("datasource.pool.max", pool, BasicDataSource::getMaxTotal)
+                .tag("pool", poolName).register(meterRegistry);
+    }
+
+    private static Timer acquireTimer(MeterRegistry meterRegistry, String poolName, String outcome) {
+        return Timer.builder("datasource.pool.acquire")
+                .description("Time spent waiting for a pooled connection")
+                .tag("pool", poolName)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return acquire(() -> super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return acquire(() -> super.getConnection(username, password));
+    }
+
+    private Connection acquire(Callable<Connection> connectionSource) throws SQLException {
+        long start = System.nanoTime();
+        pending.incrementAndGet();
+        try {
+            Connection connection = connectionSource.call();
+            acquired.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return connection;
+        } catch (SQLException | RuntimeException e) {
+            failed.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            throw e;
+        } catch (Exception e) {
+            failed.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            throw new SQLException(e);
+        } finally {
+            pending.decrementAndGet();
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        ((BasicDataSource) obtainTargetDataSource()).close();
+    }
+}
@@ -1,5 +1,8 @@
 package org.cloudfoundry.samples.music.config.data;
 
+import org.cloudfoundry.samples.music.repositories.mongodb.MongoAlbumIndexes;
+import org.cloudfoundry.samples.music.repositories.mongodb.MongoAlbumProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
@@ -8,6 +11,7 @@ import org.springframework.data.mongodb.core.MongoTemplate;
 
 @Configuration
 @Profile("mongodb")
+@EnableConfigurationProperties(MongoAlbumProperties.class)
 public class MongoConfig {
 
     @Bean
@@ -15,4 +19,9 @@ public class MongoConfig {
         return new MongoTemplate(mongoDbFactory);
     }
 
+    @Bean
+    public MongoAlbumIndexes mongoAlbumIndexes(MongoTemplate mongoTemplate, MongoAlbumProperties properties) {
+        return new MongoAlbumIndexes(mongoTemplate, properties);
+    }
+
 }
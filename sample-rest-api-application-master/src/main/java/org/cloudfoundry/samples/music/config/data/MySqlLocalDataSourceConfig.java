@@ -11,8 +11,8 @@ import javax.sql.DataSource;
 public class MySqlLocalDataSourceConfig extends AbstractLocalDataSourceConfig {
 
     @Bean
-    public DataSource dataSource() {
-        return createDataSource("jdbc:mysql://localhost/music", "com.mysql.jdbc.Driver", "", "");
+    public DataSource dataSource(DataSourcePoolConfigurer poolConfigurer) {
+        return createDataSource("jdbc:mysql://localhost/music", "com.mysql.jdbc.Driver", "", "", poolConfigurer);
     }
 
 }
@@ -0,0 +1,34 @@
+package org.cloudfoundry.samples.music.config.data;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.cloudfoundry.samples.music.domain.IdGenerator;
+import org.cloudfoundry.samples.music.repositories.offheap.OffHeapAlbumProperties;
+import org.cloudfoundry.samples.music.repositories.offheap.OffHeapAlbumRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+@Configuration
+@Profile("offheap")
+@EnableConfigurationProperties(OffHeapAlbumProperties.class)
+public class OffHeapConfig {
+
+    @Bean
+    public OffHeapAlbumRepository offHeapRepository(OffHeapAlbumProperties properties, MeterRegistry meterRegistry,
+                                                    @Value("${albums.id-generator:time-ordered}") String idGenerator) {
+        OffHeapAlbumRepository repository = new OffHeapAlbumRepository(properties, IdGenerator.forName(idGenerator));
+        Gauge.builder("albums.offheap.allocated", repository, OffHeapAlbumRepository::getAllocatedBytes)
+                .baseUnit("bytes")
+                .description("Direct memory held by the album slabs")
+                .register(meterRegistry);
+        Gauge.builder("albums.offheap.live", repository, OffHeapAlbumRepository::getLiveBytes)
+                .baseUnit("bytes")
+                .description("Bytes of current album records in the slabs")
+                .register(meterRegistry);
+        return repository;
+    }
+
+}
@@ -11,9 +11,9 @@ import javax.sql.DataSource;
 public class PostgresLocalDataSourceConfig extends AbstractLocalDataSourceConfig {
 
     @Bean
-    public DataSource dataSource() {
+    public DataSource dataSource(DataSourcePoolConfigurer poolConfigurer) {
         return createDataSource("jdbc:postgresql://localhost/music",
-                "org.postgresql.Driver", "postgres", "postgres");
+                "org.postgresql.Driver", "postgres", "postgres", poolConfigurer);
     }
 
 }
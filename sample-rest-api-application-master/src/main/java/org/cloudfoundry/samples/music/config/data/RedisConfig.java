@@ -1,33 +1,39 @@
 package org.cloudfoundry.samples.music.config.data;
 
 import org.cloudfoundry.samples.music.domain.Album;
+import org.cloudfoundry.samples.music.domain.IdGenerator;
+import org.cloudfoundry.samples.music.repositories.redis.AlbumRedisSerializer;
+import org.cloudfoundry.samples.music.repositories.redis.RedisAlbumProperties;
 import org.cloudfoundry.samples.music.repositories.redis.RedisAlbumRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
 @Configuration
 @Profile("redis")
+@EnableConfigurationProperties(RedisAlbumProperties.class)
 public class RedisConfig {
 
     @Bean
-    public RedisAlbumRepository redisRepository(RedisTemplate<String, Album> redisTemplate) {
-        return new RedisAlbumRepository(redisTemplate);
+    public RedisAlbumRepository redisRepository(RedisTemplate<String, Album> redisTemplate, RedisAlbumProperties properties,
+                                                @Value("${albums.id-generator:time-ordered}") String idGenerator) {
+        return new RedisAlbumRepository(redisTemplate, properties, IdGenerator.forName(idGenerator));
     }
 
     @Bean
-    public RedisTemplate<String, Album> redisTemplate(RedisConnectionFactory redisConnectionFactory) {
+    public RedisTemplate<String, Album> redisTemplate(RedisConnectionFactory redisConnectionFactory, RedisAlbumProperties properties) {
         RedisTemplate<String, Album> template = new RedisTemplate<>();
 
         template.setConnectionFactory(redisConnectionFactory);
 
         RedisSerializer<String> stringSerializer = new StringRedisSerializer();
-        RedisSerializer<Album> albumSerializer = new Jackson2JsonRedisSerializer<>(Album.class);
+        RedisSerializer<Album> albumSerializer = new AlbumRedisSerializer(properties.getCodec());
 
         template.setKeySerializer(stringSerializer);
         template.setValueSerializer(albumSerializer);
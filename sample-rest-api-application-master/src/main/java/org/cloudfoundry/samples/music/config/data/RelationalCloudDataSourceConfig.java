@@ -1,19 +1,24 @@
 package org.cloudfoundry.samples.music.config.data;
 
+import org.apache.commons.dbcp2.BasicDataSource;
 import org.springframework.cloud.config.java.AbstractCloudConfig;
+import org.springframework.cloud.service.relational.DataSourceConfig;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
 
 import javax.sql.DataSource;
+import java.util.Collections;
 
 @Configuration
 @Profile({"mysql-cloud", "postgres-cloud", "oracle-cloud", "sqlserver-cloud"})
 public class RelationalCloudDataSourceConfig extends AbstractCloudConfig {
 
     @Bean
-    public DataSource dataSource() {
-        return connectionFactory().dataSource();
+    public DataSource dataSource(DataSourcePoolConfigurer poolConfigurer) {
+        // the connector resolves URL, driver and credentials; pooling follows datasource.pool like the local profiles
+        DataSource dataSource = connectionFactory().dataSource(new DataSourceConfig(Collections.singletonList("BasicDbcp")));
+        return poolConfigurer.configure((BasicDataSource) dataSource, "cloud");
     }
 
 }
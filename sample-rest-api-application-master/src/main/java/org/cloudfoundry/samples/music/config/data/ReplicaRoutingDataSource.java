@@ -0,0 +1,204 @@
+package org.cloudfoundry.samples.music.config.data;
+
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends connections of read-only transactions to one of the replicas and everything else
+ * to the primary. A replica that cannot hand out a connection is skipped, and the primary
+ * is used once every replica has failed.
+ *
+ * <p>Transaction managers fetch a connection before the transaction is marked read-only,
+ * so the routing is behind a {@link LazyConnectionDataSourceProxy}: the physical
+ * connection, and with it the choice of database, is only made at the first statement.
+ *
+ * <p>For {@code primaryAfterWrite} after a read-write transaction of this instance starts
+ * or completes, read-only transactions stay on the primary too, so a list read right
+ * after a write neither misses it on a lagging replica nor gets cached without it.
+ *
+ * <p>Reads that outlive the method that starts them, such as album streams, cannot run in
+ * a Spring transaction and take a connection from {@link #getReadOnlyConnection()} instead.
+ */
+public class ReplicaRoutingDataSource extends LazyConnectionDataSourceProxy implements AutoCloseable {
+
+    public enum Selection {
+        ROUND_ROBIN, LEAST_BUSY
+    }
+
+    private final Router router;
+
+    public ReplicaRoutingDataSource(DataSource primary, List<? extends DataSource> replicas, Selection selection) {
+        this(primary, replicas, selection, Duration.ZERO);
+    }
+
+    public ReplicaRoutingDataSource(DataSource primary, List<? extends DataSource> replicas, Selection selection,
+                                    Duration primaryAfterWrite) {
+        this.router = new Router(primary, replicas, selection, primaryAfterWrite);
+        setTargetDataSource(router);
+        afterPropertiesSet();
+    }
+
+    /**
+     * A physical connection routed as a read-only transaction would be, for reads done
+     * outside any Spring transaction. The caller closes it.
+     */
+    public Connection getReadOnlyConnection() throws SQLException {
+        Connection connection = router.getReadOnlyConnection();
+        connection.setReadOnly(true);
+        return connection;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        router.close();
+    }
+
+    private static final class Router extends AbstractDataSource {
+
+        private final DataSource primary;
+
+        private final List<Replica> replicas = new ArrayList<>();
+
+        private final Selection selection;
+
+        private final AtomicInteger next = new AtomicInteger();
+
+        private final long primaryAfterWriteNanos;
+
+        private volatile long lastWrite;
+
+        Router(DataSource primary, List<? extends DataSource> replicas, Selection selection, Duration primaryAfterWrite) {
+            this.primary = primary;
+            for (DataSource replica : replicas) {
+                this.replicas.add(new Replica(replica));
+            }
+            this.selection = selection;
+            this.primaryAfterWriteNanos = primaryAfterWrite.toNanos();
+            this.lastWrite = System.nanoTime() - primaryAfterWriteNanos;
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            if (replicas.isEmpty()) {
+                return primary.getConnection();
+            }
+            if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+                if (TransactionSynchronizationManager.isActualTransactionActive()) {
+                    wrote();
+                }
+                return primary.getConnection();
+            }
+            return getReadOnlyConnection();
+        }
+
+        Connection getReadOnlyConnection() throws SQLException {
+            if (replicas.isEmpty() || System.nanoTime() - lastWrite < primaryAfterWriteNanos) {
+                return primary.getConnection();
+            }
+
+            int first = firstReplica();
+            for (int i = 0; i < replicas.size(); i++) {
+                Replica replica = replicas.get((first + i) % replicas.size());
+                try {
+                    return replica.getConnection();
+                } catch (SQLException e) {
+                    logger.warn("Read replica unavailable, trying the next one: " + e.getMessage());
+                }
+            }
+            return primary.getConnection();
+        }
+
+        // Replicas are pooled with their own credentials, so explicit ones go to the primary.
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return primary.getConnection(username, password);
+        }
+
+        // Replicas catch up after the commit, so the window restarts when it completes.
+        private void wrote() {
+            lastWrite = System.nanoTime();
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                    @Override
+                    public void afterCompletion(int status) {
+                        lastWrite = System.nanoTime();
+                    }
+                });
+            }
+        }
+
+        private int firstReplica() {
+            if (selection == Selection.LEAST_BUSY) {
+                int leastBusy = 0;
+                for (int i = 1; i < replicas.size(); i++) {
+                    if (replicas.get(i).inUse.get() < replicas.get(leastBusy).inUse.get()) {
+                        leastBusy = i;
+                    }
+                }
+                return leastBusy;
+            }
+            return Math.floorMod(next.getAndIncrement(), replicas.size());
+        }
+
+        void close() throws SQLException {
+            closeIfPossible(primary);
+            for (Replica replica : replicas) {
+                closeIfPossible(replica.dataSource);
+            }
+        }
+
+        private static void closeIfPossible(DataSource dataSource) throws SQLException {
+            if (dataSource instanceof AutoCloseable) {
+                try {
+                    ((AutoCloseable) dataSource).close();
+                } catch (SQLException | RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new SQLException("Could not close " + dataSource, e);
+                }
+            }
+        }
+    }
+
+    // Counts the connections borrowed from a replica until they are closed, for LEAST_BUSY.
+    private static final class Replica {
+
+        private final DataSource dataSource;
+
+        private final AtomicInteger inUse = new AtomicInteger();
+
+        Replica(DataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        Connection getConnection() throws SQLException {
+            Connection connection = dataSource.getConnection();
+            inUse.incrementAndGet();
+            AtomicBoolean closed = new AtomicBoolean();
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] {Connection.class},
+                    (proxy, method, args) -> {
+                        if ("close".equals(method.getName()) && closed.compareAndSet(false, true)) {
+                            inUse.decrementAndGet();
+                        }
+                        try {
+                            return method.invoke(connection, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getTargetException();
+                        }
+                    });
+        }
+    }
+}
@@ -18,8 +18,8 @@ public class Album {
 
     @Id
     @Column(length=40)
-    @GeneratedValue(generator="randomId")
-    @GenericGenerator(name="randomId", strategy="org.cloudfoundry.samples.music.domain.RandomIdGenerator")
+    @GeneratedValue(generator="albumId")
+    @GenericGenerator(name="albumId", strategy="org.cloudfoundry.samples.music.domain.AlbumIdentifierGenerator")
     @JsonSchemaInject(json = "{\"readOnly\": true}")
     private String id;
 
@@ -0,0 +1,41 @@
+package org.cloudfoundry.samples.music.domain;
+
+import org.hibernate.HibernateException;
+import org.hibernate.MappingException;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.Configurable;
+import org.hibernate.id.IdentifierGenerator;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+import java.io.Serializable;
+import java.util.Properties;
+
+/**
+ * Hibernate entry point for album ids. Hibernate creates this class itself, so the
+ * generator is picked from the {@code albums.id-generator} Hibernate setting, which
+ * application.yml passes through from the property of the same name. An album that already
+ * carries an id keeps it, so albums whose id was assigned before they reach the database
+ * (merged updates, write-behind flushes) are stored under that id.
+ */
+public class AlbumIdentifierGenerator implements IdentifierGenerator, Configurable {
+
+    public static final String GENERATOR_SETTING = "albums.id-generator";
+
+    private IdGenerator idGenerator = new TimeOrderedIdGenerator();
+
+    @Override
+    public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) throws MappingException {
+        Object setting = serviceRegistry.getService(ConfigurationService.class).getSettings().get(GENERATOR_SETTING);
+        idGenerator = IdGenerator.forName(setting == null ? null : setting.toString());
+    }
+
+    @Override
+    public Serializable generate(SharedSessionContractImplementor session, Object object) throws HibernateException {
+        if (object instanceof Album && ((Album) object).getId() != null) {
+            return ((Album) object).getId();
+        }
+        return idGenerator.generateId();
+    }
+}
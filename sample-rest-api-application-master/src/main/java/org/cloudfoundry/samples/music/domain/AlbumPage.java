@@ -0,0 +1,43 @@
+package org.cloudfoundry.samples.music.domain;
+
+import java.util.List;
+
+/**
+ * A single page of albums read in repository order, together with the position
+ * the next page should be read from. A {@code null} next position marks the last page.
+ */
+public class AlbumPage {
+
+    private final List<Album> albums;
+
+    private final String nextPosition;
+
+    public AlbumPage(List<Album> albums, String nextPosition) {
+        this.albums = albums;
+        this.nextPosition = nextPosition;
+    }
+
+    /**
+     * Builds a page keyed by album id from a result that was read with one extra
+     * row, so the presence of a next page is known without a count query.
+     */
+    public static AlbumPage fromIdOrderedProbe(List<Album> albums, int limit) {
+        if (albums.size() <= limit) {
+            return new AlbumPage(albums, null);
+        }
+        List<Album> page = albums.subList(0, limit);
+        return new AlbumPage(page, page.get(limit - 1).getId());
+    }
+
+    public List<Album> getAlbums() {
+        return albums;
+    }
+
+    public String getNextPosition() {
+        return nextPosition;
+    }
+
+    public boolean hasNext() {
+        return nextPosition != null;
+    }
+}
@@ -0,0 +1,41 @@
+package org.cloudfoundry.samples.music.domain;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+/**
+ * Outcome of one album in a batch request, reported at the album's position in the
+ * request array together with the status a single-album request would have returned.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchItemResult {
+
+    private int index;
+    private int status;
+    private Album album;
+    private List<ApiError> errors;
+
+    public BatchItemResult(int index, int status, Album album, List<ApiError> errors) {
+        this.index = index;
+        this.status = status;
+        this.album = album;
+        this.errors = errors;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public Album getAlbum() {
+        return album;
+    }
+
+    public List<ApiError> getErrors() {
+        return errors;
+    }
+}
@@ -0,0 +1,27 @@
+package org.cloudfoundry.samples.music.domain;
+
+/**
+ * Source of album ids, shared by the Hibernate id generator and the Redis repository.
+ */
+public interface IdGenerator {
+
+    String TIME_ORDERED = "time-ordered";
+
+    String RANDOM = "random";
+
+    String generateId();
+
+    /**
+     * Resolves the {@code albums.id-generator} setting: {@value #TIME_ORDERED} (the default)
+     * or {@value #RANDOM}.
+     */
+    static IdGenerator forName(String name) {
+        if (name == null || name.isEmpty() || TIME_ORDERED.equals(name)) {
+            return new TimeOrderedIdGenerator();
+        }
+        if (RANDOM.equals(name)) {
+            return new RandomIdGenerator();
+        }
+        throw new IllegalArgumentException("Unknown album id generator: " + name);
+    }
+}
@@ -1,18 +1,13 @@
 package org.cloudfoundry.samples.music.domain;
 
-import org.hibernate.HibernateException;
-import org.hibernate.engine.spi.SharedSessionContractImplementor;
-import org.hibernate.id.IdentifierGenerator;
-
-import java.io.Serializable;
 import java.util.UUID;
 
-public class RandomIdGenerator implements IdentifierGenerator {
-    @Override
-    public Serializable generate(SharedSessionContractImplementor session, Object object) throws HibernateException {
-        return generateId();
-    }
+/**
+ * Random version 4 UUIDs, the original album id format.
+ */
+public class RandomIdGenerator implements IdGenerator {
 
+    @Override
     public String generateId() {
         return UUID.randomUUID().toString();
     }
@@ -0,0 +1,48 @@
+package org.cloudfoundry.samples.music.domain;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * UUIDv7-style ids: 48 bits of Unix milliseconds, a 12-bit counter and 62 random bits.
+ * The random bits come from {@link ThreadLocalRandom}, so concurrent inserts never share
+ * a generator. Ids from one thread are strictly increasing: the counter starts at a random
+ * value below half its range each millisecond and, when it runs out, the timestamp moves
+ * ahead by one. Ids from different threads are ordered by millisecond. The canonical
+ * lowercase form sorts the same way as the ids, so new rows land at the right-hand end of
+ * a string primary-key index instead of at random pages.
+ */
+public class TimeOrderedIdGenerator implements IdGenerator {
+
+    private static final int COUNTER_BITS = 12;
+
+    private static final int MAX_COUNTER = (1 << COUNTER_BITS) - 1;
+
+    private static final ThreadLocal<State> STATE = ThreadLocal.withInitial(State::new);
+
+    @Override
+    public String generateId() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        State state = STATE.get();
+
+        long now = System.currentTimeMillis();
+        if (now > state.millis) {
+            state.millis = now;
+            state.counter = random.nextInt(MAX_COUNTER >> 1);
+        } else if (state.counter < MAX_COUNTER) {
+            state.counter++;
+        } else {
+            state.millis++;
+            state.counter = random.nextInt(MAX_COUNTER >> 1);
+        }
+
+        long mostSignificant = (state.millis << 16) | 0x7000L | state.counter;
+        long leastSignificant = (random.nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+        return new UUID(mostSignificant, leastSignificant).toString();
+    }
+
+    private static final class State {
+        private long millis;
+        private int counter;
+    }
+}
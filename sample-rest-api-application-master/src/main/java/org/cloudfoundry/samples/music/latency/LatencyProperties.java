@@ -0,0 +1,99 @@
+package org.cloudfoundry.samples.music.latency;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Simulated backend latency, configured per endpoint key under {@code latency.endpoints}.
+ * Endpoints without an entry respond without any delay.
+ */
+@Component
+@ConfigurationProperties(prefix = "latency")
+public class LatencyProperties {
+
+    public enum Distribution {
+        /** Always wait exactly {@code delay}. */
+        FIXED,
+        /** Wait uniformly between {@code delay - jitter} and {@code delay + jitter}. */
+        UNIFORM,
+        /** Wait {@code delay} plus a normally distributed offset with {@code jitter} as standard deviation. */
+        GAUSSIAN
+    }
+
+    private int schedulerThreads = Runtime.getRuntime().availableProcessors();
+
+    private int workerThreads = Runtime.getRuntime().availableProcessors() * 4;
+
+    private int workerQueueCapacity = 1000;
+
+    private Map<String, Endpoint> endpoints = new HashMap<>();
+
+    public int getSchedulerThreads() {
+        return schedulerThreads;
+    }
+
+    public void setSchedulerThreads(int schedulerThreads) {
+        this.schedulerThreads = schedulerThreads;
+    }
+
+    public int getWorkerThreads() {
+        return workerThreads;
+    }
+
+    public void setWorkerThreads(int workerThreads) {
+        this.workerThreads = workerThreads;
+    }
+
+    public int getWorkerQueueCapacity() {
+        return workerQueueCapacity;
+    }
+
+    public void setWorkerQueueCapacity(int workerQueueCapacity) {
+        this.workerQueueCapacity = workerQueueCapacity;
+    }
+
+    public Map<String, Endpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    public void setEndpoints(Map<String, Endpoint> endpoints) {
+        this.endpoints = endpoints;
+    }
+
+    public static class Endpoint {
+
+        private Distribution distribution = Distribution.FIXED;
+
+        private Duration delay = Duration.ZERO;
+
+        private Duration jitter = Duration.ZERO;
+
+        public Distribution getDistribution() {
+            return distribution;
+        }
+
+        public void setDistribution(Distribution distribution) {
+            this.distribution = distribution;
+        }
+
+        public Duration getDelay() {
+            return delay;
+        }
+
+        public void setDelay(Duration delay) {
+            this.delay = delay;
+        }
+
+        public Duration getJitter() {
+            return jitter;
+        }
+
+        public void setJitter(Duration jitter) {
+            this.jitter = jitter;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package org.cloudfoundry.samples.music.latency;
+
+import org.cloudfoundry.samples.music.domain.ApiError;
+import org.cloudfoundry.samples.music.errors.ApplicationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Injects the configured latency for an endpoint without holding the request thread:
+ * a scheduler thread only times the delay, the response is then produced on a worker
+ * thread, and the servlet container finishes the request asynchronously. Keeping the
+ * repository reads and rendering off the scheduler keeps the delays accurate under load.
+ *
+ * <p>At most {@code worker-queue-capacity} delayed responses wait for a worker; beyond
+ * that, and after shutdown, requests fail with 503 instead of queueing without bound.
+ */
+@Component
+public class LatencySimulator implements DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(LatencySimulator.class);
+
+    private final LatencyProperties properties;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final ExecutorService workers;
+
+    public LatencySimulator(LatencyProperties properties) {
+        this.properties = properties;
+        this.scheduler = Executors.newScheduledThreadPool(properties.getSchedulerThreads(), daemonThreads("latency-simulator-"));
+        this.workers = new ThreadPoolExecutor(properties.getWorkerThreads(), properties.getWorkerThreads(), 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(properties.getWorkerQueueCapacity()), daemonThreads("latency-worker-"));
+    }
+
+    public <T> CompletableFuture<T> supply(String endpoint, Supplier<T> supplier) {
+        long delayMillis = nextDelayMillis(endpoint);
+        if (delayMillis <= 0) {
+            return CompletableFuture.completedFuture(supplier.get());
+        }
+
+        logger.debug("Delaying " + endpoint + " by " + delayMillis + "ms");
+        Production<T> production = new Production<>(endpoint, supplier);
+        try {
+            scheduler.schedule(() -> {
+                try {
+                    workers.execute(production);
+                } catch (RejectedExecutionException e) {
+                    production.reject();
+                }
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            production.reject();
+        }
+        return production.result;
+    }
+
+    private static ApplicationException overloaded(String endpoint) {
+        logger.warn("Rejecting delayed " + endpoint + " response, no worker is free to produce it");
+        return new ApplicationException(HttpStatus.SERVICE_UNAVAILABLE, new ApiError("service-unavailable", "too-many-requests", "too many requests are waiting, retry later"));
+    }
+
+    long nextDelayMillis(String endpoint) {
+        LatencyProperties.Endpoint config = properties.getEndpoints().get(endpoint);
+        if (config == null) {
+            return 0;
+        }
+
+        long delay = config.getDelay().toMillis();
+        long jitter = config.getJitter().toMillis();
+        switch (config.getDistribution()) {
+            case UNIFORM:
+                return jitter <= 0 ? delay : delay + ThreadLocalRandom.current().nextLong(-jitter, jitter + 1);
+            case GAUSSIAN:
+                return Math.max(0, delay + Math.round(ThreadLocalRandom.current().nextGaussian() * jitter));
+            default:
+                return delay;
+        }
+    }
+
+    // Delays still running fire into the stopped workers and are rejected, and responses
+    // still queued for a worker are rejected here, so no request waits for its timeout.
+    @Override
+    public void destroy() {
+        scheduler.shutdown();
+        for (Runnable queued : workers.shutdownNow()) {
+            ((Production<?>) queued).reject();
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static final class Production<T> implements Runnable {
+
+        private final String endpoint;
+
+        private final Supplier<T> supplier;
+
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+
+        Production(String endpoint, Supplier<T> supplier) {
+            this.endpoint = endpoint;
+            this.supplier = supplier;
+        }
+
+        @Override
+        public void run() {
+            try {
+                result.complete(supplier.get());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+                if (e instanceof Error) {
+                    throw (Error) e;
+                }
+            }
+        }
+
+        void reject() {
+            result.completeExceptionally(overloaded(endpoint));
+        }
+    }
+}
@@ -1,7 +1,38 @@
 package org.cloudfoundry.samples.music.repositories;
 
+import org.cloudfoundry.samples.music.domain.Album;
+import org.cloudfoundry.samples.music.domain.AlbumPage;
+
+import java.util.stream.Stream;
+
 public interface AlbumRepository {
 
     boolean existsByArtistAndTitle(String artist, String album);
 
+    /**
+     * Saves the album unless another album with the same artist and title exists, and
+     * reports whether it was saved. A missing id is assigned before saving.
+     *
+     * <p>The redis, offheap, compact and file repositories decide this atomically, and
+     * so does MongoDB with {@code mongodb.albums.unique-artist-title} set. Otherwise the
+     * relational and MongoDB repositories check and insert without a unique constraint
+     * behind them, so concurrent inserts of the same album can both succeed.
+     */
+    boolean insertIfAbsent(Album album);
+
+    /**
+     * Reads at most {@code limit} albums starting after {@code position}, which is either
+     * {@code null} for the first page or the next position of a previously returned page.
+     *
+     * @throws InvalidPageTokenException if {@code position} is not a position this
+     * repository could have returned
+     */
+    AlbumPage findPage(String position, int limit);
+
+    /**
+     * Walks every album through a backend cursor that holds one fetch batch at a time.
+     * The stream owns a connection until it is closed, so callers must close it.
+     */
+    Stream<Album> streamAll();
+
 }
@@ -1,59 +1,408 @@
 package org.cloudfoundry.samples.music.repositories;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.cloudfoundry.samples.music.domain.Album;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.BeanFactoryUtils;
+import org.springframework.boot.context.event.ApplicationPreparedEvent;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationEvent;
 import org.springframework.context.ApplicationListener;
-import org.springframework.core.io.ClassPathResource;
+import org.springframework.context.event.ContextClosedEvent;
 import org.springframework.core.io.Resource;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.data.repository.CrudRepository;
-import org.springframework.data.repository.init.Jackson2ResourceReader;
+import org.springframework.util.StringUtils;
 
-import java.util.Collection;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
 
-public class AlbumRepositoryPopulator implements ApplicationListener<ApplicationReadyEvent> {
-    private final Jackson2ResourceReader resourceReader;
-    private final Resource sourceData;
+/**
+ * Seeds an empty album repository from {@code albums.seed.location} on a background
+ * thread once the application is ready, while {@link AlbumSeedHealthIndicator} reports the
+ * instance out of service. The seed data is parsed as a stream, as a JSON array or as
+ * NDJSON, gzipped or not, and saved in batches of {@code batch-size} albums with
+ * {@code saveAll}, so only the batches in flight are held in memory. With
+ * {@code parallelism} above 1, that many batches are saved concurrently and at most twice
+ * as many are read ahead. Albums the repository rejects as duplicates of a stored artist
+ * and title are skipped and not counted as saved; any other failure stops the seed.
+ *
+ * <p>Albums without an id get one from the repository. A local checkpoint records how many
+ * leading albums are saved; when the repository is not empty but an unfinished seed of the
+ * same location is recorded, seeding resumes after those albums instead of being skipped.
+ * Albums the interrupted run may already have written past that point are created with
+ * {@link AlbumRepository#insertIfAbsent}, one at a time, so they are not stored twice.
+ * When a seed ends, finished or failed, an {@link AlbumsSeededEvent} is published so
+ * cached album responses are dropped.
+ *
+ * <p>Progress is logged every {@code progress-interval}, and published as the
+ * {@code albums.seed.saved} counter and the {@code albums.seed.batch} timer.
+ */
+public class AlbumRepositoryPopulator implements ApplicationListener<ApplicationEvent> {
+
+    private static final Logger logger = LoggerFactory.getLogger(AlbumRepositoryPopulator.class);
+
+    static final String HEALTH_INDICATOR_BEAN = "albumSeedHealthIndicator";
+
+    private static final int GZIP_MAGIC = 0x8b1f;
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+
+    private final ObjectReader albumReader;
+
+    private final AtomicBoolean stopped = new AtomicBoolean();
+
+    private volatile AlbumSeedHealthIndicator health = new AlbumSeedHealthIndicator();
+
+    private volatile ApplicationContext seededContext;
+
+    private volatile ExecutorService seeder;
 
     public AlbumRepositoryPopulator() {
         ObjectMapper mapper = new ObjectMapper();
         mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-        resourceReader = new Jackson2ResourceReader(mapper);
-        sourceData = new ClassPathResource("albums.json");
+        albumReader = mapper.readerFor(Album.class);
     }
 
     @Override
-    public void onApplicationEvent(ApplicationReadyEvent event) {
-        CrudRepository albumRepository =
-                BeanFactoryUtils.beanOfTypeIncludingAncestors(event.getApplicationContext(), CrudRepository.class);
-
-        if (albumRepository != null && albumRepository.count() == 0) {
-            populate(albumRepository);
+    public void onApplicationEvent(ApplicationEvent event) {
+        if (event instanceof ApplicationPreparedEvent) {
+            health = new AlbumSeedHealthIndicator();
+            ((ApplicationPreparedEvent) event).getApplicationContext().getBeanFactory()
+                    .registerSingleton(HEALTH_INDICATOR_BEAN, health);
+        } else if (event instanceof ApplicationReadyEvent) {
+            startSeeding(((ApplicationReadyEvent) event).getApplicationContext());
+        } else if (event instanceof ContextClosedEvent && ((ContextClosedEvent) event).getApplicationContext() == seededContext) {
+            stopSeeding();
         }
     }
 
+    AlbumSeedHealthIndicator getHealthIndicator() {
+        return health;
+    }
+
     @SuppressWarnings("unchecked")
-    private void populate(CrudRepository repository) {
-        Object entity = getEntityFromResource(sourceData);
+    private void startSeeding(ApplicationContext context) {
+        CrudRepository albumRepository = BeanFactoryUtils.beanOfTypeIncludingAncestors(context, CrudRepository.class);
+        AlbumSeedProperties properties = Binder.get(context.getEnvironment())
+                .bind("albums.seed", AlbumSeedProperties.class)
+                .orElseGet(AlbumSeedProperties::new);
+        MeterRegistry meterRegistry = context.getBeanNamesForType(MeterRegistry.class).length > 0
+                ? context.getBean(MeterRegistry.class)
+                : new SimpleMeterRegistry();
+        Resource source = context.getResource(properties.getLocation());
+
+        stopped.set(false);
+        seededContext = context;
+        seeder = Executors.newSingleThreadExecutor(new SeedThreadFactory("album-seed"));
+        seeder.execute(() -> seed(albumRepository, source, properties, meterRegistry));
+        seeder.shutdown();
+    }
+
+    // lets the batches in flight finish; the checkpoint resumes after them on the next start
+    private void stopSeeding() {
+        stopped.set(true);
+        ExecutorService running = seeder;
+        if (running != null) {
+            try {
+                running.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Seeds the repository if it is empty, or resumes an unfinished seed of the same
+     * location, and reports the outcome through the health indicator.
+     */
+    void seed(CrudRepository<Album, String> repository, Resource source, AlbumSeedProperties properties,
+              MeterRegistry meterRegistry) {
+        try {
+            AlbumSeedCheckpoint checkpoint = new AlbumSeedCheckpoint(
+                    StringUtils.hasText(properties.getCheckpoint()) ? Paths.get(properties.getCheckpoint()) : null,
+                    properties.getLocation());
+            long resumeFrom = 0;
+            long writtenBelow = 0;
+            if (repository.count() > 0) {
+                resumeFrom = checkpoint.resumePoint();
+                if (resumeFrom < 0) {
+                    health.skipped();
+                    return;
+                }
+                writtenBelow = checkpoint.writtenBelow();
+                logger.info("Resuming album seeding from " + properties.getLocation() + " after " + resumeFrom + " albums");
+            }
+
+            health.seeding(properties.getLocation(), resumeFrom);
+            long saved = populate(repository, source, properties, meterRegistry, checkpoint, resumeFrom, writtenBelow);
+            if (stopped.get()) {
+                logger.info("Album seeding stopped after " + checkpoint.committed() + " albums, it resumes on the next start");
+                health.stopped();
+                return;
+            }
+            checkpoint.complete();
+            health.seeded(resumeFrom + saved);
+            publishSeeded();
+        } catch (RuntimeException e) {
+            logger.error("Album seeding failed", e);
+            health.failed(e);
+            publishSeeded();
+        }
+    }
+
+    // after the health indicator has left SEEDING, so the endpoints serve the seeded albums
+    private void publishSeeded() {
+        ApplicationContext context = seededContext;
+        if (context != null) {
+            context.publishEvent(new AlbumsSeededEvent(this));
+        }
+    }
+
+    /** Saves every album read from the source without a checkpoint. */
+    long populate(CrudRepository<Album, String> repository, Resource source, AlbumSeedProperties properties,
+                  MeterRegistry meterRegistry) {
+        return populate(repository, source, properties, meterRegistry, new AlbumSeedCheckpoint(null, properties.getLocation()), 0, 0);
+    }
+
+    /**
+     * Saves every album read from the source after the first {@code resumeFrom} and returns
+     * how many were saved, creating those before {@code writtenBelow} only if absent. The
+     * first failed batch stops reading and is rethrown once the batches in flight have
+     * finished.
+     */
+    long populate(CrudRepository<Album, String> repository, Resource source, AlbumSeedProperties properties,
+                  MeterRegistry meterRegistry, AlbumSeedCheckpoint checkpoint, long resumeFrom, long writtenBelow) {
+        int batchSize = Math.max(1, properties.getBatchSize());
+        int parallelism = Math.max(1, properties.getParallelism());
+        Progress progress = new Progress(source, properties, meterRegistry, health, resumeFrom);
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        checkpoint.start(resumeFrom, writtenBelow, (long) batchSize * parallelism * 2);
 
-        if (entity instanceof Collection) {
-            for (Album album : (Collection<Album>) entity) {
-                if (album != null) {
-                    repository.save(album);
+        ExecutorService savers = parallelism == 1 ? null : Executors.newFixedThreadPool(parallelism, new SeedThreadFactory("album-seed-save"));
+        Semaphore inFlight = new Semaphore(parallelism * 2);
+        logger.info("Seeding albums from " + source.getDescription() + " in batches of " + batchSize
+                + (savers == null ? "" : ", " + parallelism + " at a time"));
+
+        try (InputStream in = open(source);
+             JsonParser parser = albumReader.getFactory().createParser(in)) {
+            // a top-level array is read element by element; otherwise every top-level value is an album
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_ARRAY) {
+                token = parser.nextToken();
+            }
+            long index = 0;
+            long batchStart = resumeFrom;
+            List<Album> batch = new ArrayList<>(batchSize);
+            while (failure.get() == null && !stopped.get() && token != null && token != JsonToken.END_ARRAY) {
+                Album album = albumReader.readValue(parser);
+                token = parser.nextToken();
+                if (album == null || index++ < resumeFrom) {
+                    continue;
+                }
+                batch.add(album);
+                if (batch.size() == batchSize) {
+                    submit(repository, batch, batchStart, writtenBelow, savers, inFlight, progress, checkpoint, failure);
+                    batchStart += batch.size();
+                    batch = new ArrayList<>(batchSize);
                 }
             }
-        } else {
-            repository.save(entity);
+            if (!batch.isEmpty() && failure.get() == null && !stopped.get()) {
+                submit(repository, batch, batchStart, writtenBelow, savers, inFlight, progress, checkpoint, failure);
+            }
+        } catch (IOException e) {
+            failure.compareAndSet(null, new UncheckedIOException("Could not read album seed data from " + source.getDescription(), e));
+        } finally {
+            if (savers != null) {
+                savers.shutdown();
+                awaitQuietly(savers);
+            }
         }
+
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        progress.report(true);
+        return progress.saved.get();
+    }
+
+    private void submit(CrudRepository<Album, String> repository, List<Album> batch, long batchStart, long writtenBelow,
+                        ExecutorService savers, Semaphore inFlight, Progress progress, AlbumSeedCheckpoint checkpoint,
+                        AtomicReference<RuntimeException> failure) {
+        if (savers == null) {
+            save(repository, batch, batchStart, writtenBelow, progress, checkpoint, failure);
+            return;
+        }
+        inFlight.acquireUninterruptibly();
+        savers.execute(() -> {
+            try {
+                save(repository, batch, batchStart, writtenBelow, progress, checkpoint, failure);
+            } finally {
+                inFlight.release();
+            }
+        });
     }
 
-    private Object getEntityFromResource(Resource resource) {
+    private void save(CrudRepository<Album, String> repository, List<Album> batch, long batchStart, long writtenBelow,
+                      Progress progress, AlbumSeedCheckpoint checkpoint, AtomicReference<RuntimeException> failure) {
         try {
-            return resourceReader.readFrom(resource, this.getClass().getClassLoader());
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+            checkpoint.saving(batchStart, batch.size());
+            int saved = progress.batchTimer.record(() -> batchStart < writtenBelow && repository instanceof AlbumRepository
+                    ? insertEachIfAbsent((AlbumRepository) repository, batch)
+                    : saveAllSkippingDuplicates(repository, batch));
+            checkpoint.saved(batchStart, batch.size());
+            progress.saved(saved);
+        } catch (RuntimeException e) {
+            failure.compareAndSet(null, e);
+        }
+    }
+
+    // Seed albums repeating a stored artist and title are left out rather than failing
+    // the seed, on repositories that reject them. Returns how many albums were saved.
+    private static int saveAllSkippingDuplicates(CrudRepository<Album, String> repository, List<Album> batch) {
+        try {
+            repository.saveAll(batch);
+            return batch.size();
+        } catch (PartialBatchWriteException e) {
+            for (DataAccessException failure : e.getFailures().values()) {
+                if (!(failure instanceof DuplicateKeyException)) {
+                    throw e;
+                }
+            }
+            logger.warn("Skipped " + e.getFailures().size() + " seed albums whose artist and title are already stored");
+            return batch.size() - e.getFailures().size();
+        }
+    }
+
+    // Albums an interrupted run may have stored already, matched on artist and title since
+    // the repository assigned their ids. Returns how many albums were saved.
+    private static int insertEachIfAbsent(AlbumRepository repository, List<Album> batch) {
+        int saved = 0;
+        for (Album album : batch) {
+            if (repository.insertIfAbsent(album)) {
+                saved++;
+            }
+        }
+        if (saved < batch.size()) {
+            logger.info("Skipped " + (batch.size() - saved) + " seed albums stored before the seed was interrupted");
+        }
+        return saved;
+    }
+
+    private static InputStream open(Resource source) throws IOException {
+        InputStream in = new BufferedInputStream(source.getInputStream(), READ_BUFFER_SIZE);
+        in.mark(2);
+        int magic = in.read() | (in.read() << 8);
+        in.reset();
+        return magic == GZIP_MAGIC ? new GZIPInputStream(in, READ_BUFFER_SIZE) : in;
+    }
+
+    private static void awaitQuietly(ExecutorService savers) {
+        try {
+            savers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Progress {
+
+        private final Resource source;
+
+        private final long intervalNanos;
+
+        private final long startedAt = System.nanoTime();
+
+        private final AtomicLong saved = new AtomicLong();
+
+        private final AtomicLong nextReportAt;
+
+        private final Counter savedCounter;
+
+        private final Timer batchTimer;
+
+        private final AlbumSeedHealthIndicator health;
+
+        private final long resumedFrom;
+
+        Progress(Resource source, AlbumSeedProperties properties, MeterRegistry meterRegistry,
+                 AlbumSeedHealthIndicator health, long resumedFrom) {
+            this.source = source;
+            this.intervalNanos = properties.getProgressInterval().toNanos();
+            this.nextReportAt = new AtomicLong(startedAt + intervalNanos);
+            this.health = health;
+            this.resumedFrom = resumedFrom;
+            this.savedCounter = Counter.builder("albums.seed.saved")
+                    .description("Albums saved by the seed populator")
+                    .register(meterRegistry);
+            this.batchTimer = Timer.builder("albums.seed.batch")
+                    .description("Time to save one seed batch with saveAll")
+                    .register(meterRegistry);
+        }
+
+        void saved(int albums) {
+            long total = saved.addAndGet(albums);
+            savedCounter.increment(albums);
+            health.progress(resumedFrom + total);
+            report(false);
+        }
+
+        void report(boolean done) {
+            long now = System.nanoTime();
+            long reportAt = nextReportAt.get();
+            if (!done && (now < reportAt || !nextReportAt.compareAndSet(reportAt, now + intervalNanos))) {
+                return;
+            }
+            double seconds = Math.max(now - startedAt, 1) / 1e9;
+            logger.info(String.format("%s %d albums from %s in %.1fs (%.0f albums/s)", done ? "Seeded" : "Seeding:",
+                    saved.get(), source.getDescription(), seconds, saved.get() / seconds));
+        }
+    }
+
+    private static final class SeedThreadFactory implements ThreadFactory {
+
+        private final String prefix;
+
+        private final AtomicInteger threads = new AtomicInteger();
+
+        SeedThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, prefix + "-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
         }
     }
 }
@@ -0,0 +1,159 @@
+package org.cloudfoundry.samples.music.repositories;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Local record of how far an unfinished seed got: the seed location and the number of
+ * leading albums whose batches have all been saved. Batches saved in parallel can finish
+ * out of order, so a batch only moves the checkpoint once every batch before it is saved.
+ * Albums past the checkpoint may be stored as well, by batches saved ahead of it or saved
+ * just before the process stopped, so the file also records a bound below which albums
+ * may have been written; it is moved ahead of the batches being saved a reserve at a time
+ * rather than once per batch. The file is replaced atomically and removed once seeding
+ * completes.
+ */
+class AlbumSeedCheckpoint {
+
+    private static final Logger logger = LoggerFactory.getLogger(AlbumSeedCheckpoint.class);
+
+    private final Path path;
+
+    private final String location;
+
+    // batches saved ahead of the checkpoint: first album index -> album count
+    private final TreeMap<Long, Integer> savedAhead = new TreeMap<>();
+
+    private long committed;
+
+    private long writtenBelow;
+
+    private long reserve;
+
+    AlbumSeedCheckpoint(Path path, String location) {
+        this.path = path;
+        this.location = location;
+    }
+
+    /**
+     * Returns the albums committed by an unfinished seed of the same location, or -1 when
+     * there is no checkpoint for it.
+     */
+    long resumePoint() {
+        if (path == null || !Files.exists(path)) {
+            return -1;
+        }
+        Properties checkpoint = new Properties();
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            checkpoint.load(reader);
+            if (!location.equals(checkpoint.getProperty("location"))) {
+                return -1;
+            }
+            return Long.parseLong(checkpoint.getProperty("committed", "0"));
+        } catch (IOException | NumberFormatException e) {
+            logger.warn("Ignoring unreadable album seed checkpoint " + path + ": " + e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * Returns the album index below which an unfinished seed may have written albums, at
+     * least its {@link #resumePoint()}, or {@link Long#MAX_VALUE} when the checkpoint does
+     * not record it.
+     */
+    long writtenBelow() {
+        if (path == null || !Files.exists(path)) {
+            return 0;
+        }
+        Properties checkpoint = new Properties();
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            checkpoint.load(reader);
+            String recorded = checkpoint.getProperty("written-below");
+            return recorded == null ? Long.MAX_VALUE : Long.parseLong(recorded);
+        } catch (IOException | NumberFormatException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Starts recording a seed resumed after {@code resumedFrom} albums, keeping the bound
+     * of albums an earlier run may have written, and moving it {@code reserve} albums past
+     * the batches being saved whenever they reach it.
+     */
+    synchronized void start(long resumedFrom, long writtenBefore, long reserve) {
+        savedAhead.clear();
+        committed = resumedFrom;
+        writtenBelow = Math.max(resumedFrom, writtenBefore);
+        this.reserve = reserve;
+        write();
+    }
+
+    /** Records that a batch is about to be saved, before any of its albums are written. */
+    synchronized void saving(long firstAlbum, int albums) {
+        long end = firstAlbum + albums;
+        if (end > writtenBelow) {
+            writtenBelow = end + reserve;
+            write();
+        }
+    }
+
+    /** Records a saved batch, and moves the checkpoint past every batch saved without a gap. */
+    synchronized void saved(long firstAlbum, int albums) {
+        savedAhead.put(firstAlbum, albums);
+        long before = committed;
+        while (!savedAhead.isEmpty() && savedAhead.firstKey() == committed) {
+            committed += savedAhead.pollFirstEntry().getValue();
+        }
+        if (committed != before) {
+            write();
+        }
+    }
+
+    synchronized long committed() {
+        return committed;
+    }
+
+    void complete() {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not remove album seed checkpoint " + path, e);
+        }
+    }
+
+    private void write() {
+        if (path == null) {
+            return;
+        }
+        Properties checkpoint = new Properties();
+        checkpoint.setProperty("location", location);
+        checkpoint.setProperty("committed", Long.toString(committed));
+        checkpoint.setProperty("written-below", Long.toString(writtenBelow));
+        Path written = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            try (Writer writer = Files.newBufferedWriter(written, StandardCharsets.UTF_8)) {
+                checkpoint.store(writer, null);
+            }
+            Files.move(written, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write album seed checkpoint " + path, e);
+        }
+    }
+}
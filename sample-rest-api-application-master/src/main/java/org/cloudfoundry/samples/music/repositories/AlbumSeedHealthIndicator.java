@@ -0,0 +1,95 @@
+package org.cloudfoundry.samples.music.repositories;
+
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+
+import java.util.Locale;
+
+/**
+ * Readiness of the album catalog while {@link AlbumRepositoryPopulator} seeds it in the
+ * background: {@code OUT_OF_SERVICE} until seeding has finished or found nothing to do,
+ * then {@code UP}, or {@code DOWN} if seeding failed. The aggregated health endpoint
+ * answers 503 while any indicator is out of service, so instances are kept out of
+ * rotation until their catalog is complete. The album endpoints answer 503 themselves
+ * while {@link #isSeeding()} or {@link #hasFailed()} holds, for callers that do not go
+ * through the health check. A failed seed keeps the instance down until it is restarted,
+ * which resumes the seed from its checkpoint.
+ */
+public class AlbumSeedHealthIndicator implements HealthIndicator {
+
+    enum State {
+        PENDING, SEEDING, SEEDED, SKIPPED, STOPPED, FAILED
+    }
+
+    private volatile State state = State.PENDING;
+
+    private volatile String location;
+
+    private volatile long saved;
+
+    private volatile String error;
+
+    @Override
+    public Health health() {
+        Health.Builder builder;
+        switch (state) {
+            case SEEDED:
+            case SKIPPED:
+                builder = Health.up();
+                break;
+            case FAILED:
+                builder = Health.down().withDetail("error", error);
+                break;
+            default:
+                builder = Health.outOfService();
+        }
+        builder.withDetail("state", state.name().toLowerCase(Locale.ROOT));
+        if (location != null) {
+            builder.withDetail("location", location).withDetail("saved", saved);
+        }
+        return builder.build();
+    }
+
+    /** Whether the catalog is still incomplete: seeding has not started or not finished. */
+    public boolean isSeeding() {
+        State current = state;
+        return current == State.PENDING || current == State.SEEDING;
+    }
+
+    /** Whether seeding failed, leaving the catalog incomplete. */
+    public boolean hasFailed() {
+        return state == State.FAILED;
+    }
+
+    State getState() {
+        return state;
+    }
+
+    void seeding(String location, long resumedFrom) {
+        this.location = location;
+        this.saved = resumedFrom;
+        this.state = State.SEEDING;
+    }
+
+    void progress(long saved) {
+        this.saved = saved;
+    }
+
+    void seeded(long saved) {
+        this.saved = saved;
+        this.state = State.SEEDED;
+    }
+
+    void skipped() {
+        this.state = State.SKIPPED;
+    }
+
+    void stopped() {
+        this.state = State.STOPPED;
+    }
+
+    void failed(Exception e) {
+        this.error = e.getMessage();
+        this.state = State.FAILED;
+    }
+}
@@ -0,0 +1,68 @@
+package org.cloudfoundry.samples.music.repositories;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.nio.file.Paths;
+import java.time.Duration;
+
+/**
+ * Seeding of an empty album repository on startup, bound from {@code albums.seed}.
+ */
+@ConfigurationProperties(prefix = "albums.seed")
+public class AlbumSeedProperties {
+
+    /** Seed data as a JSON array or NDJSON, optionally gzipped; detected from the content. */
+    private String location = "classpath:albums.json";
+
+    /** Albums handed to one {@code saveAll} call. */
+    private int batchSize = 500;
+
+    /** Batches saved concurrently; 1 saves them in order on the seeding thread. */
+    private int parallelism = 1;
+
+    /** Time between progress reports in the log. */
+    private Duration progressInterval = Duration.ofSeconds(10);
+
+    /** Local file recording how far an unfinished seed got, so a restart resumes it; empty disables resuming. */
+    private String checkpoint = Paths.get(System.getProperty("java.io.tmpdir"), "spring-music", "album-seed.checkpoint").toString();
+
+    public String getLocation() {
+        return location;
+    }
+
+    public void setLocation(String location) {
+        this.location = location;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public Duration getProgressInterval() {
+        return progressInterval;
+    }
+
+    public void setProgressInterval(Duration progressInterval) {
+        this.progressInterval = progressInterval;
+    }
+
+    public String getCheckpoint() {
+        return checkpoint;
+    }
+
+    public void setCheckpoint(String checkpoint) {
+        this.checkpoint = checkpoint;
+    }
+}
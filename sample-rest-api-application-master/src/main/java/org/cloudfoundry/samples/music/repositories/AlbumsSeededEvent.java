@@ -0,0 +1,14 @@
+package org.cloudfoundry.samples.music.repositories;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Published by {@link AlbumRepositoryPopulator} when a seed ends, finished or failed part
+ * way, so views of the albums taken before it can be dropped.
+ */
+public class AlbumsSeededEvent extends ApplicationEvent {
+
+    public AlbumsSeededEvent(Object source) {
+        super(source);
+    }
+}
@@ -0,0 +1,17 @@
+package org.cloudfoundry.samples.music.repositories;
+
+/**
+ * Thrown by {@code findPage} when the position was not one the repository could have
+ * returned, such as a tampered or truncated continuation token. Other exceptions from
+ * {@code findPage} are failures of the repository, not of the request.
+ */
+public class InvalidPageTokenException extends IllegalArgumentException {
+
+    public InvalidPageTokenException(String message) {
+        super(message);
+    }
+
+    public InvalidPageTokenException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
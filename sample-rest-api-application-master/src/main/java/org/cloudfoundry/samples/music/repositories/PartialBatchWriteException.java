@@ -0,0 +1,25 @@
+package org.cloudfoundry.samples.music.repositories;
+
+import org.springframework.dao.DataAccessException;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Thrown by {@code saveAll} when the backend wrote part of a batch and rejected the rest.
+ * Failures are keyed by the position of the album in the batch; every album without a
+ * failure was saved.
+ */
+public class PartialBatchWriteException extends RuntimeException {
+
+    private final Map<Integer, DataAccessException> failures;
+
+    public PartialBatchWriteException(String message, Map<Integer, DataAccessException> failures, Throwable cause) {
+        super(message, cause);
+        this.failures = Collections.unmodifiableMap(failures);
+    }
+
+    public Map<Integer, DataAccessException> getFailures() {
+        return failures;
+    }
+}
@@ -0,0 +1,53 @@
+package org.cloudfoundry.samples.music.repositories;
+
+import org.cloudfoundry.samples.music.domain.Album;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A sorted copy of the ids of a repository that has no ordered index of its own. The
+ * repository builds it once, keeps it until an id is added or removed, and answers id
+ * ordered pages from it with a binary search instead of walking every album per page.
+ */
+public final class SortedIds {
+
+    private final String[] ids;
+
+    private SortedIds(String[] ids) {
+        this.ids = ids;
+    }
+
+    /** Copies and sorts the first {@code size} ids. */
+    public static SortedIds of(String[] ids, int size) {
+        String[] sorted = Arrays.copyOf(ids, size);
+        Arrays.sort(sorted);
+        return new SortedIds(sorted);
+    }
+
+    /** Up to {@code limit} ids following the position, or from the first id when it is {@code null}. */
+    public List<String> after(String position, int limit) {
+        int from = 0;
+        if (position != null) {
+            int index = Arrays.binarySearch(ids, position);
+            from = index >= 0 ? index + 1 : -index - 1;
+        }
+        return Arrays.asList(ids).subList(from, Math.min(ids.length, from + Math.max(limit, 0)));
+    }
+
+    /**
+     * Streams the albums of these ids in id order, looking them up {@code batchSize} at a
+     * time. Ids the lookup no longer finds are skipped, and albums added after this copy
+     * was taken are not seen.
+     */
+    public Stream<Album> stream(int batchSize, Function<List<String>, Iterable<Album>> lookup) {
+        int batches = (ids.length + batchSize - 1) / batchSize;
+        return IntStream.range(0, batches)
+                .mapToObj(batch -> Arrays.asList(ids).subList(batch * batchSize, Math.min(ids.length, (batch + 1) * batchSize)))
+                .flatMap(batch -> StreamSupport.stream(lookup.apply(batch).spliterator(), false));
+    }
+}
@@ -0,0 +1,239 @@
+package org.cloudfoundry.samples.music.repositories.cache;
+
+import org.cloudfoundry.samples.music.domain.Album;
+import org.cloudfoundry.samples.music.domain.AlbumPage;
+import org.cloudfoundry.samples.music.repositories.AlbumRepository;
+import org.springframework.data.repository.CrudRepository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Read-through near-cache in front of the active album repository. Albums read by id and
+ * the full album list are kept in {@link WindowTinyLfuCache}s; every write drops the
+ * albums it touched and the list, here and, through the {@link InvalidationChannel}, on
+ * the other instances. Loads that started before a write are not stored, so a read racing
+ * a write cannot put the old album back. Paging, streaming and the duplicate checks
+ * always go to the backend.
+ *
+ * <p>Cached albums are shared between callers and must not be modified.
+ */
+public class CachingAlbumRepository implements CrudRepository<Album, String>, AlbumRepository {
+
+    private static final String ALL_ALBUMS = "all";
+
+    private final CrudRepository<Album, String> delegate;
+
+    private final AlbumRepository albumDelegate;
+
+    private final WindowTinyLfuCache<String, Album> albums;
+
+    private final WindowTinyLfuCache<String, List<Album>> albumLists;
+
+    private final int maximumSize;
+
+    private final InvalidationChannel invalidationChannel;
+
+    private final String origin = UUID.randomUUID().toString();
+
+    // Bumped by every invalidation; loads that started under an older generation are not stored.
+    private long generation;
+
+    public CachingAlbumRepository(CrudRepository<Album, String> delegate, int maximumSize, long timeToLive, TimeUnit unit,
+                                  InvalidationChannel invalidationChannel) {
+        if (!(delegate instanceof AlbumRepository)) {
+            throw new IllegalArgumentException("Near-cache delegate must be an AlbumRepository: " + delegate);
+        }
+        this.delegate = delegate;
+        this.albumDelegate = (AlbumRepository) delegate;
+        this.maximumSize = maximumSize;
+        this.albums = new WindowTinyLfuCache<>(maximumSize, timeToLive, unit);
+        this.albumLists = new WindowTinyLfuCache<>(1, timeToLive, unit);
+        this.invalidationChannel = invalidationChannel;
+        invalidationChannel.subscribe((publisher, ids) -> {
+            if (!origin.equals(publisher)) {
+                invalidateLocally(ids);
+            }
+        });
+    }
+
+    public WindowTinyLfuCache<String, Album> getAlbumCache() {
+        return albums;
+    }
+
+    public WindowTinyLfuCache<String, List<Album>> getAlbumListCache() {
+        return albumLists;
+    }
+
+    @Override
+    public Optional<Album> findById(String id) {
+        Album cached = albums.getIfPresent(id);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        long loadGeneration = currentGeneration();
+        Optional<Album> loaded = delegate.findById(id);
+        loaded.ifPresent(album -> store(albums, id, album, loadGeneration));
+        return loaded;
+    }
+
+    @Override
+    public boolean existsById(String id) {
+        return albums.getIfPresent(id) != null || delegate.existsById(id);
+    }
+
+    @Override
+    public Iterable<Album> findAll() {
+        List<Album> cached = albumLists.getIfPresent(ALL_ALBUMS);
+        if (cached != null) {
+            return cached;
+        }
+        long loadGeneration = currentGeneration();
+        List<Album> loaded = new ArrayList<>();
+        delegate.findAll().forEach(loaded::add);
+        loaded = Collections.unmodifiableList(loaded);
+        if (loaded.size() <= maximumSize) {
+            store(albumLists, ALL_ALBUMS, loaded, loadGeneration);
+        }
+        return loaded;
+    }
+
+    @Override
+    public Iterable<Album> findAllById(Iterable<String> ids) {
+        List<Album> found = new ArrayList<>();
+        List<String> missing = new ArrayList<>();
+        for (String id : ids) {
+            Album cached = albums.getIfPresent(id);
+            if (cached != null) {
+                found.add(cached);
+            } else {
+                missing.add(id);
+            }
+        }
+        if (!missing.isEmpty()) {
+            long loadGeneration = currentGeneration();
+            for (Album album : delegate.findAllById(missing)) {
+                store(albums, album.getId(), album, loadGeneration);
+                found.add(album);
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public long count() {
+        return delegate.count();
+    }
+
+    @Override
+    public <S extends Album> S save(S album) {
+        S saved = delegate.save(album);
+        invalidate(Collections.singletonList(saved.getId()));
+        return saved;
+    }
+
+    @Override
+    public <S extends Album> Iterable<S> saveAll(Iterable<S> albumsToSave) {
+        Iterable<S> saved;
+        try {
+            saved = delegate.saveAll(albumsToSave);
+        } catch (RuntimeException e) {
+            // part of the batch may have been written, as a PartialBatchWriteException
+            // reports or a backend saving album by album leaves behind
+            invalidate(idsOf(albumsToSave));
+            throw e;
+        }
+        invalidate(idsOf(saved));
+        return saved;
+    }
+
+    @Override
+    public void deleteById(String id) {
+        delegate.deleteById(id);
+        invalidate(Collections.singletonList(id));
+    }
+
+    @Override
+    public void delete(Album album) {
+        delegate.delete(album);
+        invalidate(Collections.singletonList(album.getId()));
+    }
+
+    @Override
+    public void deleteAll(Iterable<? extends Album> albumsToDelete) {
+        delegate.deleteAll(albumsToDelete);
+        invalidate(idsOf(albumsToDelete));
+    }
+
+    @Override
+    public void deleteAll() {
+        delegate.deleteAll();
+        invalidate(Collections.emptyList());
+    }
+
+    @Override
+    public boolean existsByArtistAndTitle(String artist, String album) {
+        return albumDelegate.existsByArtistAndTitle(artist, album);
+    }
+
+    @Override
+    public boolean insertIfAbsent(Album album) {
+        boolean inserted = albumDelegate.insertIfAbsent(album);
+        if (inserted) {
+            invalidate(Collections.singletonList(album.getId()));
+        }
+        return inserted;
+    }
+
+    @Override
+    public AlbumPage findPage(String position, int limit) {
+        return albumDelegate.findPage(position, limit);
+    }
+
+    @Override
+    public Stream<Album> streamAll() {
+        return albumDelegate.streamAll();
+    }
+
+    private void invalidate(Collection<String> ids) {
+        invalidateLocally(ids);
+        invalidationChannel.publish(origin, ids);
+    }
+
+    // An empty collection drops every album, as deleteAll() does not say which ids it removed.
+    private synchronized void invalidateLocally(Collection<String> ids) {
+        generation++;
+        albumLists.invalidateAll();
+        if (ids.isEmpty()) {
+            albums.invalidateAll();
+        } else {
+            ids.forEach(albums::invalidate);
+        }
+    }
+
+    private synchronized long currentGeneration() {
+        return generation;
+    }
+
+    private synchronized <V> void store(WindowTinyLfuCache<String, V> cache, String key, V value, long loadGeneration) {
+        if (loadGeneration == generation) {
+            cache.put(key, value);
+        }
+    }
+
+    private static List<String> idsOf(Iterable<? extends Album> albums) {
+        List<String> ids = new ArrayList<>();
+        for (Album album : albums) {
+            if (album.getId() != null) {
+                ids.add(album.getId());
+            }
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,76 @@
+package org.cloudfoundry.samples.music.repositories.cache;
+
+/**
+ * Count-min sketch of recent key frequencies, the TinyLFU half of
+ * {@link WindowTinyLfuCache}. Four rows of 4-bit saturating counters give an upper bound
+ * of how often a key was seen; every {@code 10 * maximumSize} increments all counters are
+ * halved, so keys that were popular long ago lose their advantage.
+ */
+class FrequencySketch {
+
+    private static final int DEPTH = 4;
+
+    private static final int MAX_COUNT = 15;
+
+    private static final int[] SEEDS = {0x97cb3127, 0xb3f0ac23, 0x6a9d0de5, 0x35d2e2e1};
+
+    private final byte[][] table;
+
+    private final int mask;
+
+    private final int sampleSize;
+
+    private int additions;
+
+    FrequencySketch(int maximumSize) {
+        int width = Integer.highestOneBit(Math.max(16, maximumSize * 2 - 1) << 1);
+        this.table = new byte[DEPTH][width];
+        this.mask = width - 1;
+        this.sampleSize = Math.max(10, 10 * maximumSize);
+    }
+
+    int frequency(Object key) {
+        int hash = spread(key.hashCode());
+        int frequency = MAX_COUNT;
+        for (int row = 0; row < DEPTH; row++) {
+            frequency = Math.min(frequency, table[row][index(hash, row)]);
+        }
+        return frequency;
+    }
+
+    void increment(Object key) {
+        int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int row = 0; row < DEPTH; row++) {
+            int index = index(hash, row);
+            if (table[row][index] < MAX_COUNT) {
+                table[row][index]++;
+                added = true;
+            }
+        }
+        if (added && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    private void reset() {
+        for (byte[] row : table) {
+            for (int i = 0; i < row.length; i++) {
+                row[i] >>= 1;
+            }
+        }
+        additions >>= 1;
+    }
+
+    private int index(int hash, int row) {
+        int h = hash * SEEDS[row];
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private static int spread(int hash) {
+        hash ^= hash >>> 17;
+        hash *= 0xed5ad4bb;
+        hash ^= hash >>> 11;
+        return hash;
+    }
+}
@@ -0,0 +1,26 @@
+package org.cloudfoundry.samples.music.repositories.cache;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Delivers invalidations to the subscribers of this JVM only. It is the channel of a single
+ * instance, and stands in for the cross-instance channel when several caches share one JVM.
+ */
+public class InProcessInvalidationChannel implements InvalidationChannel {
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void publish(String origin, Collection<String> ids) {
+        for (Listener listener : listeners) {
+            listener.onInvalidation(origin, ids);
+        }
+    }
+
+    @Override
+    public void subscribe(Listener listener) {
+        listeners.add(listener);
+    }
+}
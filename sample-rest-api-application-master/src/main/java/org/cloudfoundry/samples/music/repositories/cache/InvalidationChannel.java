@@ -0,0 +1,20 @@
+package org.cloudfoundry.samples.music.repositories.cache;
+
+import java.util.Collection;
+
+/**
+ * Carries near-cache invalidations between application instances. Every instance publishes
+ * the album ids it wrote, tagged with its own origin, and drops the same ids when another
+ * origin publishes them. An empty id collection means every album.
+ */
+public interface InvalidationChannel {
+
+    void publish(String origin, Collection<String> ids);
+
+    void subscribe(Listener listener);
+
+    interface Listener {
+
+        void onInvalidation(String origin, Collection<String> ids);
+    }
+}
@@ -0,0 +1,72 @@
+package org.cloudfoundry.samples.music.repositories.cache;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.cloudfoundry.samples.music.domain.Album;
+import org.cloudfoundry.samples.music.repositories.AlbumRepository;
+import org.cloudfoundry.samples.music.repositories.compact.CompactAlbumRepository;
+import org.cloudfoundry.samples.music.repositories.file.FileAlbumRepository;
+import org.cloudfoundry.samples.music.repositories.offheap.OffHeapAlbumRepository;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.data.repository.CrudRepository;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wraps whichever album repository the active profile creates, including its write-behind
+ * buffer when enabled, in a {@link CachingAlbumRepository}, so the controllers, validators
+ * and populator all read through the near-cache without knowing about it. Hits, misses,
+ * evictions, expirations and sizes are published with Micrometer's cache meter names,
+ * tagged {@code cache=albums} for albums by id and {@code cache=albums-list} for the list.
+ * The off-heap, compact and file repositories are left alone: they already serve reads
+ * from memory, and caching them would put the catalog back on the heap as album objects.
+ */
+public class NearCacheBeanPostProcessor implements BeanPostProcessor, BeanFactoryAware {
+
+    private ListableBeanFactory beanFactory;
+
+    @Override
+    public void setBeanFactory(BeanFactory beanFactory) throws BeansException {
+        this.beanFactory = (ListableBeanFactory) beanFactory;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+        if (!(bean instanceof CrudRepository) || !(bean instanceof AlbumRepository) || bean instanceof CachingAlbumRepository
+                || bean instanceof OffHeapAlbumRepository || bean instanceof CompactAlbumRepository
+                || bean instanceof FileAlbumRepository) {
+            return bean;
+        }
+
+        NearCacheProperties properties = beanFactory.getBean(NearCacheProperties.class);
+        CachingAlbumRepository repository = new CachingAlbumRepository((CrudRepository<Album, String>) bean,
+                properties.getMaximumSize(), properties.getTimeToLive().toMillis(), TimeUnit.MILLISECONDS,
+                beanFactory.getBean(InvalidationChannel.class));
+
+        if (beanFactory.getBeanNamesForType(MeterRegistry.class).length > 0) {
+            MeterRegistry meterRegistry = beanFactory.getBean(MeterRegistry.class);
+            bindMetrics(meterRegistry, "albums", repository.getAlbumCache());
+            bindMetrics(meterRegistry, "albums-list", repository.getAlbumListCache());
+        }
+        return repository;
+    }
+
+    static void bindMetrics(MeterRegistry meterRegistry, String name, WindowTinyLfuCache<?, ?> cache) {
+        FunctionCounter.builder("cache.gets", cache, WindowTinyLfuCache::hitCount)
+                .tag("cache", name).tag("result", "hit").register(meterRegistry);
+        FunctionCounter.builder("cache.gets", cache, WindowTinyLfuCache::missCount)
+                .tag("cache", name).tag("result", "miss").register(meterRegistry);
+        FunctionCounter.builder("cache.evictions", cache, WindowTinyLfuCache::evictionCount)
+                .tag("cache", name).register(meterRegistry);
+        FunctionCounter.builder("cache.expirations", cache, WindowTinyLfuCache::expirationCount)
+                .tag("cache", name).register(meterRegistry);
+        Gauge.builder("cache.size", cache, WindowTinyLfuCache::size)
+                .tag("cache", name).register(meterRegistry);
+    }
+}
@@ -0,0 +1,73 @@
+package org.cloudfoundry.samples.music.repositories.cache;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Near-cache settings, bound from {@code albums.near-cache}.
+ */
+@ConfigurationProperties(prefix = "albums.near-cache")
+public class NearCacheProperties {
+
+    public enum Invalidation {
+        /** Invalidate this instance only. */
+        LOCAL,
+        /** Also publish invalidations to the other instances over Redis pub/sub. */
+        REDIS
+    }
+
+    /** Wraps the active album repository in a {@link CachingAlbumRepository}. */
+    private boolean enabled = false;
+
+    /** Albums kept by id; the full list is only cached while it has at most this many albums. */
+    private int maximumSize = 10000;
+
+    /** How long a cached album is served before it is read again. */
+    private Duration timeToLive = Duration.ofSeconds(60);
+
+    private Invalidation invalidation = Invalidation.LOCAL;
+
+    /** Redis pub/sub channel of the {@code redis} invalidation. */
+    private String channel = "albums:invalidations";
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    public void setMaximumSize(int maximumSize) {
+        this.maximumSize = maximumSize;
+    }
+
+    public Duration getTimeToLive() {
+        return timeToLive;
+    }
+
+    public void setTimeToLive(Duration timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+
+    public Invalidation getInvalidation() {
+        return invalidation;
+    }
+
+    public void setInvalidation(Invalidation invalidation) {
+        this.invalidation = invalidation;
+    }
+
+    public String getChannel() {
+        return channel;
+    }
+
+    public void setChannel(String channel) {
+        this.channel = channel;
+    }
+}
@@ -0,0 +1,53 @@
+package org.cloudfoundry.samples.music.repositories.cache;
+
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.util.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * Invalidations over Redis pub/sub, usable on any profile that can reach a Redis server.
+ * Messages are {@code origin|id,id,...}, with nothing after the bar for every album; album
+ * ids never contain a comma. Pub/sub is fire-and-forget, so an instance that misses a
+ * message serves the old album until its entry expires.
+ */
+public class RedisInvalidationChannel implements InvalidationChannel {
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final RedisMessageListenerContainer listenerContainer;
+
+    private final ChannelTopic topic;
+
+    public RedisInvalidationChannel(RedisConnectionFactory connectionFactory, RedisMessageListenerContainer listenerContainer, String topic) {
+        this.redisTemplate = new StringRedisTemplate(connectionFactory);
+        this.listenerContainer = listenerContainer;
+        this.topic = new ChannelTopic(topic);
+    }
+
+    @Override
+    public void publish(String origin, Collection<String> ids) {
+        redisTemplate.convertAndSend(topic.getTopic(), origin + "|" + StringUtils.collectionToCommaDelimitedString(ids));
+    }
+
+    @Override
+    public void subscribe(Listener listener) {
+        listenerContainer.addMessageListener((Message message, byte[] pattern) -> {
+            String body = new String(message.getBody(), StandardCharsets.UTF_8);
+            int separator = body.indexOf('|');
+            if (separator < 0) {
+                return;
+            }
+            String ids = body.substring(separator + 1);
+            listener.onInvalidation(body.substring(0, separator),
+                    ids.isEmpty() ? Collections.emptyList() : Arrays.asList(StringUtils.commaDelimitedListToStringArray(ids)));
+        }, topic);
+    }
+}
@@ -0,0 +1,208 @@
+package org.cloudfoundry.samples.music.repositories.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache with per-entry time-to-live and W-TinyLFU eviction. New entries land in a
+ * small LRU window (1% of the capacity); an entry pushed out of the window only enters the
+ * main space if the {@link FrequencySketch} has seen it more often than the main space's
+ * eviction victim, so one-off scans cannot flush the popular albums. The main space is a
+ * segmented LRU: entries hit again while on probation move to the protected segment.
+ *
+ * <p>All operations take the cache's lock; album reads are dominated by the backend round
+ * trip this cache saves, not by the lock.
+ */
+public class WindowTinyLfuCache<K, V> {
+
+    private enum Segment {
+        WINDOW, PROBATION, PROTECTED
+    }
+
+    private final int maximumSize;
+
+    private final int windowMaximum;
+
+    private final int protectedMaximum;
+
+    private final long timeToLiveNanos;
+
+    private final FrequencySketch sketch;
+
+    private final LinkedHashMap<K, Node<V>> window = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final LinkedHashMap<K, Node<V>> probation = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final LinkedHashMap<K, Node<V>> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    private final LongAdder expirations = new LongAdder();
+
+    public WindowTinyLfuCache(int maximumSize, long timeToLive, TimeUnit unit) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("maximumSize must be at least 1");
+        }
+        this.maximumSize = maximumSize;
+        this.windowMaximum = Math.max(1, maximumSize / 100);
+        this.protectedMaximum = (maximumSize - windowMaximum) * 4 / 5;
+        this.timeToLiveNanos = unit.toNanos(timeToLive);
+        this.sketch = new FrequencySketch(maximumSize);
+    }
+
+    public synchronized V getIfPresent(K key) {
+        sketch.increment(key);
+        Node<V> node = find(key);
+        if (node == null) {
+            misses.increment();
+            return null;
+        }
+        if (node.isExpired(System.nanoTime())) {
+            segment(node.segment).remove(key);
+            expirations.increment();
+            misses.increment();
+            return null;
+        }
+
+        hits.increment();
+        if (node.segment == Segment.PROBATION) {
+            probation.remove(key);
+            node.segment = Segment.PROTECTED;
+            protectedSegment.put(key, node);
+            if (protectedSegment.size() > protectedMaximum) {
+                Map.Entry<K, Node<V>> demoted = eldest(protectedSegment);
+                protectedSegment.remove(demoted.getKey());
+                demoted.getValue().segment = Segment.PROBATION;
+                probation.put(demoted.getKey(), demoted.getValue());
+            }
+        }
+        return node.value;
+    }
+
+    public synchronized void put(K key, V value) {
+        long expiresAt = System.nanoTime() + timeToLiveNanos;
+        Node<V> node = find(key);
+        if (node != null) {
+            node.value = value;
+            node.expiresAt = expiresAt;
+            return;
+        }
+
+        sketch.increment(key);
+        window.put(key, new Node<>(value, expiresAt, Segment.WINDOW));
+        if (window.size() > windowMaximum) {
+            Map.Entry<K, Node<V>> candidate = eldest(window);
+            window.remove(candidate.getKey());
+            admit(candidate.getKey(), candidate.getValue());
+        }
+    }
+
+    public synchronized void invalidate(K key) {
+        Node<V> node = find(key);
+        if (node != null) {
+            segment(node.segment).remove(key);
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        window.clear();
+        probation.clear();
+        protectedSegment.clear();
+    }
+
+    public synchronized int size() {
+        return window.size() + probation.size() + protectedSegment.size();
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    public long expirationCount() {
+        return expirations.sum();
+    }
+
+    // Moves an entry leaving the window into probation, or drops it when the main space is
+    // full and its eviction victim has been used at least as often.
+    private void admit(K candidateKey, Node<V> candidate) {
+        if (size() < maximumSize) {
+            candidate.segment = Segment.PROBATION;
+            probation.put(candidateKey, candidate);
+            return;
+        }
+
+        LinkedHashMap<K, Node<V>> victimSegment = probation.isEmpty() ? protectedSegment : probation;
+        if (victimSegment.isEmpty()) {
+            evictions.increment();
+            return;
+        }
+        Map.Entry<K, Node<V>> victim = eldest(victimSegment);
+        if (victim.getValue().isExpired(System.nanoTime()) || sketch.frequency(candidateKey) > sketch.frequency(victim.getKey())) {
+            victimSegment.remove(victim.getKey());
+            candidate.segment = Segment.PROBATION;
+            probation.put(candidateKey, candidate);
+        }
+        evictions.increment();
+    }
+
+    private Node<V> find(K key) {
+        Node<V> node = window.get(key);
+        if (node == null) {
+            node = probation.get(key);
+        }
+        if (node == null) {
+            node = protectedSegment.get(key);
+        }
+        return node;
+    }
+
+    private LinkedHashMap<K, Node<V>> segment(Segment segment) {
+        switch (segment) {
+            case WINDOW:
+                return window;
+            case PROBATION:
+                return probation;
+            default:
+                return protectedSegment;
+        }
+    }
+
+    private static <K, V> Map.Entry<K, Node<V>> eldest(LinkedHashMap<K, Node<V>> segment) {
+        Iterator<Map.Entry<K, Node<V>>> iterator = segment.entrySet().iterator();
+        return iterator.next();
+    }
+
+    private static final class Node<V> {
+
+        private V value;
+
+        private long expiresAt;
+
+        private Segment segment;
+
+        Node(V value, long expiresAt, Segment segment) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+            this.segment = segment;
+        }
+
+        boolean isExpired(long now) {
+            return now - expiresAt >= 0;
+        }
+    }
+}
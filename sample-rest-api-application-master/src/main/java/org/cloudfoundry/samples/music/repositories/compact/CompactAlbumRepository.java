@@ -0,0 +1,500 @@
+package org.cloudfoundry.samples.music.repositories.compact;
+
+import org.cloudfoundry.samples.music.domain.Album;
+import org.cloudfoundry.samples.music.domain.AlbumPage;
+import org.cloudfoundry.samples.music.domain.IdGenerator;
+import org.cloudfoundry.samples.music.domain.TimeOrderedIdGenerator;
+import org.cloudfoundry.samples.music.repositories.AlbumRepository;
+import org.cloudfoundry.samples.music.repositories.SortedIds;
+import org.springframework.data.repository.CrudRepository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Albums held column-wise on the heap: one array per field, indexed by row. Artist and
+ * genre are dictionary-encoded to int codes, release years are packed into a short and
+ * track counts into an int, so a catalog with a few hundred artists and a handful of
+ * genres keeps one copy of each name instead of one per album. {@link Album} objects are
+ * only built when a caller reads them, and changes to them are not seen until saved.
+ *
+ * <p>Deleting a row moves the last row into its place, so the columns stay dense. Artist
+ * and title matching is exact, as in the JPA repository.
+ */
+public class CompactAlbumRepository implements CrudRepository<Album, String>, AlbumRepository {
+
+    private static final int STREAM_BATCH_SIZE = 500;
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    // release years: 0..9999 as written without leading zeros, NO_YEAR for null, and
+    // anything else as -2 - its code in the irregular year dictionary
+    private static final short NO_YEAR = -1;
+
+    private static final int NO_TRACK_COUNT = Integer.MIN_VALUE;
+
+    // id table slots: row + 1, EMPTY_SLOT or DELETED_SLOT
+    private static final int EMPTY_SLOT = 0;
+
+    private static final int DELETED_SLOT = -1;
+
+    private static final double MAX_LOAD = 0.6;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final IdGenerator idGenerator;
+
+    // open-addressing table from id to row, probed by comparing against the id column
+    private int[] rowsById;
+
+    private int usedSlots;
+
+    private StringDictionary artists;
+
+    private StringDictionary genres;
+
+    private StringDictionary irregularYears;
+
+    private String[] ids;
+
+    private String[] titles;
+
+    private int[] artistCodes;
+
+    private int[] genreCodes;
+
+    private short[] releaseYears;
+
+    private int[] trackCounts;
+
+    private int size;
+
+    // built on the first page read after an id was added or removed
+    private volatile SortedIds sortedIds;
+
+    public CompactAlbumRepository() {
+        this(new TimeOrderedIdGenerator());
+    }
+
+    public CompactAlbumRepository(IdGenerator idGenerator) {
+        this.idGenerator = idGenerator;
+        reset();
+    }
+
+    @Override
+    public <S extends Album> S save(S album) {
+        if (album.getId() == null) {
+            album.setId(idGenerator.generateId());
+        }
+        lock.writeLock().lock();
+        try {
+            write(album);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return album;
+    }
+
+    @Override
+    public <S extends Album> Iterable<S> saveAll(Iterable<S> albums) {
+        List<S> result = new ArrayList<>();
+        for (S album : albums) {
+            if (album.getId() == null) {
+                album.setId(idGenerator.generateId());
+            }
+            result.add(album);
+        }
+        lock.writeLock().lock();
+        try {
+            for (S album : result) {
+                write(album);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Saves the album unless one with the same artist and title exists. The check and the
+     * write happen under one write lock, so concurrent creates cannot both succeed.
+     */
+    @Override
+    public boolean insertIfAbsent(Album album) {
+        if (album.getId() == null) {
+            album.setId(idGenerator.generateId());
+        }
+        lock.writeLock().lock();
+        try {
+            if (rowOf(album.getArtist(), album.getTitle()) >= 0) {
+                return false;
+            }
+            write(album);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Optional<Album> findById(String id) {
+        lock.readLock().lock();
+        try {
+            int row = rowOf(id);
+            return row < 0 ? Optional.empty() : Optional.of(view(row));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean existsById(String id) {
+        lock.readLock().lock();
+        try {
+            return rowOf(id) >= 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Iterable<Album> findAll() {
+        lock.readLock().lock();
+        try {
+            List<Album> albums = new ArrayList<>(size);
+            for (int row = 0; row < size; row++) {
+                albums.add(view(row));
+            }
+            return albums;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Iterable<Album> findAllById(Iterable<String> ids) {
+        List<Album> albums = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (String id : ids) {
+                int row = rowOf(id);
+                if (row >= 0) {
+                    albums.add(view(row));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return albums;
+    }
+
+    @Override
+    public long count() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void deleteById(String id) {
+        lock.writeLock().lock();
+        try {
+            remove(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void delete(Album album) {
+        deleteById(album.getId());
+    }
+
+    @Override
+    public void deleteAll(Iterable<? extends Album> albums) {
+        lock.writeLock().lock();
+        try {
+            for (Album album : albums) {
+                remove(album.getId());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Also drops the dictionaries, including values no longer used by any album. */
+    @Override
+    public void deleteAll() {
+        lock.writeLock().lock();
+        try {
+            reset();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * An unknown artist answers from the dictionary alone; otherwise the artist column is
+     * scanned as ints and only rows of that artist compare titles.
+     */
+    @Override
+    public boolean existsByArtistAndTitle(String artist, String title) {
+        lock.readLock().lock();
+        try {
+            return rowOf(artist, title) >= 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Pages are in id order like the JPA repository, keyed by the last id returned. The ids
+     * are sorted once and the copy is reused until an id is added or removed, so a page is
+     * a binary search rather than a walk of the id column.
+     */
+    @Override
+    public AlbumPage findPage(String position, int limit) {
+        lock.readLock().lock();
+        try {
+            List<Album> albums = new ArrayList<>();
+            for (String id : sortedIds().after(position, limit + 1)) {
+                albums.add(view(rowOf(id)));
+            }
+            return AlbumPage.fromIdOrderedProbe(albums, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Walks the albums in id order {@value #STREAM_BATCH_SIZE} at a time, so only one batch
+     * of views exists at a time. Albums deleted while the stream is open are skipped and
+     * albums added are not seen.
+     */
+    @Override
+    public Stream<Album> streamAll() {
+        SortedIds snapshot;
+        lock.readLock().lock();
+        try {
+            snapshot = sortedIds();
+        } finally {
+            lock.readLock().unlock();
+        }
+        return snapshot.stream(STREAM_BATCH_SIZE, this::findAllById);
+    }
+
+    /**
+     * Hands every album to the action in row order, in one pass under one read lock. Meant
+     * for copying the whole store out when id order does not matter; the action must not
+     * write to this repository.
+     */
+    public void forEachAlbum(Consumer<? super Album> action) {
+        lock.readLock().lock();
+        try {
+            for (int row = 0; row < size; row++) {
+                action.accept(view(row));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Distinct values held by the artist, genre and irregular release year dictionaries. */
+    public int getDictionarySize() {
+        lock.readLock().lock();
+        try {
+            return artists.size() + genres.size() + irregularYears.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void write(Album album) {
+        int row = rowOf(album.getId());
+        if (row < 0) {
+            if (size == ids.length) {
+                grow();
+            }
+            if (usedSlots + 1 > rowsById.length * MAX_LOAD) {
+                rehash(size + 1 > rowsById.length * MAX_LOAD / 2 ? rowsById.length * 2 : rowsById.length);
+            }
+            row = size++;
+            ids[row] = album.getId();
+            sortedIds = null;
+            int slot = insertSlot(album.getId());
+            if (rowsById[slot] == EMPTY_SLOT) {
+                usedSlots++;
+            }
+            rowsById[slot] = row + 1;
+        }
+        titles[row] = album.getTitle();
+        artistCodes[row] = artists.encode(album.getArtist());
+        genreCodes[row] = genres.encode(album.getGenre());
+        releaseYears[row] = encodeYear(album.getReleaseYear());
+        trackCounts[row] = album.getTrackCount() == null ? NO_TRACK_COUNT : album.getTrackCount();
+    }
+
+    private void remove(String id) {
+        int slot = slotOf(id);
+        if (slot < 0) {
+            return;
+        }
+        int row = rowsById[slot] - 1;
+        rowsById[slot] = DELETED_SLOT;
+        sortedIds = null;
+        int last = --size;
+        if (row != last) {
+            rowsById[slotOf(ids[last])] = row + 1;
+            ids[row] = ids[last];
+            titles[row] = titles[last];
+            artistCodes[row] = artistCodes[last];
+            genreCodes[row] = genreCodes[last];
+            releaseYears[row] = releaseYears[last];
+            trackCounts[row] = trackCounts[last];
+        }
+        ids[last] = null;
+        titles[last] = null;
+    }
+
+    // called under the read or write lock; readers racing to build it build the same ids
+    private SortedIds sortedIds() {
+        SortedIds current = sortedIds;
+        if (current == null) {
+            current = SortedIds.of(ids, size);
+            sortedIds = current;
+        }
+        return current;
+    }
+
+    private int rowOf(String id) {
+        int slot = slotOf(id);
+        return slot < 0 ? -1 : rowsById[slot] - 1;
+    }
+
+    private int slotOf(String id) {
+        int mask = rowsById.length - 1;
+        for (int slot = spread(id.hashCode()) & mask; ; slot = (slot + 1) & mask) {
+            int entry = rowsById[slot];
+            if (entry == EMPTY_SLOT) {
+                return -1;
+            }
+            if (entry != DELETED_SLOT && id.equals(ids[entry - 1])) {
+                return slot;
+            }
+        }
+    }
+
+    private int insertSlot(String id) {
+        int mask = rowsById.length - 1;
+        int slot = spread(id.hashCode()) & mask;
+        while (rowsById[slot] != EMPTY_SLOT && rowsById[slot] != DELETED_SLOT) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash(int capacity) {
+        rowsById = new int[capacity];
+        usedSlots = size;
+        for (int row = 0; row < size; row++) {
+            rowsById[insertSlot(ids[row])] = row + 1;
+        }
+    }
+
+    private static int spread(int hash) {
+        return (hash ^ (hash >>> 16)) * 0x9E3779B9;
+    }
+
+    private int rowOf(String artist, String title) {
+        int artistCode = artists.lookup(artist);
+        if (artistCode == StringDictionary.MISSING) {
+            return -1;
+        }
+        for (int row = 0; row < size; row++) {
+            if (artistCodes[row] == artistCode && (title == null ? titles[row] == null : title.equals(titles[row]))) {
+                return row;
+            }
+        }
+        return -1;
+    }
+
+    private Album view(int row) {
+        Album album = new Album(titles[row], artists.decode(artistCodes[row]), decodeYear(releaseYears[row]), genres.decode(genreCodes[row]));
+        album.setId(ids[row]);
+        if (trackCounts[row] != NO_TRACK_COUNT) {
+            album.setTrackCount(trackCounts[row]);
+        }
+        return album;
+    }
+
+    private short encodeYear(String releaseYear) {
+        if (releaseYear == null) {
+            return NO_YEAR;
+        }
+        if (isPlainYear(releaseYear)) {
+            return Short.parseShort(releaseYear);
+        }
+        int code = irregularYears.encode(releaseYear);
+        if (code > Short.MAX_VALUE - 2) {
+            throw new IllegalStateException("Too many distinct non-numeric release years");
+        }
+        return (short) (-2 - code);
+    }
+
+    // digits that read back the same from a short: 0..9999 without leading zeros
+    private static boolean isPlainYear(String releaseYear) {
+        int length = releaseYear.length();
+        if (length == 0 || length > 4 || (length > 1 && releaseYear.charAt(0) == '0')) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = releaseYear.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String decodeYear(short releaseYear) {
+        if (releaseYear == NO_YEAR) {
+            return null;
+        }
+        return releaseYear >= 0 ? Integer.toString(releaseYear) : irregularYears.decode(-2 - releaseYear);
+    }
+
+    private void grow() {
+        int capacity = ids.length * 2;
+        ids = Arrays.copyOf(ids, capacity);
+        titles = Arrays.copyOf(titles, capacity);
+        artistCodes = Arrays.copyOf(artistCodes, capacity);
+        genreCodes = Arrays.copyOf(genreCodes, capacity);
+        releaseYears = Arrays.copyOf(releaseYears, capacity);
+        trackCounts = Arrays.copyOf(trackCounts, capacity);
+    }
+
+    private void reset() {
+        rowsById = new int[INITIAL_CAPACITY * 2];
+        usedSlots = 0;
+        artists = new StringDictionary();
+        genres = new StringDictionary();
+        irregularYears = new StringDictionary();
+        ids = new String[INITIAL_CAPACITY];
+        titles = new String[INITIAL_CAPACITY];
+        artistCodes = new int[INITIAL_CAPACITY];
+        genreCodes = new int[INITIAL_CAPACITY];
+        releaseYears = new short[INITIAL_CAPACITY];
+        trackCounts = new int[INITIAL_CAPACITY];
+        size = 0;
+        sortedIds = null;
+    }
+}
@@ -0,0 +1,53 @@
+package org.cloudfoundry.samples.music.repositories.compact;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assigns each distinct string a dense int code, so a column of repeated values holds one
+ * copy of each value and an int per row. {@code null} has the code {@link #NULL}. Codes
+ * are never reused: a value stays in the dictionary after its last row goes, until the
+ * owner starts a new dictionary. Not thread-safe.
+ */
+class StringDictionary {
+
+    static final int NULL = -1;
+
+    static final int MISSING = -2;
+
+    private final Map<String, Integer> codes = new HashMap<>();
+
+    private final List<String> values = new ArrayList<>();
+
+    int encode(String value) {
+        if (value == null) {
+            return NULL;
+        }
+        Integer code = codes.get(value);
+        if (code == null) {
+            code = values.size();
+            codes.put(value, code);
+            values.add(value);
+        }
+        return code;
+    }
+
+    /** Returns the code of a value already in the dictionary, or {@link #MISSING} without adding it. */
+    int lookup(String value) {
+        if (value == null) {
+            return NULL;
+        }
+        Integer code = codes.get(value);
+        return code == null ? MISSING : code;
+    }
+
+    String decode(int code) {
+        return code == NULL ? null : values.get(code);
+    }
+
+    int size() {
+        return values.size();
+    }
+}
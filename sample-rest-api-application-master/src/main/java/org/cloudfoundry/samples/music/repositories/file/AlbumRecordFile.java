@@ -0,0 +1,192 @@
+package org.cloudfoundry.samples.music.repositories.file;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * A memory-mapped file of checksummed records, used both for the album log and for
+ * snapshots. The file starts with a header of a magic number, a format version and the
+ * log generation. Each record is an int length of its body, the CRC32 of the body and
+ * the body itself: a record type byte followed by the payload.
+ *
+ * <p>The mapping grows by remapping a larger region, and the unwritten tail of the file
+ * is zeros, so a zero length marks the end. The length is written last, and a record
+ * whose checksum does not match ends the file too, so a write torn by a crash is dropped
+ * on the next open. Not thread-safe.
+ */
+class AlbumRecordFile implements AutoCloseable {
+
+    static final byte SAVE = 1;
+
+    static final byte DELETE = 2;
+
+    private static final int MAGIC = 0x534D414C;
+
+    private static final byte VERSION = 1;
+
+    private static final int HEADER_SIZE = Integer.BYTES + 1 + Long.BYTES;
+
+    private static final int RECORD_HEADER_SIZE = Integer.BYTES * 2;
+
+    interface RecordHandler {
+
+        /** Called with the payload as a read-only view of the mapping, positioned at its start. */
+        void record(byte type, ByteBuffer payload);
+    }
+
+    private final Path path;
+
+    private final FileChannel channel;
+
+    private final long generation;
+
+    private final CRC32 crc = new CRC32();
+
+    private MappedByteBuffer buffer;
+
+    private int position = HEADER_SIZE;
+
+    private AlbumRecordFile(Path path, FileChannel channel, long generation, MappedByteBuffer buffer) {
+        this.path = path;
+        this.channel = channel;
+        this.generation = generation;
+        this.buffer = buffer;
+    }
+
+    /** Creates the file, replacing any existing one, and writes its header. */
+    static AlbumRecordFile create(Path path, long generation, int initialSize) {
+        try {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(initialSize, HEADER_SIZE));
+            buffer.putInt(0, MAGIC);
+            buffer.put(Integer.BYTES, VERSION);
+            buffer.putLong(Integer.BYTES + 1, generation);
+            return new AlbumRecordFile(path, channel, generation, buffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create album file " + path, e);
+        }
+    }
+
+    /**
+     * Opens an existing file, hands every intact record to the handler straight from the
+     * mapping, and positions appends after the last of them.
+     */
+    static AlbumRecordFile open(Path path, RecordHandler handler) {
+        try {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.get(Integer.BYTES) != VERSION) {
+                channel.close();
+                throw new IllegalStateException("Not an album file: " + path);
+            }
+            AlbumRecordFile file = new AlbumRecordFile(path, channel, buffer.getLong(Integer.BYTES + 1), buffer);
+            file.replay(handler);
+            return file;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open album file " + path, e);
+        }
+    }
+
+    long getGeneration() {
+        return generation;
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    /** Bytes of header and records written so far. */
+    int size() {
+        return position;
+    }
+
+    boolean isEmpty() {
+        return position == HEADER_SIZE;
+    }
+
+    void append(byte type, byte[] payload) {
+        int length = 1 + payload.length;
+        ensureCapacity(RECORD_HEADER_SIZE + length + Integer.BYTES);
+
+        crc.reset();
+        crc.update(type);
+        crc.update(payload);
+        int body = position + RECORD_HEADER_SIZE;
+        buffer.putInt(position + Integer.BYTES, (int) crc.getValue());
+        buffer.put(body, type);
+        for (int i = 0; i < payload.length; i++) {
+            buffer.put(body + 1 + i, payload[i]);
+        }
+        buffer.putInt(body + length, 0);
+        buffer.putInt(position, length);
+        position = body + length;
+    }
+
+    /** Writes the mapped changes through to the disk. */
+    void force() {
+        buffer.force();
+    }
+
+    @Override
+    public void close() {
+        try {
+            buffer.force();
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not close album file " + path, e);
+        }
+    }
+
+    private void replay(RecordHandler handler) {
+        ByteBuffer view = buffer.asReadOnlyBuffer();
+        while (position + RECORD_HEADER_SIZE <= buffer.capacity()) {
+            int length = buffer.getInt(position);
+            int body = position + RECORD_HEADER_SIZE;
+            if (length <= 0 || length > buffer.capacity() - body) {
+                break;
+            }
+            view.limit(body + length).position(body);
+            crc.reset();
+            crc.update(view);
+            if ((int) crc.getValue() != buffer.getInt(position + Integer.BYTES)) {
+                break;
+            }
+            view.limit(body + length).position(body + 1);
+            handler.record(buffer.get(body), view.slice());
+            position = body + length;
+        }
+        // a torn record may have left a non-zero length behind, which would end a later replay early
+        clearTail();
+    }
+
+    private void clearTail() {
+        int end = Math.min(buffer.capacity(), position + RECORD_HEADER_SIZE);
+        for (int i = position; i < end; i++) {
+            buffer.put(i, (byte) 0);
+        }
+    }
+
+    // keeps room for the zero length that ends the file after the record
+    private void ensureCapacity(int bytes) {
+        if (position + bytes <= buffer.capacity()) {
+            return;
+        }
+        long capacity = Math.max((long) buffer.capacity() * 2, (long) position + bytes);
+        if (capacity > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Album file " + path + " is full; take a snapshot to compact it");
+        }
+        try {
+            buffer.force();
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not grow album file " + path, e);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package org.cloudfoundry.samples.music.repositories.file;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.nio.file.Paths;
+import java.time.Duration;
+
+/**
+ * Settings of {@link FileAlbumRepository}, bound from {@code file.albums} on the file profile.
+ */
+@ConfigurationProperties(prefix = "file.albums")
+public class FileAlbumProperties {
+
+    /** Directory holding the album log and snapshot. */
+    private String directory = Paths.get(System.getProperty("java.io.tmpdir"), "spring-music", "albums").toString();
+
+    /** Bytes mapped for a new log; the mapping doubles whenever it fills up. */
+    private int initialLogSize = 1024 * 1024;
+
+    /** Forces every log append to disk before the write returns. */
+    private boolean fsync = true;
+
+    /** Time between snapshots, which compact the log into the current albums and bound replay on startup. */
+    private Duration snapshotInterval = Duration.ofMinutes(10);
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(String directory) {
+        this.directory = directory;
+    }
+
+    public int getInitialLogSize() {
+        return initialLogSize;
+    }
+
+    public void setInitialLogSize(int initialLogSize) {
+        this.initialLogSize = initialLogSize;
+    }
+
+    public boolean isFsync() {
+        return fsync;
+    }
+
+    public void setFsync(boolean fsync) {
+        this.fsync = fsync;
+    }
+
+    public Duration getSnapshotInterval() {
+        return snapshotInterval;
+    }
+
+    public void setSnapshotInterval(Duration snapshotInterval) {
+        this.snapshotInterval = snapshotInterval;
+    }
+}
@@ -0,0 +1,359 @@
+package org.cloudfoundry.samples.music.repositories.file;
+
+import org.cloudfoundry.samples.music.domain.Album;
+import org.cloudfoundry.samples.music.domain.AlbumPage;
+import org.cloudfoundry.samples.music.domain.IdGenerator;
+import org.cloudfoundry.samples.music.repositories.AlbumRepository;
+import org.cloudfoundry.samples.music.repositories.compact.CompactAlbumRepository;
+import org.cloudfoundry.samples.music.repositories.redis.AlbumRedisSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.repository.CrudRepository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Albums persisted in a local directory as a snapshot and a log, both
+ * {@link AlbumRecordFile}s, and served from a {@link CompactAlbumRepository} held in
+ * memory. Every save and delete is appended to the log before it is applied, in the binary
+ * layout of {@link AlbumRedisSerializer}, and forced to disk when {@code fsync} is set.
+ *
+ * <p>Snapshots are taken every {@code snapshot-interval}: the current albums are written
+ * to {@code albums.snapshot} under the next log generation, a fresh log is started and the
+ * previous one deleted, so startup replays at most one interval of log after the snapshot.
+ * The snapshot is written beside the old one and moved into place, and a crash at any
+ * point leaves a snapshot and the log that follows it. Writers are serialized, and
+ * readers only see the in-memory albums.
+ */
+public class FileAlbumRepository implements CrudRepository<Album, String>, AlbumRepository, AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileAlbumRepository.class);
+
+    static final String SNAPSHOT = "albums.snapshot";
+
+    private static final String LOG_PREFIX = "albums-";
+
+    private static final String LOG_SUFFIX = ".log";
+
+    private final AlbumRedisSerializer serializer = new AlbumRedisSerializer(AlbumRedisSerializer.Codec.BINARY);
+
+    private final Lock writes = new ReentrantLock();
+
+    private final CompactAlbumRepository albums;
+
+    private final IdGenerator idGenerator;
+
+    private final Path directory;
+
+    private final FileAlbumProperties properties;
+
+    private final ScheduledExecutorService snapshotter;
+
+    private AlbumRecordFile log;
+
+    public FileAlbumRepository(FileAlbumProperties properties, IdGenerator idGenerator) {
+        this.properties = properties;
+        this.idGenerator = idGenerator;
+        this.albums = new CompactAlbumRepository(idGenerator);
+        this.directory = Paths.get(properties.getDirectory());
+        recover();
+
+        this.snapshotter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "album-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = properties.getSnapshotInterval().toMillis();
+        snapshotter.scheduleWithFixedDelay(this::snapshotQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public <S extends Album> S save(S album) {
+        if (album.getId() == null) {
+            album.setId(idGenerator.generateId());
+        }
+        writes.lock();
+        try {
+            appendSave(album);
+            forceIfRequired();
+            albums.save(album);
+        } finally {
+            writes.unlock();
+        }
+        return album;
+    }
+
+    /** Appends every album and forces the log once for the whole batch. */
+    @Override
+    public <S extends Album> Iterable<S> saveAll(Iterable<S> entities) {
+        List<S> saved = new ArrayList<>();
+        for (S album : entities) {
+            if (album.getId() == null) {
+                album.setId(idGenerator.generateId());
+            }
+            saved.add(album);
+        }
+        writes.lock();
+        try {
+            for (S album : saved) {
+                appendSave(album);
+            }
+            forceIfRequired();
+            albums.saveAll(saved);
+        } finally {
+            writes.unlock();
+        }
+        return saved;
+    }
+
+    /**
+     * Saves the album unless one with the same artist and title exists. The check and the
+     * write happen under the writer lock, so concurrent creates cannot both succeed.
+     */
+    @Override
+    public boolean insertIfAbsent(Album album) {
+        writes.lock();
+        try {
+            if (albums.existsByArtistAndTitle(album.getArtist(), album.getTitle())) {
+                return false;
+            }
+            save(album);
+            return true;
+        } finally {
+            writes.unlock();
+        }
+    }
+
+    @Override
+    public Optional<Album> findById(String id) {
+        return albums.findById(id);
+    }
+
+    @Override
+    public boolean existsById(String id) {
+        return albums.existsById(id);
+    }
+
+    @Override
+    public Iterable<Album> findAll() {
+        return albums.findAll();
+    }
+
+    @Override
+    public Iterable<Album> findAllById(Iterable<String> ids) {
+        return albums.findAllById(ids);
+    }
+
+    @Override
+    public long count() {
+        return albums.count();
+    }
+
+    @Override
+    public void deleteById(String id) {
+        writes.lock();
+        try {
+            if (albums.existsById(id)) {
+                log.append(AlbumRecordFile.DELETE, id.getBytes(StandardCharsets.UTF_8));
+                forceIfRequired();
+                albums.deleteById(id);
+            }
+        } finally {
+            writes.unlock();
+        }
+    }
+
+    @Override
+    public void delete(Album album) {
+        deleteById(album.getId());
+    }
+
+    @Override
+    public void deleteAll(Iterable<? extends Album> entities) {
+        writes.lock();
+        try {
+            List<Album> deleted = new ArrayList<>();
+            for (Album album : entities) {
+                if (albums.existsById(album.getId())) {
+                    log.append(AlbumRecordFile.DELETE, album.getId().getBytes(StandardCharsets.UTF_8));
+                    deleted.add(album);
+                }
+            }
+            forceIfRequired();
+            albums.deleteAll(deleted);
+        } finally {
+            writes.unlock();
+        }
+    }
+
+    /** Takes an empty snapshot rather than logging a delete per album. */
+    @Override
+    public void deleteAll() {
+        writes.lock();
+        try {
+            albums.deleteAll();
+            snapshot(true);
+        } finally {
+            writes.unlock();
+        }
+    }
+
+    @Override
+    public boolean existsByArtistAndTitle(String artist, String title) {
+        return albums.existsByArtistAndTitle(artist, title);
+    }
+
+    @Override
+    public AlbumPage findPage(String position, int limit) {
+        return albums.findPage(position, limit);
+    }
+
+    @Override
+    public Stream<Album> streamAll() {
+        return albums.streamAll();
+    }
+
+    /** Compacts the log into a new snapshot, unless nothing was written since the last one. */
+    public void snapshot() {
+        writes.lock();
+        try {
+            snapshot(false);
+        } finally {
+            writes.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        snapshotter.shutdownNow();
+        writes.lock();
+        try {
+            log.close();
+        } finally {
+            writes.unlock();
+        }
+    }
+
+    private void recover() {
+        try {
+            Files.createDirectories(directory);
+            Files.deleteIfExists(snapshotPath().resolveSibling(SNAPSHOT + ".tmp"));
+
+            long generation = 0;
+            if (Files.exists(snapshotPath())) {
+                try (AlbumRecordFile snapshot = AlbumRecordFile.open(snapshotPath(), this::apply)) {
+                    generation = snapshot.getGeneration();
+                }
+            }
+            long snapshotAlbums = albums.count();
+
+            Path logPath = logPath(generation);
+            log = Files.exists(logPath)
+                    ? AlbumRecordFile.open(logPath, this::apply)
+                    : AlbumRecordFile.create(logPath, generation, properties.getInitialLogSize());
+            deleteLogsOtherThan(logPath);
+
+            logger.info("Recovered " + albums.count() + " albums from " + directory + ": " + snapshotAlbums
+                    + " from the snapshot, then " + log.size() + " bytes of log generation " + generation);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not recover albums from " + directory, e);
+        }
+    }
+
+    private void apply(byte type, ByteBuffer payload) {
+        byte[] bytes = new byte[payload.remaining()];
+        payload.get(bytes);
+        switch (type) {
+            case AlbumRecordFile.SAVE:
+                albums.save(serializer.deserialize(bytes));
+                break;
+            case AlbumRecordFile.DELETE:
+                albums.deleteById(new String(bytes, StandardCharsets.UTF_8));
+                break;
+            default:
+                logger.warn("Skipping album record of unknown type " + type);
+        }
+    }
+
+    // called with the writer lock held
+    private void snapshot(boolean evenIfUnchanged) {
+        if (log.isEmpty() && !evenIfUnchanged) {
+            return;
+        }
+        long generation = log.getGeneration() + 1;
+        Path written = snapshotPath().resolveSibling(SNAPSHOT + ".tmp");
+        try {
+            // one pass in row order; replay does not need the albums sorted
+            try (AlbumRecordFile snapshot = AlbumRecordFile.create(written, generation, properties.getInitialLogSize())) {
+                albums.forEachAlbum(album -> snapshot.append(AlbumRecordFile.SAVE, serializer.serialize(album)));
+            }
+            AlbumRecordFile next = AlbumRecordFile.create(logPath(generation), generation, properties.getInitialLogSize());
+            try {
+                Files.move(written, snapshotPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                next.close();
+                throw e;
+            }
+
+            AlbumRecordFile previous = log;
+            log = next;
+            previous.close();
+            Files.deleteIfExists(previous.getPath());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write album snapshot in " + directory, e);
+        }
+    }
+
+    private void snapshotQuietly() {
+        try {
+            snapshot();
+        } catch (RuntimeException e) {
+            logger.warn("Album snapshot failed, keeping the current log: " + e.getMessage());
+        }
+    }
+
+    private void appendSave(Album album) {
+        log.append(AlbumRecordFile.SAVE, serializer.serialize(album));
+    }
+
+    private void forceIfRequired() {
+        if (properties.isFsync()) {
+            log.force();
+        }
+    }
+
+    private void deleteLogsOtherThan(Path current) throws IOException {
+        try (DirectoryStream<Path> logs = Files.newDirectoryStream(directory, LOG_PREFIX + "*" + LOG_SUFFIX)) {
+            for (Path stale : logs) {
+                if (!stale.equals(current)) {
+                    Files.delete(stale);
+                }
+            }
+        }
+    }
+
+    private Path snapshotPath() {
+        return directory.resolve(SNAPSHOT);
+    }
+
+    private Path logPath(long generation) {
+        return directory.resolve(LOG_PREFIX + generation + LOG_SUFFIX);
+    }
+}
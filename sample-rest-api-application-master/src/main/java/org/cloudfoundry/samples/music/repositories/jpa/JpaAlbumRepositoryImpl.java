@@ -0,0 +1,119 @@
+package org.cloudfoundry.samples.music.repositories.jpa;
+
+import org.cloudfoundry.samples.music.config.data.ReplicaRoutingDataSource;
+import org.cloudfoundry.samples.music.domain.Album;
+import org.cloudfoundry.samples.music.domain.AlbumPage;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceContext;
+import javax.persistence.PersistenceUnit;
+import javax.persistence.TypedQuery;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.stream.Stream;
+
+public class JpaAlbumRepositoryImpl {
+
+    private static final Logger logger = LoggerFactory.getLogger(JpaAlbumRepositoryImpl.class);
+
+    private static final int STREAM_FETCH_SIZE = 500;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @PersistenceUnit
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Transactional(readOnly = true)
+    public AlbumPage findPage(String position, int limit) {
+        TypedQuery<Album> query;
+        if (position == null) {
+            query = entityManager.createQuery("select a from Album a order by a.id", Album.class);
+        } else {
+            query = entityManager.createQuery("select a from Album a where a.id > :position order by a.id", Album.class)
+                    .setParameter("position", position);
+        }
+        return AlbumPage.fromIdOrderedProbe(query.setMaxResults(limit + 1).getResultList(), limit);
+    }
+
+    // Without a unique constraint on (artist, title) this is a check and an insert in one
+    // transaction; concurrent inserts of the same album can still both succeed.
+    @Transactional
+    public boolean insertIfAbsent(Album album) {
+        Long matches = entityManager.createQuery("select count(a) from Album a where a.artist = :artist and a.title = :title", Long.class)
+                .setParameter("artist", album.getArtist())
+                .setParameter("title", album.getTitle())
+                .getSingleResult();
+        if (matches > 0) {
+            return false;
+        }
+        if (album.getId() == null) {
+            entityManager.persist(album);
+        } else {
+            entityManager.merge(album);
+        }
+        return true;
+    }
+
+    // A stateless session keeps no persistence context, so streamed albums are never
+    // retained, and its own read-only transaction keeps the forward-only cursor open:
+    // PostgreSQL only honours the fetch size with auto-commit off, and MySQL URLs get
+    // useCursorFetch from DataSourcePoolConfigurer. The stream is read after this method
+    // returns, outside any Spring transaction, so the connection is taken here and routed
+    // to a replica when there are any.
+    public Stream<Album> streamAll() {
+        Connection connection = readOnlyConnection();
+        StatelessSession session = entityManagerFactory.unwrap(SessionFactory.class).openStatelessSession(connection);
+        try {
+            Transaction transaction = session.beginTransaction();
+            return session.createQuery("select a from Album a", Album.class)
+                    .setFetchSize(STREAM_FETCH_SIZE)
+                    .setReadOnly(true)
+                    .stream()
+                    .onClose(() -> {
+                        try {
+                            transaction.rollback();
+                        } finally {
+                            session.close();
+                            closeQuietly(connection);
+                        }
+                    });
+        } catch (RuntimeException e) {
+            session.close();
+            closeQuietly(connection);
+            throw e;
+        }
+    }
+
+    private Connection readOnlyConnection() {
+        try {
+            if (dataSource instanceof ReplicaRoutingDataSource) {
+                return ((ReplicaRoutingDataSource) dataSource).getReadOnlyConnection();
+            }
+            return dataSource.getConnection();
+        } catch (SQLException e) {
+            throw new DataAccessResourceFailureException("Could not open a connection to stream albums", e);
+        }
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            logger.warn("Could not close album stream connection: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package org.cloudfoundry.samples.music.repositories.mongodb;
+
+import org.bson.Document;
+import org.cloudfoundry.samples.music.domain.Album;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Creates the indexes the album queries rely on when the mongodb profile starts, and
+ * fails startup if they are not there afterwards. Paging and streaming walk {@code _id},
+ * which MongoDB always indexes, so the only extra index backs the artist+title lookup.
+ *
+ * <p>That index is not unique unless {@code mongodb.albums.unique-artist-title} is set.
+ * Then the collection is first checked for albums sharing an artist and title, and
+ * startup fails naming them, before a non-unique index left by an earlier start is
+ * replaced. A unique index is kept when uniqueness is not asked for.
+ */
+public class MongoAlbumIndexes implements InitializingBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(MongoAlbumIndexes.class);
+
+    public static final String ARTIST_TITLE_INDEX = "artist_title";
+
+    static final Document ARTIST_TITLE_KEYS = new Document("artist", 1).append("title", 1);
+
+    // duplicate artist+title pairs named in the startup error
+    private static final int DUPLICATES_REPORTED = 5;
+
+    private final MongoOperations mongoOperations;
+
+    private final boolean unique;
+
+    public MongoAlbumIndexes(MongoOperations mongoOperations) {
+        this(mongoOperations, new MongoAlbumProperties());
+    }
+
+    public MongoAlbumIndexes(MongoOperations mongoOperations, MongoAlbumProperties properties) {
+        this.mongoOperations = mongoOperations;
+        this.unique = properties.isUniqueArtistTitle();
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        IndexOperations indexOps = mongoOperations.indexOps(Album.class);
+        Optional<IndexInfo> existing = indexOps.getIndexInfo().stream()
+                .filter(indexInfo -> ARTIST_TITLE_INDEX.equals(indexInfo.getName()))
+                .findFirst();
+        if (!existing.isPresent() || (unique && !existing.get().isUnique())) {
+            if (unique) {
+                rejectDuplicates();
+            }
+            if (existing.isPresent()) {
+                logger.info("Replacing non-unique album index " + ARTIST_TITLE_INDEX + " with a unique one");
+                indexOps.dropIndex(ARTIST_TITLE_INDEX);
+            }
+            createArtistTitleIndex(indexOps);
+        }
+
+        boolean present = indexOps.getIndexInfo().stream().anyMatch(this::isArtistTitleIndex);
+        if (!present) {
+            throw new IllegalStateException((unique ? "Unique index " : "Index ") + ARTIST_TITLE_INDEX
+                    + " on (artist, title) is missing from the album collection");
+        }
+        logger.info("Verified album index " + ARTIST_TITLE_INDEX);
+    }
+
+    private void createArtistTitleIndex(IndexOperations indexOps) {
+        Index index = new Index()
+                .on("artist", Sort.Direction.ASC)
+                .on("title", Sort.Direction.ASC)
+                .named(ARTIST_TITLE_INDEX)
+                .background();
+        try {
+            indexOps.ensureIndex(unique ? index.unique() : index);
+        } catch (DuplicateKeyException e) {
+            // a duplicate saved since rejectDuplicates looked
+            throw duplicatesFound("albums saved while the index was built", e);
+        }
+    }
+
+    private void rejectDuplicates() {
+        Aggregation duplicates = Aggregation.newAggregation(
+                Aggregation.group("artist", "title").count().as("albums"),
+                Aggregation.match(Criteria.where("albums").gt(1)),
+                Aggregation.limit(DUPLICATES_REPORTED))
+                .withOptions(Aggregation.newAggregationOptions().allowDiskUse(true).build());
+        List<Document> found = mongoOperations.aggregate(duplicates, Album.class, Document.class).getMappedResults();
+        if (!found.isEmpty()) {
+            throw duplicatesFound(found.stream()
+                    .map(duplicate -> String.valueOf(duplicate.get("_id")) + " x" + duplicate.get("albums"))
+                    .collect(Collectors.joining(", ")), null);
+        }
+    }
+
+    private static IllegalStateException duplicatesFound(String duplicates, Exception cause) {
+        return new IllegalStateException("Cannot build unique index " + ARTIST_TITLE_INDEX + ": the album collection"
+                + " holds several albums with the same artist and title (" + duplicates + "); remove the duplicates"
+                + " or unset mongodb.albums.unique-artist-title, and restart", cause);
+    }
+
+    private boolean isArtistTitleIndex(IndexInfo indexInfo) {
+        return (indexInfo.isUnique() || !unique)
+                && indexInfo.getIndexFields().size() == 2
+                && "artist".equals(indexInfo.getIndexFields().get(0).getKey())
+                && "title".equals(indexInfo.getIndexFields().get(1).getKey());
+    }
+}
@@ -0,0 +1,25 @@
+package org.cloudfoundry.samples.music.repositories.mongodb;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Album collection settings, bound from {@code mongodb.albums} on the mongodb profile.
+ */
+@ConfigurationProperties(prefix = "mongodb.albums")
+public class MongoAlbumProperties {
+
+    /**
+     * Builds the artist_title index unique, so {@code insertIfAbsent} is atomic and no
+     * album can be saved under another's artist and title. Startup fails, naming them,
+     * while the collection holds such duplicates.
+     */
+    private boolean uniqueArtistTitle;
+
+    public boolean isUniqueArtistTitle() {
+        return uniqueArtistTitle;
+    }
+
+    public void setUniqueArtistTitle(boolean uniqueArtistTitle) {
+        this.uniqueArtistTitle = uniqueArtistTitle;
+    }
+}
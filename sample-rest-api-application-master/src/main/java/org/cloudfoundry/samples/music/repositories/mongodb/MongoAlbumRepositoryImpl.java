@@ -0,0 +1,144 @@
+package org.cloudfoundry.samples.music.repositories.mongodb;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.cloudfoundry.samples.music.domain.Album;
+import org.cloudfoundry.samples.music.domain.AlbumPage;
+import org.cloudfoundry.samples.music.repositories.PartialBatchWriteException;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.StreamUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+public class MongoAlbumRepositoryImpl {
+
+    private static final int STREAM_BATCH_SIZE = 500;
+
+    private static final int DUPLICATE_KEY_ERROR = 11000;
+
+    private final MongoOperations mongoOperations;
+
+    public MongoAlbumRepositoryImpl(MongoOperations mongoOperations) {
+        this.mongoOperations = mongoOperations;
+    }
+
+    // Overrides the derived query: filters and projects only the indexed fields and stops
+    // at the first match, so the check is answered from the (artist, title) index alone.
+    public boolean existsByArtistAndTitle(String artist, String title) {
+        return albumCollection()
+                .find(new Document("artist", artist).append("title", title))
+                .projection(new Document("_id", 0).append("artist", 1).append("title", 1))
+                .hint(MongoAlbumIndexes.ARTIST_TITLE_KEYS)
+                .limit(1)
+                .first() != null;
+    }
+
+    public AlbumPage findPage(String position, int limit) {
+        Query query = new Query().with(Sort.by("id")).limit(limit + 1);
+        if (position != null) {
+            query.addCriteria(Criteria.where("id").gt(position));
+        }
+        return AlbumPage.fromIdOrderedProbe(mongoOperations.find(query, Album.class), limit);
+    }
+
+    // Query has no batch size setting in this Spring Data version, so the driver
+    // cursor is opened directly and documents are mapped one at a time.
+    public Stream<Album> streamAll() {
+        MongoCursor<Document> cursor = albumCollection()
+                .find()
+                .batchSize(STREAM_BATCH_SIZE)
+                .iterator();
+        return StreamUtils.createStreamFromIterator(cursor)
+                .map(document -> mongoOperations.getConverter().read(Album.class, document))
+                .onClose(cursor::close);
+    }
+
+    // A single upsert matched on artist and title that only sets fields on insert, so an
+    // existing album is never touched and no separate existence check is needed. Two
+    // concurrent upserts can both insert unless the artist_title index is unique, which
+    // then lets only one of them.
+    public boolean insertIfAbsent(Album album) {
+        if (album.getId() == null) {
+            album.setId(new ObjectId().toHexString());
+        }
+        Document document = new Document();
+        mongoOperations.getConverter().write(album, document);
+        Update update = new Update();
+        document.forEach(update::setOnInsert);
+
+        Query query = Query.query(Criteria.where("artist").is(album.getArtist()).and("title").is(album.getTitle()));
+        try {
+            return mongoOperations.upsert(query, update, Album.class).getUpsertedId() != null;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+    }
+
+    // Overrides SimpleMongoRepository.saveAll, which saves one document per round trip
+    // unless every album is new. All albums go out as one unordered bulk write of
+    // upserting replaces; BulkOperations has no replace in this Spring Data version.
+    // The writes are unordered, so when some fail the rest are still applied, and the
+    // failures are reported per album instead of failing the whole batch.
+    public <S extends Album> List<S> saveAll(Iterable<S> albums) {
+        List<S> result = new ArrayList<>();
+        List<WriteModel<Document>> writes = new ArrayList<>();
+
+        for (S album : albums) {
+            if (album.getId() == null) {
+                album.setId(new ObjectId().toHexString());
+            }
+            Document document = new Document();
+            mongoOperations.getConverter().write(album, document);
+            writes.add(new ReplaceOneModel<>(Filters.eq("_id", document.get("_id")), document, new UpdateOptions().upsert(true)));
+            result.add(album);
+        }
+
+        if (!writes.isEmpty()) {
+            try {
+                albumCollection()
+                        .bulkWrite(writes, new BulkWriteOptions().ordered(false));
+            } catch (MongoBulkWriteException e) {
+                if (e.getWriteConcernError() != null || e.getWriteErrors().isEmpty()) {
+                    throw e;
+                }
+                throw new PartialBatchWriteException(e.getWriteErrors().size() + " of " + writes.size() + " albums could not be saved",
+                        writeFailures(e), e);
+            }
+        }
+        return result;
+    }
+
+    private static Map<Integer, DataAccessException> writeFailures(MongoBulkWriteException e) {
+        Map<Integer, DataAccessException> failures = new HashMap<>();
+        for (BulkWriteError error : e.getWriteErrors()) {
+            failures.put(error.getIndex(), error.getCode() == DUPLICATE_KEY_ERROR
+                    ? new DuplicateKeyException(error.getMessage())
+                    : new DataIntegrityViolationException(error.getMessage()));
+        }
+        return failures;
+    }
+
+    private MongoCollection<Document> albumCollection() {
+        return mongoOperations.getCollection(mongoOperations.getCollectionName(Album.class));
+    }
+}
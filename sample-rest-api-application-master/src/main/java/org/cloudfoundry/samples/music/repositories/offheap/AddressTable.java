@@ -0,0 +1,112 @@
+package org.cloudfoundry.samples.music.repositories.offheap;
+
+import java.util.function.LongPredicate;
+
+/**
+ * Open-addressing hash table of slab addresses held in two primitive arrays, so an index
+ * entry costs twelve bytes of heap and no objects. Keys live in the slabs: a lookup walks
+ * the probe sequence for a hash and asks the caller whether the record at each candidate
+ * address is the one it wants. Several entries may share a hash. Not thread-safe.
+ */
+class AddressTable {
+
+    static final int NOT_FOUND = -1;
+
+    private static final long EMPTY = 0;
+
+    private static final long DELETED = -1;
+
+    private static final double MAX_LOAD = 0.6;
+
+    private int[] hashes;
+
+    // address + 1, so the zeroed array starts out empty
+    private long[] entries;
+
+    private int size;
+
+    private int used;
+
+    AddressTable(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, (int) (expectedSize / MAX_LOAD)) - 1) << 1;
+        this.hashes = new int[capacity];
+        this.entries = new long[capacity];
+    }
+
+    /** Returns the slot of the first entry with the hash whose address matches, or {@link #NOT_FOUND}. */
+    int find(int hash, LongPredicate matches) {
+        int mask = entries.length - 1;
+        for (int slot = spread(hash) & mask; ; slot = (slot + 1) & mask) {
+            long entry = entries[slot];
+            if (entry == EMPTY) {
+                return NOT_FOUND;
+            }
+            if (entry != DELETED && hashes[slot] == hash && matches.test(entry - 1)) {
+                return slot;
+            }
+        }
+    }
+
+    void add(int hash, long address) {
+        if (used + 1 > entries.length * MAX_LOAD) {
+            // mostly tombstones: rehash at the same size; otherwise double
+            resize(size + 1 > entries.length * MAX_LOAD / 2 ? entries.length * 2 : entries.length);
+        }
+        int mask = entries.length - 1;
+        int slot = spread(hash) & mask;
+        while (entries[slot] != EMPTY && entries[slot] != DELETED) {
+            slot = (slot + 1) & mask;
+        }
+        if (entries[slot] == EMPTY) {
+            used++;
+        }
+        hashes[slot] = hash;
+        entries[slot] = address + 1;
+        size++;
+    }
+
+    long addressAt(int slot) {
+        return entries[slot] - 1;
+    }
+
+    void replace(int slot, long address) {
+        entries[slot] = address + 1;
+    }
+
+    void remove(int slot) {
+        entries[slot] = DELETED;
+        size--;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /** Slots are visited in table order; returns the first live slot at or after {@code from}, or {@link #NOT_FOUND}. */
+    int nextSlot(int from) {
+        for (int slot = from; slot < entries.length; slot++) {
+            if (entries[slot] != EMPTY && entries[slot] != DELETED) {
+                return slot;
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    private void resize(int capacity) {
+        int[] oldHashes = hashes;
+        long[] oldEntries = entries;
+        hashes = new int[capacity];
+        entries = new long[capacity];
+        size = 0;
+        used = 0;
+        for (int slot = 0; slot < oldEntries.length; slot++) {
+            if (oldEntries[slot] != EMPTY && oldEntries[slot] != DELETED) {
+                add(oldHashes[slot], oldEntries[slot] - 1);
+            }
+        }
+    }
+
+    private static int spread(int hash) {
+        return (hash ^ (hash >>> 16)) * 0x9E3779B9;
+    }
+}
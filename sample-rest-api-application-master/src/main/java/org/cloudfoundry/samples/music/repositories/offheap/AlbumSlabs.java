@@ -0,0 +1,97 @@
+package org.cloudfoundry.samples.music.repositories.offheap;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only records in direct byte buffer slabs. A record is an int length followed by
+ * its bytes and is addressed by {@code slab << 32 | offset}. Replaced and deleted records
+ * stay in place as dead bytes until the owner copies the live ones into fresh slabs.
+ * Not thread-safe; {@link OffHeapAlbumRepository} serializes writers.
+ */
+class AlbumSlabs {
+
+    private final int slabSize;
+
+    private final List<ByteBuffer> slabs = new ArrayList<>();
+
+    private int writeOffset;
+
+    private long usedBytes;
+
+    private long deadBytes;
+
+    AlbumSlabs(int slabSize) {
+        this.slabSize = slabSize;
+    }
+
+    long append(byte[] record) {
+        int size = Integer.BYTES + record.length;
+        if (size > slabSize) {
+            throw new IllegalArgumentException("Album of " + record.length + " bytes does not fit a " + slabSize + " byte slab");
+        }
+        if (slabs.isEmpty() || writeOffset + size > slabSize) {
+            slabs.add(ByteBuffer.allocateDirect(slabSize));
+            writeOffset = 0;
+        }
+        int slab = slabs.size() - 1;
+        ByteBuffer buffer = slabs.get(slab);
+        buffer.putInt(writeOffset, record.length);
+        for (int i = 0; i < record.length; i++) {
+            buffer.put(writeOffset + Integer.BYTES + i, record[i]);
+        }
+        long address = ((long) slab << 32) | writeOffset;
+        writeOffset += size;
+        usedBytes += size;
+        return address;
+    }
+
+    // Absolute reads never move the buffer position, so readers can share the slabs.
+    byte[] read(long address) {
+        ByteBuffer buffer = slabs.get((int) (address >>> 32));
+        int offset = (int) address;
+        byte[] record = new byte[buffer.getInt(offset)];
+        for (int i = 0; i < record.length; i++) {
+            record[i] = buffer.get(offset + Integer.BYTES + i);
+        }
+        return record;
+    }
+
+    /** Compares the record's bytes {@code [from, from + expected.length)} without copying them. */
+    boolean regionEquals(long address, int from, byte[] expected) {
+        ByteBuffer buffer = slabs.get((int) (address >>> 32));
+        int offset = (int) address;
+        if (buffer.getInt(offset) < from + expected.length) {
+            return false;
+        }
+        int start = offset + Integer.BYTES + from;
+        for (int i = 0; i < expected.length; i++) {
+            if (buffer.get(start + i) != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    byte get(long address, int index) {
+        return slabs.get((int) (address >>> 32)).get((int) address + Integer.BYTES + index);
+    }
+
+    void free(long address) {
+        ByteBuffer buffer = slabs.get((int) (address >>> 32));
+        deadBytes += Integer.BYTES + buffer.getInt((int) address);
+    }
+
+    long getUsedBytes() {
+        return usedBytes;
+    }
+
+    long getDeadBytes() {
+        return deadBytes;
+    }
+
+    long getAllocatedBytes() {
+        return (long) slabs.size() * slabSize;
+    }
+}
@@ -0,0 +1,32 @@
+package org.cloudfoundry.samples.music.repositories.offheap;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Sizing of {@link OffHeapAlbumRepository}, bound from {@code offheap.albums} on the offheap profile.
+ */
+@ConfigurationProperties(prefix = "offheap.albums")
+public class OffHeapAlbumProperties {
+
+    /** Bytes per direct buffer slab; albums are appended to the current slab until it is full. */
+    private int slabSize = 4 * 1024 * 1024;
+
+    /** Albums the id index is sized for before it first grows. */
+    private int initialCapacity = 1024;
+
+    public int getSlabSize() {
+        return slabSize;
+    }
+
+    public void setSlabSize(int slabSize) {
+        this.slabSize = slabSize;
+    }
+
+    public int getInitialCapacity() {
+        return initialCapacity;
+    }
+
+    public void setInitialCapacity(int initialCapacity) {
+        this.initialCapacity = initialCapacity;
+    }
+}
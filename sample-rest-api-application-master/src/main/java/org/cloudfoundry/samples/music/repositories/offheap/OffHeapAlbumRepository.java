@@ -0,0 +1,562 @@
+package org.cloudfoundry.samples.music.repositories.offheap;
+
+import org.cloudfoundry.samples.music.domain.Album;
+import org.cloudfoundry.samples.music.domain.AlbumPage;
+import org.cloudfoundry.samples.music.domain.IdGenerator;
+import org.cloudfoundry.samples.music.domain.TimeOrderedIdGenerator;
+import org.cloudfoundry.samples.music.repositories.AlbumRepository;
+import org.cloudfoundry.samples.music.repositories.redis.AlbumRedisSerializer;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.util.StreamUtils;
+import org.springframework.util.Assert;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * Albums kept outside the Java heap, in the binary layout of {@link AlbumRedisSerializer}
+ * appended to direct buffer slabs. The heap only holds two primitive hash tables of slab
+ * addresses, one by id and one by normalized artist and title; ids and albums are compared
+ * and decoded straight from the slabs, and an album object exists only while a caller
+ * holds it.
+ *
+ * <p>Updates and deletes leave the old record behind as dead bytes. Once more than half of
+ * the written bytes are dead the live records are copied into fresh slabs, and the old ones
+ * are released when the garbage collector frees their buffers. Readers share a read lock
+ * and writers take the write lock, so a lookup is a hash probe and a copy out of the slab.
+ *
+ * <p>Paging and streaming read a third primitive array, the slab addresses sorted by the
+ * id bytes they hold. It is built on the first page read after an id was added or
+ * removed or the slabs were compacted, and an update swaps its entry in place.
+ */
+public class OffHeapAlbumRepository implements CrudRepository<Album, String>, AlbumRepository {
+
+    private static final int STREAM_BATCH_SIZE = 500;
+
+    // binary format byte and field bitmask come before the id, which is always present
+    private static final int ID_OFFSET = 2;
+
+    private final AlbumRedisSerializer serializer = new AlbumRedisSerializer(AlbumRedisSerializer.Codec.BINARY);
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final IdGenerator idGenerator;
+
+    private final OffHeapAlbumProperties properties;
+
+    private AlbumSlabs slabs;
+
+    private AddressTable byId;
+
+    private AddressTable byArtistTitle;
+
+    private volatile long[] sortedAddresses;
+
+    public OffHeapAlbumRepository(OffHeapAlbumProperties properties) {
+        this(properties, new TimeOrderedIdGenerator());
+    }
+
+    public OffHeapAlbumRepository(OffHeapAlbumProperties properties, IdGenerator idGenerator) {
+        this.properties = properties;
+        this.idGenerator = idGenerator;
+        reset();
+    }
+
+    @Override
+    public <S extends Album> S save(S album) {
+        if (album.getId() == null) {
+            album.setId(idGenerator.generateId());
+        }
+        lock.writeLock().lock();
+        try {
+            write(album);
+            compactIfMostlyDead();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return album;
+    }
+
+    @Override
+    public <S extends Album> Iterable<S> saveAll(Iterable<S> albums) {
+        List<S> result = new ArrayList<>();
+        for (S album : albums) {
+            if (album.getId() == null) {
+                album.setId(idGenerator.generateId());
+            }
+            result.add(album);
+        }
+        lock.writeLock().lock();
+        try {
+            for (S album : result) {
+                write(album);
+            }
+            compactIfMostlyDead();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Saves the album unless another album with the same artist and title exists. The
+     * check and the write happen under one write lock, so concurrent creates of the same
+     * album cannot both succeed.
+     */
+    @Override
+    public boolean insertIfAbsent(Album album) {
+        if (album.getId() == null) {
+            album.setId(idGenerator.generateId());
+        }
+        lock.writeLock().lock();
+        try {
+            int slot = findByArtistTitle(album.getArtist(), album.getTitle());
+            if (slot != AddressTable.NOT_FOUND && !album.getId().equals(readId(byArtistTitle.addressAt(slot)))) {
+                return false;
+            }
+            write(album);
+            compactIfMostlyDead();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Optional<Album> findById(String id) {
+        Assert.notNull(id, "The given id must not be null!");
+        lock.readLock().lock();
+        try {
+            int slot = findById(idKey(id), id.hashCode());
+            return slot == AddressTable.NOT_FOUND ? Optional.empty() : Optional.of(decode(byId.addressAt(slot)));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean existsById(String id) {
+        Assert.notNull(id, "The given id must not be null!");
+        lock.readLock().lock();
+        try {
+            return findById(idKey(id), id.hashCode()) != AddressTable.NOT_FOUND;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Iterable<Album> findAll() {
+        lock.readLock().lock();
+        try {
+            List<Album> albums = new ArrayList<>(byId.size());
+            for (int slot = byId.nextSlot(0); slot != AddressTable.NOT_FOUND; slot = byId.nextSlot(slot + 1)) {
+                albums.add(decode(byId.addressAt(slot)));
+            }
+            return albums;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Iterable<Album> findAllById(Iterable<String> ids) {
+        List<Album> albums = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (String id : ids) {
+                int slot = findById(idKey(id), id.hashCode());
+                if (slot != AddressTable.NOT_FOUND) {
+                    albums.add(decode(byId.addressAt(slot)));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return albums;
+    }
+
+    @Override
+    public long count() {
+        lock.readLock().lock();
+        try {
+            return byId.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void deleteById(String id) {
+        Assert.notNull(id, "The given id must not be null!");
+        lock.writeLock().lock();
+        try {
+            remove(id);
+            compactIfMostlyDead();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void delete(Album album) {
+        deleteById(album.getId());
+    }
+
+    @Override
+    public void deleteAll(Iterable<? extends Album> albums) {
+        lock.writeLock().lock();
+        try {
+            for (Album album : albums) {
+                remove(album.getId());
+            }
+            compactIfMostlyDead();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void deleteAll() {
+        lock.writeLock().lock();
+        try {
+            reset();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * A probe of the artist+title table. Matching ignores case and surrounding whitespace,
+     * as in the Redis repository.
+     */
+    @Override
+    public boolean existsByArtistAndTitle(String artist, String title) {
+        lock.readLock().lock();
+        try {
+            return findByArtistTitle(artist, title) != AddressTable.NOT_FOUND;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Pages are in id order like the JPA repository, keyed by the last id returned, with
+     * ids compared as UTF-8 bytes. A page is a binary search of the sorted addresses,
+     * comparing the position with the ids in the slabs, and decodes only its albums.
+     */
+    @Override
+    public AlbumPage findPage(String position, int limit) {
+        lock.readLock().lock();
+        try {
+            long[] sorted = sortedAddresses();
+            int from = position == null ? 0 : firstAfter(sorted, position.getBytes(StandardCharsets.UTF_8));
+            int to = (int) Math.min(sorted.length, (long) from + limit + 1);
+            List<Album> albums = new ArrayList<>(Math.max(to - from, 0));
+            for (int i = from; i < to; i++) {
+                albums.add(decode(sorted[i]));
+            }
+            return AlbumPage.fromIdOrderedProbe(albums, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Walks the albums in pages of {@value #STREAM_BATCH_SIZE}, so only one page is decoded
+     * onto the heap at a time. Albums written while the stream is open may or may not be seen.
+     */
+    @Override
+    public Stream<Album> streamAll() {
+        return StreamUtils.createStreamFromIterator(new PageIterator());
+    }
+
+    /** Bytes of direct memory held by the slabs, including their unused tails. */
+    public long getAllocatedBytes() {
+        lock.readLock().lock();
+        try {
+            return slabs.getAllocatedBytes();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Bytes of the current album records. */
+    public long getLiveBytes() {
+        lock.readLock().lock();
+        try {
+            return slabs.getUsedBytes() - slabs.getDeadBytes();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void write(Album album) {
+        byte[] record = serializer.serialize(album);
+        byte[] idKey = idKey(album.getId());
+        int idHash = album.getId().hashCode();
+
+        int slot = findById(idKey, idHash);
+        if (slot != AddressTable.NOT_FOUND) {
+            long previous = byId.addressAt(slot);
+            unlinkArtistTitle(previous);
+            slabs.free(previous);
+            long address = slabs.append(record);
+            byId.replace(slot, address);
+            replaceSorted(album.getId(), previous, address);
+            byArtistTitle.add(artistTitleHash(album.getArtist(), album.getTitle()), address);
+        } else {
+            long address = slabs.append(record);
+            byId.add(idHash, address);
+            sortedAddresses = null;
+            byArtistTitle.add(artistTitleHash(album.getArtist(), album.getTitle()), address);
+        }
+    }
+
+    private void remove(String id) {
+        int slot = findById(idKey(id), id.hashCode());
+        if (slot == AddressTable.NOT_FOUND) {
+            return;
+        }
+        long address = byId.addressAt(slot);
+        unlinkArtistTitle(address);
+        byId.remove(slot);
+        slabs.free(address);
+        sortedAddresses = null;
+    }
+
+    private void unlinkArtistTitle(long address) {
+        Album album = decode(address);
+        byArtistTitle.remove(byArtistTitle.find(artistTitleHash(album.getArtist(), album.getTitle()), candidate -> candidate == address));
+    }
+
+    private void compactIfMostlyDead() {
+        if (slabs.getDeadBytes() * 2 <= slabs.getUsedBytes() || slabs.getDeadBytes() < properties.getSlabSize()) {
+            return;
+        }
+        AlbumSlabs compacted = new AlbumSlabs(properties.getSlabSize());
+        // every live album has exactly one artist+title entry, which leads to its id entry
+        for (int slot = byArtistTitle.nextSlot(0); slot != AddressTable.NOT_FOUND; slot = byArtistTitle.nextSlot(slot + 1)) {
+            long address = byArtistTitle.addressAt(slot);
+            long moved = compacted.append(slabs.read(address));
+            String id = readId(address);
+            byId.replace(byId.find(id.hashCode(), candidate -> candidate == address), moved);
+            byArtistTitle.replace(slot, moved);
+        }
+        slabs = compacted;
+        sortedAddresses = null;
+    }
+
+    private void reset() {
+        slabs = new AlbumSlabs(properties.getSlabSize());
+        byId = new AddressTable(properties.getInitialCapacity());
+        byArtistTitle = new AddressTable(properties.getInitialCapacity());
+        sortedAddresses = null;
+    }
+
+    // called under the read or write lock; readers racing to build it build the same order
+    private long[] sortedAddresses() {
+        long[] current = sortedAddresses;
+        if (current == null) {
+            current = new long[byId.size()];
+            int count = 0;
+            for (int slot = byId.nextSlot(0); slot != AddressTable.NOT_FOUND; slot = byId.nextSlot(slot + 1)) {
+                current[count++] = byId.addressAt(slot);
+            }
+            sortById(current);
+            sortedAddresses = current;
+        }
+        return current;
+    }
+
+    // Bottom-up merge sort; there is no primitive sort taking a comparator, and boxing
+    // every address would put the per-album objects back on the heap.
+    private void sortById(long[] addresses) {
+        long[] from = addresses;
+        long[] to = new long[addresses.length];
+        for (int width = 1; width < addresses.length; width <<= 1) {
+            for (int start = 0; start < addresses.length; start += width << 1) {
+                int middle = Math.min(start + width, addresses.length);
+                int end = Math.min(start + (width << 1), addresses.length);
+                int left = start;
+                int right = middle;
+                for (int i = start; i < end; i++) {
+                    boolean takeLeft = right == end || (left < middle && compareIds(from[left], from[right]) <= 0);
+                    to[i] = takeLeft ? from[left++] : from[right++];
+                }
+            }
+            long[] merged = to;
+            to = from;
+            from = merged;
+        }
+        if (from != addresses) {
+            System.arraycopy(from, 0, addresses, 0, addresses.length);
+        }
+    }
+
+    // called under the write lock: the id keeps its place in the order, only its record moved
+    private void replaceSorted(String id, long previous, long address) {
+        long[] current = sortedAddresses;
+        if (current == null) {
+            return;
+        }
+        int index = firstAfter(current, id.getBytes(StandardCharsets.UTF_8)) - 1;
+        if (index >= 0 && current[index] == previous) {
+            current[index] = address;
+        } else {
+            sortedAddresses = null;
+        }
+    }
+
+    // index of the first address whose id sorts after the given UTF-8 id
+    private int firstAfter(long[] sorted, byte[] id) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compareId(sorted[middle], id) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // the ids of two records, compared as unsigned bytes without copying them out
+    private int compareIds(long first, long second) {
+        int firstLength = readVarint(first, ID_OFFSET);
+        int secondLength = readVarint(second, ID_OFFSET);
+        int firstStart = ID_OFFSET + varintSize(firstLength);
+        int secondStart = ID_OFFSET + varintSize(secondLength);
+        for (int i = 0; i < Math.min(firstLength, secondLength); i++) {
+            int difference = (slabs.get(first, firstStart + i) & 0xFF) - (slabs.get(second, secondStart + i) & 0xFF);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return firstLength - secondLength;
+    }
+
+    private int compareId(long address, byte[] id) {
+        int length = readVarint(address, ID_OFFSET);
+        int start = ID_OFFSET + varintSize(length);
+        for (int i = 0; i < Math.min(length, id.length); i++) {
+            int difference = (slabs.get(address, start + i) & 0xFF) - (id[i] & 0xFF);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return length - id.length;
+    }
+
+    private int findById(byte[] idKey, int idHash) {
+        return byId.find(idHash, address -> slabs.regionEquals(address, ID_OFFSET, idKey));
+    }
+
+    private int findByArtistTitle(String artist, String title) {
+        String key = artistTitleKey(artist, title);
+        return byArtistTitle.find(key.hashCode(), address -> {
+            Album album = decode(address);
+            return key.equals(artistTitleKey(album.getArtist(), album.getTitle()));
+        });
+    }
+
+    private Album decode(long address) {
+        return serializer.deserialize(slabs.read(address));
+    }
+
+    private String readId(long address) {
+        int length = readVarint(address, ID_OFFSET);
+        int index = ID_OFFSET + varintSize(length);
+        byte[] id = new byte[length];
+        for (int i = 0; i < length; i++) {
+            id[i] = slabs.get(address, index + i);
+        }
+        return new String(id, StandardCharsets.UTF_8);
+    }
+
+    private int readVarint(long address, int index) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = slabs.get(address, index++);
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+
+    // the id as the binary layout stores it: a varint length followed by the UTF-8 bytes
+    private static byte[] idKey(String id) {
+        byte[] bytes = id.getBytes(StandardCharsets.UTF_8);
+        byte[] key = new byte[varintSize(bytes.length) + bytes.length];
+        int index = 0;
+        int value = bytes.length;
+        while ((value & ~0x7F) != 0) {
+            key[index++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        key[index++] = (byte) value;
+        System.arraycopy(bytes, 0, key, index, bytes.length);
+        return key;
+    }
+
+    private static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static int artistTitleHash(String artist, String title) {
+        return artistTitleKey(artist, title).hashCode();
+    }
+
+    private static String artistTitleKey(String artist, String title) {
+        return normalize(artist) + '\u0000' + normalize(title);
+    }
+
+    private static String normalize(String value) {
+        return value == null ? "" : value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private class PageIterator implements Iterator<Album> {
+
+        private Iterator<Album> page = Collections.emptyIterator();
+
+        private String position;
+
+        private boolean last;
+
+        @Override
+        public boolean hasNext() {
+            while (!page.hasNext() && !last) {
+                AlbumPage next = findPage(position, STREAM_BATCH_SIZE);
+                page = next.getAlbums().iterator();
+                position = next.getNextPosition();
+                last = !next.hasNext();
+            }
+            return page.hasNext();
+        }
+
+        @Override
+        public Album next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return page.next();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package org.cloudfoundry.samples.music.repositories.redis;
+
+import org.cloudfoundry.samples.music.domain.Album;
+import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Album hash values in either the original JSON form or a compact binary layout. Reads
+ * recognise both, so stored JSON keeps working while values are rewritten as binary.
+ *
+ * <p>Binary v1 is a format byte, a bitmask of the fields present, then each present field
+ * in declaration order: strings as a varint length and UTF-8 bytes, the track count as a
+ * zigzag varint. No field names are stored, so new fields need a new format version.
+ */
+public class AlbumRedisSerializer implements RedisSerializer<Album> {
+
+    public enum Codec {
+        JSON, BINARY
+    }
+
+    static final byte BINARY_V1 = 0x01;
+
+    private static final int ID = 1;
+    private static final int TITLE = 1 << 1;
+    private static final int ARTIST = 1 << 2;
+    private static final int RELEASE_YEAR = 1 << 3;
+    private static final int GENRE = 1 << 4;
+    private static final int TRACK_COUNT = 1 << 5;
+
+    private final Codec codec;
+
+    private final Jackson2JsonRedisSerializer<Album> jsonSerializer = new Jackson2JsonRedisSerializer<>(Album.class);
+
+    public AlbumRedisSerializer(Codec codec) {
+        this.codec = codec;
+    }
+
+    @Override
+    public byte[] serialize(Album album) throws SerializationException {
+        if (album == null) {
+            return new byte[0];
+        }
+        if (codec == Codec.JSON) {
+            return jsonSerializer.serialize(album);
+        }
+
+        int fields = (album.getId() != null ? ID : 0)
+                | (album.getTitle() != null ? TITLE : 0)
+                | (album.getArtist() != null ? ARTIST : 0)
+                | (album.getReleaseYear() != null ? RELEASE_YEAR : 0)
+                | (album.getGenre() != null ? GENRE : 0)
+                | (album.getTrackCount() != null ? TRACK_COUNT : 0);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+        out.write(BINARY_V1);
+        out.write(fields);
+        writeString(out, album.getId());
+        writeString(out, album.getTitle());
+        writeString(out, album.getArtist());
+        writeString(out, album.getReleaseYear());
+        writeString(out, album.getGenre());
+        if (album.getTrackCount() != null) {
+            int trackCount = album.getTrackCount();
+            writeVarint(out, (trackCount << 1) ^ (trackCount >> 31));
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public Album deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        if (bytes[0] != BINARY_V1) {
+            return jsonSerializer.deserialize(bytes);
+        }
+
+        try {
+            Reader reader = new Reader(bytes, 1);
+            int fields = reader.readByte();
+            Album album = new Album();
+            album.setId((fields & ID) != 0 ? reader.readString() : null);
+            album.setTitle((fields & TITLE) != 0 ? reader.readString() : null);
+            album.setArtist((fields & ARTIST) != 0 ? reader.readString() : null);
+            album.setReleaseYear((fields & RELEASE_YEAR) != 0 ? reader.readString() : null);
+            album.setGenre((fields & GENRE) != 0 ? reader.readString() : null);
+            if ((fields & TRACK_COUNT) != 0) {
+                int zigzag = reader.readVarint();
+                album.setTrackCount((zigzag >>> 1) ^ -(zigzag & 1));
+            }
+            return album;
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new SerializationException("Truncated binary album value", e);
+        }
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        if (value == null) {
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static final class Reader {
+
+        private final byte[] bytes;
+
+        private int position;
+
+        Reader(byte[] bytes, int position) {
+            this.bytes = bytes;
+            this.position = position;
+        }
+
+        int readByte() {
+            return bytes[position++] & 0xFF;
+        }
+
+        int readVarint() {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                int b = readByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new SerializationException("Malformed varint in binary album value");
+        }
+
+        String readString() {
+            int length = readVarint();
+            if (length > bytes.length - position) {
+                throw new SerializationException("Truncated binary album value");
+            }
+            String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
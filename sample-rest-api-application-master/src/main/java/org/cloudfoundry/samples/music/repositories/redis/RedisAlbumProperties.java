@@ -0,0 +1,54 @@
+package org.cloudfoundry.samples.music.repositories.redis;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Tuning for {@link RedisAlbumRepository}, bound from {@code redis.albums} on the redis profile.
+ */
+@ConfigurationProperties(prefix = "redis.albums")
+public class RedisAlbumProperties {
+
+    /** Encoding of newly written album values; values in either encoding can always be read. */
+    private AlbumRedisSerializer.Codec codec = AlbumRedisSerializer.Codec.JSON;
+
+    /** Number of hashes albums are spread over; 1 keeps the single {@code albums} hash. */
+    private int shards = 1;
+
+    /** Albums written or deleted by a single multi-field HSET/HDEL command. */
+    private int writeChunkSize = 500;
+
+    /** Chunk commands sent in one pipeline before waiting for their replies. */
+    private int maxInFlightCommands = 16;
+
+    public AlbumRedisSerializer.Codec getCodec() {
+        return codec;
+    }
+
+    public void setCodec(AlbumRedisSerializer.Codec codec) {
+        this.codec = codec;
+    }
+
+    public int getShards() {
+        return shards;
+    }
+
+    public void setShards(int shards) {
+        this.shards = shards;
+    }
+
+    public int getWriteChunkSize() {
+        return writeChunkSize;
+    }
+
+    public void setWriteChunkSize(int writeChunkSize) {
+        this.writeChunkSize = writeChunkSize;
+    }
+
+    public int getMaxInFlightCommands() {
+        return maxInFlightCommands;
+    }
+
+    public void setMaxInFlightCommands(int maxInFlightCommands) {
+        this.maxInFlightCommands = maxInFlightCommands;
+    }
+}
@@ -1,25 +1,317 @@
 package org.cloudfoundry.samples.music.repositories.redis;
 
 import org.cloudfoundry.samples.music.domain.Album;
-import org.cloudfoundry.samples.music.domain.RandomIdGenerator;
+import org.cloudfoundry.samples.music.domain.AlbumPage;
+import org.cloudfoundry.samples.music.domain.IdGenerator;
+import org.cloudfoundry.samples.music.domain.TimeOrderedIdGenerator;
+import org.cloudfoundry.samples.music.repositories.AlbumRepository;
+import org.cloudfoundry.samples.music.repositories.InvalidPageTokenException;
+import org.cloudfoundry.samples.music.repositories.PartialBatchWriteException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.Cursor;
 import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.util.StreamUtils;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Albums are spread over {@code redis.albums.shards} hashes by a hash of their id. With a
+ * single shard the albums stay in the original {@code albums} hash and the index hashes
+ * are {@code {albums}:index:...}, whose hash tag puts them in the same Redis Cluster slot;
+ * with more, shard {@code n} uses {@code albums:{n}} and {@code albums:{n}:index:...}.
+ * Every command and script touches a single slot. Count sends one HLEN per shard in a
+ * single pipeline; list, page and delete-all scan the shards one after another, on
+ * purpose: a stream or page position follows one cursor at a time, and delete-all
+ * keeps at most one batch in flight so wiping a large keyspace does not crowd out
+ * other clients.
+ *
+ * <p>The shard count is recorded in the keyspace the first time the repository starts
+ * against it, and a repository configured with another count refuses to start, since
+ * its albums would hash to other keys; see {@link #afterPropertiesSet()}.
+ *
+ * <p>An album whose normalized artist and title belong to another album is not written:
+ * {@code save} throws {@link DuplicateKeyException}, {@code saveAll} a
+ * {@link PartialBatchWriteException} and {@code insertIfAbsent} returns {@code false}.
+ * With a single shard the check, the album and its index entries are written by one
+ * script. With more, the index is sharded by artist+title and the album by id, so the
+ * index entry is claimed first and released again if the album cannot be written; a
+ * process that dies in between leaves the entry claimed until that album is saved.
+ *
+ * <p>The artist+title index is filled in for albums stored before it existed the first
+ * time the repository starts against a keyspace, see {@link #afterPropertiesSet()}.
+ */
+public class RedisAlbumRepository implements CrudRepository<Album, String>, AlbumRepository, InitializingBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(RedisAlbumRepository.class);
 
-public class RedisAlbumRepository implements CrudRepository<Album, String> {
     public static final String ALBUMS_KEY = "albums";
 
-    private final RandomIdGenerator idGenerator;
+    // normalized artist+title -> id, and id -> normalized artist+title for cleanup; the
+    // {albums} hash tag hashes them to the slot of the untagged albums key
+    public static final String ARTIST_TITLE_INDEX_KEY = "{albums}:index:artist-title";
+    public static final String ARTIST_TITLE_BY_ID_KEY = "{albums}:index:artist-title-by-id";
+
+    // set once the index holds every album that existed when it was introduced
+    static final String INDEX_BACKFILLED_KEY = "{albums}:index:backfilled";
+
+    // the redis.albums.shards the albums were written with
+    static final String SHARDS_KEY = "{albums}:shards";
+
+    private static final String SCAN_START = "0";
+
+    private static final long STREAM_BATCH_SIZE = 500;
+
+    // RedisConnection only exposes HSCAN from cursor 0, so resuming a page from a
+    // previously returned cursor goes through a one-line script instead.
+    private static final byte[] HSCAN_PAGE_SCRIPT =
+            "return redis.call('HSCAN', KEYS[1], ARGV[1], 'COUNT', ARGV[2])".getBytes(StandardCharsets.UTF_8);
+
+    private static final long CLAIMED = 1;
+    private static final long TAKEN = -1;
+
+    // KEYS are the albums, id -> field and index hashes of the single shard, ARGV holds
+    // (id, value, index field) triples. An album whose field is held by another album
+    // that still carries it is skipped; the others are written with both index entries,
+    // and the field they carried before is released. Returns the ids of skipped albums.
+    private static final byte[] SAVE_SCRIPT = (
+            "local taken = {}\n" +
+            "for i = 1, #ARGV, 3 do\n" +
+            "  local id, value, field = ARGV[i], ARGV[i + 1], ARGV[i + 2]\n" +
+            "  local owner = redis.call('HGET', KEYS[3], field)\n" +
+            "  if owner and owner ~= id and redis.call('HGET', KEYS[2], owner) == field then\n" +
+            "    taken[#taken + 1] = id\n" +
+            "  else\n" +
+            "    local previous = redis.call('HGET', KEYS[2], id)\n" +
+            "    redis.call('HSET', KEYS[1], id, value)\n" +
+            "    redis.call('HSET', KEYS[2], id, field)\n" +
+            "    redis.call('HSET', KEYS[3], field, id)\n" +
+            "    if previous and previous ~= field and redis.call('HGET', KEYS[3], previous) == id then\n" +
+            "      redis.call('HDEL', KEYS[3], previous)\n" +
+            "    end\n" +
+            "  end\n" +
+            "end\n" +
+            "return taken").getBytes(StandardCharsets.UTF_8);
+
+    // With several shards an album first claims its field in the index shard, the point
+    // that decides uniqueness, is then written with its id -> field entry in its own
+    // shard, and finally releases the field it carried before.
+
+    // ARGV holds (index field, id) pairs. Claims every free field and returns, per pair,
+    // 1 when it claimed the field, 0 when the id already held it and -1 when another
+    // id does.
+    private static final byte[] CLAIM_SCRIPT = (
+            "local claims = {}\n" +
+            "for i = 1, #ARGV, 2 do\n" +
+            "  local owner = redis.call('HGET', KEYS[1], ARGV[i])\n" +
+            "  if not owner then\n" +
+            "    redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 1])\n" +
+            "    claims[#claims + 1] = 1\n" +
+            "  elseif owner == ARGV[i + 1] then claims[#claims + 1] = 0\n" +
+            "  else claims[#claims + 1] = -1 end\n" +
+            "end\n" +
+            "return claims").getBytes(StandardCharsets.UTF_8);
+
+    // ARGV holds (id, index field) pairs. Removes each field still owned by its id.
+    private static final byte[] RELEASE_SCRIPT = (
+            "for i = 1, #ARGV, 2 do\n" +
+            "  if redis.call('HGET', KEYS[1], ARGV[i + 1]) == ARGV[i] then redis.call('HDEL', KEYS[1], ARGV[i + 1]) end\n" +
+            "end\n" +
+            "return 1").getBytes(StandardCharsets.UTF_8);
+
+    // ARGV holds (id, value, index field) triples. Writes the albums and their id -> field
+    // entries, and returns the (id, field) pairs whose previous field must be released.
+    private static final byte[] SHARD_SAVE_SCRIPT = (
+            "local stale = {}\n" +
+            "for i = 1, #ARGV, 3 do\n" +
+            "  local id, value, field = ARGV[i], ARGV[i + 1], ARGV[i + 2]\n" +
+            "  local previous = redis.call('HGET', KEYS[2], id)\n" +
+            "  redis.call('HSET', KEYS[1], id, value)\n" +
+            "  redis.call('HSET', KEYS[2], id, field)\n" +
+            "  if previous and previous ~= field then\n" +
+            "    stale[#stale + 1] = id\n" +
+            "    stale[#stale + 1] = previous\n" +
+            "  end\n" +
+            "end\n" +
+            "return stale").getBytes(StandardCharsets.UTF_8);
+
+    // ARGV holds (id, index field) pairs read from an earlier scan. Adds the id -> field
+    // entry of each album that still exists and has none, and returns the (field, id)
+    // pairs whose id -> field entry matches so their index entries can be claimed.
+    private static final byte[] BACKFILL_SCRIPT = (
+            "local added = {}\n" +
+            "for i = 1, #ARGV, 2 do\n" +
+            "  local id, field = ARGV[i], ARGV[i + 1]\n" +
+            "  if redis.call('HEXISTS', KEYS[1], id) == 1 then redis.call('HSETNX', KEYS[2], id, field) end\n" +
+            "  if redis.call('HGET', KEYS[2], id) == field then\n" +
+            "    added[#added + 1] = field\n" +
+            "    added[#added + 1] = id\n" +
+            "  end\n" +
+            "end\n" +
+            "return added").getBytes(StandardCharsets.UTF_8);
+
+    // ARGV holds ids. Removes the albums and their id -> field entries. Given the index
+    // hash as KEYS[3], as with a single shard, it releases their fields too; otherwise it
+    // returns the (id, field) pairs to release.
+    private static final byte[] DELETE_SCRIPT = (
+            "local stale = {}\n" +
+            "for _, id in ipairs(ARGV) do\n" +
+            "  local field = redis.call('HGET', KEYS[2], id)\n" +
+            "  if field then\n" +
+            "    redis.call('HDEL', KEYS[2], id)\n" +
+            "    if not KEYS[3] then\n" +
+            "      stale[#stale + 1] = id\n" +
+            "      stale[#stale + 1] = field\n" +
+            "    elseif redis.call('HGET', KEYS[3], field) == id then\n" +
+            "      redis.call('HDEL', KEYS[3], field)\n" +
+            "    end\n" +
+            "  end\n" +
+            "  redis.call('HDEL', KEYS[1], id)\n" +
+            "end\n" +
+            "return stale").getBytes(StandardCharsets.UTF_8);
+
+    private final IdGenerator idGenerator;
+    private final RedisTemplate<String, Album> redisTemplate;
     private final HashOperations<String, String, Album> hashOps;
+    private final RedisAlbumProperties properties;
+    private final int shards;
+    private volatile Boolean cluster;
 
     public RedisAlbumRepository(RedisTemplate<String, Album> redisTemplate) {
+        this(redisTemplate, new RedisAlbumProperties());
+    }
+
+    public RedisAlbumRepository(RedisTemplate<String, Album> redisTemplate, RedisAlbumProperties properties) {
+        this(redisTemplate, properties, new TimeOrderedIdGenerator());
+    }
+
+    public RedisAlbumRepository(RedisTemplate<String, Album> redisTemplate, RedisAlbumProperties properties,
+                                IdGenerator idGenerator) {
+        this.redisTemplate = redisTemplate;
         this.hashOps = redisTemplate.opsForHash();
-        this.idGenerator = new RandomIdGenerator();
+        this.properties = properties;
+        this.shards = Math.max(1, properties.getShards());
+        this.idGenerator = idGenerator;
+    }
+
+    /**
+     * Checks the configured shard count against the one recorded in the keyspace, then
+     * indexes the albums stored before the artist+title index existed, once per keyspace:
+     * each album gets its id -> field entry and, unless another album already holds it,
+     * its index entry. Albums saved meanwhile are indexed by the save itself, and albums
+     * deleted meanwhile are skipped.
+     *
+     * @throws IllegalStateException if the albums were written with another shard count
+     */
+    @Override
+    public void afterPropertiesSet() {
+        checkShardCount();
+        if (Boolean.TRUE.equals(redisTemplate.hasKey(INDEX_BACKFILLED_KEY))) {
+            return;
+        }
+        long indexed = 0;
+        for (int shard = 0; shard < shards; shard++) {
+            List<String[]> pairs = new ArrayList<>((int) STREAM_BATCH_SIZE);
+            try (Cursor<Map.Entry<String, Album>> cursor = hashOps.scan(albumsKey(shard), ScanOptions.scanOptions().count(STREAM_BATCH_SIZE).build())) {
+                while (cursor.hasNext()) {
+                    Map.Entry<String, Album> entry = cursor.next();
+                    pairs.add(new String[]{entry.getKey(), artistTitleKey(entry.getValue().getArtist(), entry.getValue().getTitle())});
+                    if (pairs.size() == STREAM_BATCH_SIZE) {
+                        indexed += backfill(shard, pairs);
+                        pairs.clear();
+                    }
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            if (!pairs.isEmpty()) {
+                indexed += backfill(shard, pairs);
+            }
+        }
+        redisTemplate.execute((RedisCallback<Boolean>) connection -> connection.set(toBytes(INDEX_BACKFILLED_KEY), toBytes("1")));
+        logger.info("Indexed artist and title of " + indexed + " albums stored before the index existed");
+    }
+
+    // Records the shard count on first start. Keyspaces written before it was recorded are
+    // checked for albums outside the configured layout: the single albums hash when
+    // sharded, shard hashes when not, and the first shard past the configured ones.
+    private void checkShardCount() {
+        byte[] key = toBytes(SHARDS_KEY);
+        byte[] stored = redisTemplate.execute((RedisCallback<byte[]>) connection -> connection.get(key));
+        if (stored == null) {
+            String misplaced = shards == 1 ? ALBUMS_KEY + ":{0}" : ALBUMS_KEY;
+            for (String other : new String[]{misplaced, ALBUMS_KEY + ":{" + shards + "}"}) {
+                if (Boolean.TRUE.equals(redisTemplate.hasKey(other))) {
+                    throw new IllegalStateException("Redis holds albums in " + other + ", which redis.albums.shards="
+                            + shards + " does not use; configure the shard count they were written with");
+                }
+            }
+            if (Boolean.TRUE.equals(redisTemplate.execute((RedisCallback<Boolean>) connection ->
+                    connection.setNX(key, toBytes(String.valueOf(shards)))))) {
+                return;
+            }
+            stored = redisTemplate.execute((RedisCallback<byte[]>) connection -> connection.get(key));
+        }
+        if (!String.valueOf(shards).equals(toString(stored))) {
+            throw new IllegalStateException("Redis albums were written with " + toString(stored)
+                    + " shards but redis.albums.shards is " + shards
+                    + "; changing it would strand the albums in their current hashes");
+        }
+    }
+
+    private int backfill(int shard, List<String[]> pairs) {
+        List<Object> added = pipelineByShard(Collections.singletonMap(shard, pairs), (connection, albumShard, chunk) -> {
+            byte[][] keysAndArgs = new byte[2 + chunk.size() * 2][];
+            keysAndArgs[0] = toBytes(albumsKey(albumShard));
+            keysAndArgs[1] = toBytes(byIdKey(albumShard));
+            int i = 2;
+            for (String[] pair : chunk) {
+                keysAndArgs[i++] = toBytes(pair[0]);
+                keysAndArgs[i++] = toBytes(pair[1]);
+            }
+            return connection.eval(BACKFILL_SCRIPT, ReturnType.MULTI, 2, keysAndArgs);
+        });
+
+        List<String[]> claims = new ArrayList<>();
+        for (Object reply : added) {
+            List<?> fieldsAndIds = (List<?>) reply;
+            for (int i = 0; i + 1 < fieldsAndIds.size(); i += 2) {
+                claims.add(new String[]{toString(fieldsAndIds.get(i)), toString(fieldsAndIds.get(i + 1))});
+            }
+        }
+        pipelineByShard(groupByShard(claims, claim -> claim[0]), (connection, indexShard, chunk) -> {
+            for (String[] claim : chunk) {
+                connection.hSetNX(toBytes(indexKey(indexShard)), toBytes(claim[0]), toBytes(claim[1]));
+            }
+            return null;
+        });
+        return claims.size();
     }
 
     @Override
@@ -28,73 +320,480 @@ public class RedisAlbumRepository implements CrudRepository<Album, String> {
             album.setId(idGenerator.generateId());
         }
 
-        hashOps.put(ALBUMS_KEY, album.getId(), album);
+        if (!saveWithIndex(Collections.singletonList(album)).isEmpty()) {
+            throw new DuplicateKeyException("Another album is already stored as " + album.getArtist() + " - " + album.getTitle());
+        }
 
         return album;
     }
 
+    /**
+     * Saves the album only if its artist+title index entry is free or already its own.
+     * Claiming the entry is a single atomic step, so two concurrent creates of the same
+     * album cannot both succeed.
+     */
+    @Override
+    public boolean insertIfAbsent(Album album) {
+        if (album.getId() == null) {
+            album.setId(idGenerator.generateId());
+        }
+
+        return saveWithIndex(Collections.singletonList(album)).isEmpty();
+    }
+
+    /**
+     * Writes the albums and their index entries with one script call per shard chunk,
+     * pipelining up to {@code maxInFlightCommands} chunks per round trip.
+     */
     @Override
     public <S extends Album> Iterable<S> saveAll(Iterable<S> albums) {
         List<S> result = new ArrayList<>();
-
         for (S entity : albums) {
-            save(entity);
+            if (entity.getId() == null) {
+                entity.setId(idGenerator.generateId());
+            }
             result.add(entity);
         }
 
+        Set<String> taken = saveWithIndex(result);
+        if (!taken.isEmpty()) {
+            Map<Integer, DataAccessException> failures = new LinkedHashMap<>();
+            for (int i = 0; i < result.size(); i++) {
+                if (taken.contains(result.get(i).getId())) {
+                    failures.put(i, new DuplicateKeyException("Another album is already stored as " + result.get(i).getArtist() + " - " + result.get(i).getTitle()));
+                }
+            }
+            throw new PartialBatchWriteException(failures.size() + " of " + result.size() + " albums duplicate stored albums", failures, null);
+        }
+
         return result;
     }
 
     @Override
     public Optional<Album> findById(String id) {
-        return Optional.of(hashOps.get(ALBUMS_KEY, id));
+        return Optional.ofNullable(hashOps.get(albumsKey(shardOf(id)), id));
     }
 
     @Override
     public boolean existsById(String id) {
-        return hashOps.hasKey(ALBUMS_KEY, id);
+        return hashOps.hasKey(albumsKey(shardOf(id)), id);
     }
 
+    /**
+     * Albums are fetched lazily with HSCAN, shard by shard, as the result is iterated,
+     * one batch at a time, instead of HVALS over whole hashes. Each iteration starts a
+     * new scan and closes each shard's cursor as soon as it has been read to the end; a
+     * caller that may stop early should use {@link #streamAll()} and close the stream.
+     */
     @Override
     public Iterable<Album> findAll() {
-        return hashOps.values(ALBUMS_KEY);
+        return ShardScanIterator::new;
     }
 
     @Override
     public Iterable<Album> findAllById(Iterable<String> ids) {
-        return hashOps.multiGet(ALBUMS_KEY, convertIterableToList(ids));
+        List<String> idList = convertIterableToList(ids);
+        Map<Integer, List<String>> idsByShard = groupByShard(idList, id -> id);
+
+        Map<String, Album> found = new HashMap<>();
+        for (Map.Entry<Integer, List<String>> shard : idsByShard.entrySet()) {
+            List<Album> albums = hashOps.multiGet(albumsKey(shard.getKey()), shard.getValue());
+            for (int i = 0; i < albums.size(); i++) {
+                found.put(shard.getValue().get(i), albums.get(i));
+            }
+        }
+
+        // missing ids are left out, as the JPA and MongoDB repositories do
+        List<Album> result = new ArrayList<>(idList.size());
+        for (String id : idList) {
+            Album album = found.get(id);
+            if (album != null) {
+                result.add(album);
+            }
+        }
+        return result;
     }
 
     @Override
     public long count() {
-        return hashOps.keys(ALBUMS_KEY).size();
+        Map<Integer, List<Integer>> everyShard = new LinkedHashMap<>();
+        for (int shard = 0; shard < shards; shard++) {
+            everyShard.put(shard, Collections.singletonList(shard));
+        }
+        long count = 0;
+        for (Object size : pipelineByShard(everyShard, (connection, shard, chunk) -> connection.hLen(toBytes(albumsKey(shard))))) {
+            count += (Long) size;
+        }
+        return count;
     }
 
     @Override
     public void deleteById(String id) {
-        hashOps.delete(ALBUMS_KEY, id);
+        deleteWithIndex(Collections.singletonList(id));
     }
 
     @Override
     public void delete(Album album) {
-        hashOps.delete(ALBUMS_KEY, album.getId());
+        deleteById(album.getId());
     }
 
     @Override
     public void deleteAll(Iterable<? extends Album> albums) {
+        List<String> ids = new ArrayList<>();
         for (Album album : albums) {
-            delete(album);
+            ids.add(album.getId());
         }
+
+        deleteWithIndex(ids);
     }
 
+    /**
+     * Removes the albums and the index entries of every shard, in HSCAN batches with one
+     * multi-field HDEL per batch, so neither Redis nor the client ever handles a whole
+     * hash in a single command; each key goes away with its last field.
+     */
     @Override
     public void deleteAll() {
-        Set<String> ids = hashOps.keys(ALBUMS_KEY);
-        for (String id : ids) {
-            deleteById(id);
+        for (int shard = 0; shard < shards; shard++) {
+            deleteHashInChunks(toBytes(albumsKey(shard)));
+            deleteHashInChunks(toBytes(indexKey(shard)));
+            deleteHashInChunks(toBytes(byIdKey(shard)));
+        }
+    }
+
+    private void deleteHashInChunks(byte[] key) {
+        redisTemplate.execute((RedisCallback<Void>) connection -> {
+            List<byte[]> fields = new ArrayList<>((int) STREAM_BATCH_SIZE);
+            try (Cursor<Map.Entry<byte[], byte[]>> cursor =
+                         connection.hScan(key, ScanOptions.scanOptions().count(STREAM_BATCH_SIZE).build())) {
+                while (cursor.hasNext()) {
+                    fields.add(cursor.next().getKey());
+                    if (fields.size() == STREAM_BATCH_SIZE) {
+                        connection.hDel(key, fields.toArray(new byte[0][]));
+                        fields.clear();
+                    }
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            if (!fields.isEmpty()) {
+                connection.hDel(key, fields.toArray(new byte[0][]));
+            }
+            return null;
+        });
+    }
+
+    /**
+     * A single HEXISTS on the artist+title index shard. Matching ignores case and
+     * surrounding whitespace.
+     */
+    @Override
+    public boolean existsByArtistAndTitle(String artist, String title) {
+        String field = artistTitleKey(artist, title);
+        return Boolean.TRUE.equals(redisTemplate.execute((RedisCallback<Boolean>) connection ->
+                connection.hExists(toBytes(indexKey(shardOf(field))), toBytes(field))));
+    }
+
+    /**
+     * Pages follow the HSCAN cursor of one shard after another, so every page costs the
+     * same regardless of depth; positions have the form {@code shard:cursor}. COUNT is
+     * only a hint to Redis: a page may hold slightly more or fewer than {@code limit}
+     * albums, and small ziplist-encoded hashes come back whole.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public AlbumPage findPage(String position, int limit) {
+        RedisSerializer<Album> valueSerializer = hashValueSerializer();
+        int shard = 0;
+        String cursor = SCAN_START;
+        if (position != null) {
+            int separator = position.indexOf(':');
+            try {
+                shard = separator < 0 ? 0 : Integer.parseInt(position.substring(0, separator));
+                cursor = position.substring(separator + 1);
+                Long.parseUnsignedLong(cursor);
+            } catch (NumberFormatException e) {
+                throw new InvalidPageTokenException("Malformed album page position " + position, e);
+            }
+            if (shard < 0 || shard >= shards) {
+                throw new InvalidPageTokenException("Album page position " + position + " names an unknown shard");
+            }
+        }
+
+        List<Album> albums = new ArrayList<>();
+        while (true) {
+            byte[] key = toBytes(albumsKey(shard));
+            byte[] scanCursor = toBytes(cursor);
+            byte[] count = toBytes(String.valueOf(limit - albums.size()));
+            List<Object> reply = redisTemplate.execute((RedisCallback<List<Object>>) connection ->
+                    connection.eval(HSCAN_PAGE_SCRIPT, ReturnType.MULTI, 1, key, scanCursor, count));
+
+            cursor = new String((byte[]) reply.get(0), StandardCharsets.UTF_8);
+            List<byte[]> fieldsAndValues = (List<byte[]>) reply.get(1);
+            for (int i = 1; i < fieldsAndValues.size(); i += 2) {
+                albums.add(valueSerializer.deserialize(fieldsAndValues.get(i)));
+            }
+
+            if (SCAN_START.equals(cursor)) {
+                shard++;
+                if (shard == shards) {
+                    return new AlbumPage(albums, null);
+                }
+            }
+            if (albums.size() >= limit) {
+                return new AlbumPage(albums, shard + ":" + cursor);
+            }
         }
     }
 
+    @Override
+    public Stream<Album> streamAll() {
+        ShardScanIterator iterator = new ShardScanIterator();
+        return StreamUtils.createStreamFromIterator(iterator).onClose(iterator::close);
+    }
+
+    // Writes the albums whose artist+title is free or already theirs and returns the ids
+    // of the others, which are left as they were. Of several albums in the batch sharing
+    // an artist+title, only the first is written.
+    private Set<String> saveWithIndex(List<? extends Album> albums) {
+        Set<String> taken = new HashSet<>();
+        Map<String, String> idsByField = new HashMap<>();
+        List<Album> unique = new ArrayList<>(albums.size());
+        for (Album album : albums) {
+            String owner = idsByField.putIfAbsent(artistTitleKey(album.getArtist(), album.getTitle()), album.getId());
+            if (owner == null || owner.equals(album.getId())) {
+                unique.add(album);
+            } else {
+                taken.add(album.getId());
+            }
+        }
+
+        if (shards == 1) {
+            for (Object reply : pipelineByShard(groupByShard(unique, Album::getId), this::saveChunk)) {
+                for (Object id : (List<?>) reply) {
+                    taken.add(toString(id));
+                }
+            }
+            return taken;
+        }
+
+        List<String[]> claims = new ArrayList<>(unique.size());
+        for (Album album : unique) {
+            claims.add(new String[]{artistTitleKey(album.getArtist(), album.getTitle()), album.getId()});
+        }
+        List<String[]> claimed = new ArrayList<>();
+        List<List<String[]>> claimChunks = new ArrayList<>();
+        List<Object> replies = pipelineByShard(groupByShard(claims, claim -> claim[0]), (connection, shard, chunk) -> {
+            claimChunks.add(chunk);
+            byte[][] keysAndArgs = new byte[1 + chunk.size() * 2][];
+            keysAndArgs[0] = toBytes(indexKey(shard));
+            int i = 1;
+            for (String[] claim : chunk) {
+                keysAndArgs[i++] = toBytes(claim[0]);
+                keysAndArgs[i++] = toBytes(claim[1]);
+            }
+            return connection.eval(CLAIM_SCRIPT, ReturnType.MULTI, 1, keysAndArgs);
+        });
+        for (int c = 0; c < replies.size(); c++) {
+            List<?> codes = (List<?>) replies.get(c);
+            List<String[]> chunk = claimChunks.get(c);
+            for (int i = 0; i < chunk.size(); i++) {
+                long code = ((Number) codes.get(i)).longValue();
+                if (code == CLAIMED) {
+                    claimed.add(new String[]{chunk.get(i)[1], chunk.get(i)[0]});
+                } else if (code == TAKEN) {
+                    taken.add(chunk.get(i)[1]);
+                }
+            }
+        }
+
+        List<Album> owned = new ArrayList<>(unique.size());
+        for (Album album : unique) {
+            if (!taken.contains(album.getId())) {
+                owned.add(album);
+            }
+        }
+        List<Object> stale;
+        try {
+            stale = pipelineByShard(groupByShard(owned, Album::getId), this::saveShardChunk);
+        } catch (RuntimeException e) {
+            releaseIndexEntries(claimed);
+            throw e;
+        }
+        releaseIndexEntries(idFieldPairs(stale));
+        return taken;
+    }
+
+    private Object saveChunk(RedisConnection connection, int shard, List<? extends Album> albums) {
+        return connection.eval(SAVE_SCRIPT, ReturnType.MULTI, 3, saveKeysAndArgs(albums,
+                toBytes(albumsKey(shard)), toBytes(byIdKey(shard)), toBytes(indexKey(shard))));
+    }
+
+    private Object saveShardChunk(RedisConnection connection, int shard, List<? extends Album> albums) {
+        return connection.eval(SHARD_SAVE_SCRIPT, ReturnType.MULTI, 2, saveKeysAndArgs(albums,
+                toBytes(albumsKey(shard)), toBytes(byIdKey(shard))));
+    }
+
+    private byte[][] saveKeysAndArgs(List<? extends Album> albums, byte[]... keys) {
+        RedisSerializer<Album> valueSerializer = hashValueSerializer();
+        byte[][] keysAndArgs = new byte[keys.length + albums.size() * 3][];
+        System.arraycopy(keys, 0, keysAndArgs, 0, keys.length);
+        int i = keys.length;
+        for (Album album : albums) {
+            keysAndArgs[i++] = toBytes(album.getId());
+            keysAndArgs[i++] = valueSerializer.serialize(album);
+            keysAndArgs[i++] = toBytes(artistTitleKey(album.getArtist(), album.getTitle()));
+        }
+        return keysAndArgs;
+    }
+
+    private void deleteWithIndex(List<String> ids) {
+        List<Object> stale = pipelineByShard(groupByShard(ids, id -> id), (connection, shard, chunk) -> {
+            int keys = shards == 1 ? 3 : 2;
+            byte[][] keysAndArgs = new byte[keys + chunk.size()][];
+            keysAndArgs[0] = toBytes(albumsKey(shard));
+            keysAndArgs[1] = toBytes(byIdKey(shard));
+            if (shards == 1) {
+                keysAndArgs[2] = toBytes(indexKey(shard));
+            }
+            int i = keys;
+            for (String id : chunk) {
+                keysAndArgs[i++] = toBytes(id);
+            }
+            return connection.eval(DELETE_SCRIPT, ReturnType.MULTI, keys, keysAndArgs);
+        });
+        releaseIndexEntries(idFieldPairs(stale));
+    }
+
+    // Flattens the (id, field) pair lists returned by the sharded save and delete scripts.
+    private static List<String[]> idFieldPairs(List<Object> replies) {
+        List<String[]> pairs = new ArrayList<>();
+        for (Object reply : replies) {
+            if (!(reply instanceof List)) {
+                continue;
+            }
+            List<?> idsAndFields = (List<?>) reply;
+            for (int i = 0; i + 1 < idsAndFields.size(); i += 2) {
+                pairs.add(new String[]{toString(idsAndFields.get(i)), toString(idsAndFields.get(i + 1))});
+            }
+        }
+        return pairs;
+    }
+
+    // Removes the index entries of the given (id, field) pairs that still belong to their id.
+    private void releaseIndexEntries(List<String[]> releases) {
+        if (releases.isEmpty()) {
+            return;
+        }
+
+        pipelineByShard(groupByShard(releases, release -> release[1]), (connection, shard, chunk) -> {
+            byte[][] keysAndArgs = new byte[1 + chunk.size() * 2][];
+            keysAndArgs[0] = toBytes(indexKey(shard));
+            int i = 1;
+            for (String[] release : chunk) {
+                keysAndArgs[i++] = toBytes(release[0]);
+                keysAndArgs[i++] = toBytes(release[1]);
+            }
+            return connection.eval(RELEASE_SCRIPT, ReturnType.INTEGER, 1, keysAndArgs);
+        });
+    }
+
+    private <T> Map<Integer, List<T>> groupByShard(List<T> items, Function<T, String> shardingKey) {
+        Map<Integer, List<T>> itemsByShard = new LinkedHashMap<>();
+        for (T item : items) {
+            itemsByShard.computeIfAbsent(shardOf(shardingKey.apply(item)), shard -> new ArrayList<>()).add(item);
+        }
+        return itemsByShard;
+    }
+
+    // Splits each shard's items into chunks of writeChunkSize, one command each, and sends
+    // at most maxInFlightCommands of them per pipeline so client buffers stay bounded.
+    // Cluster connections cannot pipeline in this Spring Data version, so there the
+    // commands run one after another. Replies come back raw, in command order.
+    private <T> List<Object> pipelineByShard(Map<Integer, List<T>> itemsByShard, ShardCommand<T> command) {
+        int chunkSize = Math.max(1, properties.getWriteChunkSize());
+        List<Function<RedisConnection, Object>> commands = new ArrayList<>();
+        for (Map.Entry<Integer, List<T>> shard : itemsByShard.entrySet()) {
+            List<T> items = shard.getValue();
+            for (int start = 0; start < items.size(); start += chunkSize) {
+                List<T> chunk = items.subList(start, Math.min(items.size(), start + chunkSize));
+                commands.add(connection -> command.execute(connection, shard.getKey(), chunk));
+            }
+        }
+
+        List<Object> replies = new ArrayList<>(commands.size());
+        if (isCluster()) {
+            for (Function<RedisConnection, Object> clusterCommand : commands) {
+                replies.add(redisTemplate.execute((RedisCallback<Object>) clusterCommand::apply));
+            }
+            return replies;
+        }
+
+        int commandsPerPipeline = Math.max(1, properties.getMaxInFlightCommands());
+        for (int start = 0; start < commands.size(); start += commandsPerPipeline) {
+            List<Function<RedisConnection, Object>> window = commands.subList(start, Math.min(commands.size(), start + commandsPerPipeline));
+            replies.addAll(redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (Function<RedisConnection, Object> pipelinedCommand : window) {
+                    pipelinedCommand.apply(connection);
+                }
+                return null;
+            }, null));
+        }
+        return replies;
+    }
+
+    private boolean isCluster() {
+        if (cluster == null) {
+            cluster = redisTemplate.execute((RedisCallback<Boolean>) connection -> connection instanceof RedisClusterConnection);
+        }
+        return cluster;
+    }
+
+    int shardOf(String value) {
+        return shards == 1 ? 0 : Math.floorMod(value.hashCode(), shards);
+    }
+
+    String albumsKey(int shard) {
+        return shards == 1 ? ALBUMS_KEY : ALBUMS_KEY + ":{" + shard + "}";
+    }
+
+    String indexKey(int shard) {
+        return shards == 1 ? ARTIST_TITLE_INDEX_KEY : albumsKey(shard) + ":index:artist-title";
+    }
+
+    String byIdKey(int shard) {
+        return shards == 1 ? ARTIST_TITLE_BY_ID_KEY : albumsKey(shard) + ":index:artist-title-by-id";
+    }
+
+    static String artistTitleKey(String artist, String title) {
+        return normalize(artist) + '\u0000' + normalize(title);
+    }
+
+    private static String normalize(String value) {
+        return value == null ? "" : value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    @SuppressWarnings("unchecked")
+    private RedisSerializer<Album> hashValueSerializer() {
+        return (RedisSerializer<Album>) redisTemplate.getHashValueSerializer();
+    }
+
+    private static void closeCursor(Cursor<?> cursor) {
+        try {
+            cursor.close();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] toBytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String toString(Object value) {
+        return value instanceof byte[] ? new String((byte[]) value, StandardCharsets.UTF_8) : String.valueOf(value);
+    }
+
     private <T> List<T> convertIterableToList(Iterable<T> iterable) {
         List<T> list = new ArrayList<>();
         for (T object : iterable) {
@@ -102,4 +801,49 @@ public class RedisAlbumRepository implements CrudRepository<Album, String> {
         }
         return list;
     }
+
+    @FunctionalInterface
+    private interface ShardCommand<T> {
+        Object execute(RedisConnection connection, int shard, List<T> chunk);
+    }
+
+    // Scans the shards one after another, keeping a single cursor open at a time.
+    private class ShardScanIterator implements Iterator<Album> {
+
+        private int shard = -1;
+
+        private Cursor<Map.Entry<String, Album>> cursor;
+
+        @Override
+        public boolean hasNext() {
+            while (cursor == null || !cursor.hasNext()) {
+                if (cursor != null) {
+                    closeCursor(cursor);
+                    cursor = null;
+                }
+                if (shard + 1 >= shards) {
+                    return false;
+                }
+                shard++;
+                cursor = hashOps.scan(albumsKey(shard), ScanOptions.scanOptions().count(STREAM_BATCH_SIZE).build());
+            }
+            return true;
+        }
+
+        @Override
+        public Album next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return cursor.next().getValue();
+        }
+
+        void close() {
+            if (cursor != null) {
+                closeCursor(cursor);
+                cursor = null;
+            }
+            shard = shards;
+        }
+    }
 }
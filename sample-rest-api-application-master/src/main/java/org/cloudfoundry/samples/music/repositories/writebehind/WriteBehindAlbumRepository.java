@@ -0,0 +1,528 @@
+package org.cloudfoundry.samples.music.repositories.writebehind;
+
+import org.cloudfoundry.samples.music.domain.Album;
+import org.cloudfoundry.samples.music.domain.AlbumPage;
+import org.cloudfoundry.samples.music.domain.IdGenerator;
+import org.cloudfoundry.samples.music.repositories.AlbumRepository;
+import org.cloudfoundry.samples.music.repositories.PartialBatchWriteException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.transaction.TransactionException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * Write-behind front of the active album repository. Saves and deletes are appended to a
+ * local {@link WriteJournal} and acknowledged; pending writes are coalesced per album id,
+ * last write wins, and flushed to the repository with {@code saveAll} in batches, on a
+ * schedule or as soon as a batch worth of albums is pending. The journal is replayed on
+ * startup, so acknowledged writes survive a restart.
+ *
+ * <p>Reads by id and the full list overlay the pending writes on the repository, so a
+ * client reads its own writes before they are flushed. Counting, paging and streaming
+ * flush first. Duplicate checks see pending saves, but not pending deletes and renames,
+ * and are only atomic within this instance.
+ *
+ * <p>A batch the repository rejects, rather than failing to reach it, is retried up to
+ * {@code maxAttempts} times and then written one album at a time; writes it still
+ * rejects, like those a partial {@code saveAll} reports, are set aside to a
+ * {@code .set-aside} journal next to the main one so they stop blocking the rest.
+ */
+public class WriteBehindAlbumRepository implements CrudRepository<Album, String>, AlbumRepository, AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(WriteBehindAlbumRepository.class);
+
+    private final CrudRepository<Album, String> delegate;
+
+    private final AlbumRepository albumDelegate;
+
+    private final IdGenerator idGenerator;
+
+    private final int batchSize;
+
+    private final int maxAttempts;
+
+    private final WriteJournal journal;
+
+    private final WriteJournal setAsideJournal;
+
+    private final ScheduledExecutorService flusher;
+
+    // Insertion ordered, so the first entry is the oldest unflushed write. Guarded by this.
+    private final LinkedHashMap<String, PendingWrite> pending = new LinkedHashMap<>();
+
+    private final Object flushLock = new Object();
+
+    // Serializes journal appends and rewrites, and is taken before this, so the journal
+    // and the pending writes change in the same order while reads only wait for the map.
+    private final Object journalLock = new Object();
+
+    private final Object insertLock = new Object();
+
+    private final AtomicBoolean earlyFlushQueued = new AtomicBoolean();
+
+    private volatile long flushedWrites;
+
+    private volatile long flushes;
+
+    private volatile long flushNanos;
+
+    private volatile long failedFlushes;
+
+    private volatile long setAsideWrites;
+
+    public WriteBehindAlbumRepository(CrudRepository<Album, String> delegate, WriteBehindProperties properties, IdGenerator idGenerator) {
+        if (!(delegate instanceof AlbumRepository)) {
+            throw new IllegalArgumentException("Write-behind delegate must be an AlbumRepository: " + delegate);
+        }
+        this.delegate = delegate;
+        this.albumDelegate = (AlbumRepository) delegate;
+        this.idGenerator = idGenerator;
+        this.batchSize = Math.max(1, properties.getBatchSize());
+        this.maxAttempts = Math.max(1, properties.getMaxAttempts());
+        Path journalPath = Paths.get(properties.getJournal());
+        this.journal = new WriteJournal(journalPath, properties.isFsync());
+        this.setAsideJournal = new WriteJournal(journalPath.resolveSibling(journalPath.getFileName() + ".set-aside"), properties.isFsync());
+
+        Map<String, Album> journaled = new LinkedHashMap<>();
+        journal.replay(journaled);
+        long now = System.nanoTime();
+        journaled.forEach((id, album) -> pending.put(id, new PendingWrite(album, now)));
+        if (!pending.isEmpty()) {
+            logger.info("Replayed " + pending.size() + " unflushed album writes from " + properties.getJournal());
+        }
+        setAsideJournal.open();
+
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "album-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = properties.getFlushInterval().toMillis();
+        flusher.scheduleWithFixedDelay(this::flushQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public <S extends Album> S save(S album) {
+        if (album.getId() == null) {
+            album.setId(idGenerator.generateId());
+        }
+        enqueue(Collections.singletonMap(album.getId(), album));
+        return album;
+    }
+
+    /** Journals the whole batch with a single force to disk. */
+    @Override
+    public <S extends Album> Iterable<S> saveAll(Iterable<S> albums) {
+        List<S> saved = new ArrayList<>();
+        Map<String, Album> writes = new LinkedHashMap<>();
+        for (S album : albums) {
+            if (album.getId() == null) {
+                album.setId(idGenerator.generateId());
+            }
+            writes.remove(album.getId());
+            writes.put(album.getId(), album);
+            saved.add(album);
+        }
+        enqueue(writes);
+        return saved;
+    }
+
+    @Override
+    public Optional<Album> findById(String id) {
+        synchronized (this) {
+            PendingWrite write = pending.get(id);
+            if (write != null) {
+                return Optional.ofNullable(write.album);
+            }
+        }
+        return delegate.findById(id);
+    }
+
+    @Override
+    public boolean existsById(String id) {
+        synchronized (this) {
+            PendingWrite write = pending.get(id);
+            if (write != null) {
+                return write.album != null;
+            }
+        }
+        return delegate.existsById(id);
+    }
+
+    @Override
+    public Iterable<Album> findAll() {
+        // taken before the repository read: a flush finishing in between only repeats what the repository already has
+        Map<String, Album> overlay = pendingAlbums();
+        Map<String, Album> albums = new LinkedHashMap<>();
+        for (Album album : delegate.findAll()) {
+            albums.put(album.getId(), album);
+        }
+        return overlay(albums, overlay);
+    }
+
+    @Override
+    public Iterable<Album> findAllById(Iterable<String> ids) {
+        Map<String, Album> overlay = pendingAlbums();
+        List<String> unbuffered = new ArrayList<>();
+        Map<String, Album> albums = new LinkedHashMap<>();
+        for (String id : ids) {
+            if (overlay.containsKey(id)) {
+                albums.put(id, overlay.get(id));
+            } else {
+                unbuffered.add(id);
+            }
+        }
+        if (!unbuffered.isEmpty()) {
+            for (Album album : delegate.findAllById(unbuffered)) {
+                albums.put(album.getId(), album);
+            }
+        }
+        albums.values().removeIf(Objects::isNull);
+        return new ArrayList<>(albums.values());
+    }
+
+    @Override
+    public long count() {
+        flush();
+        return delegate.count();
+    }
+
+    @Override
+    public void deleteById(String id) {
+        enqueue(Collections.singletonMap(id, null));
+    }
+
+    @Override
+    public void delete(Album album) {
+        deleteById(album.getId());
+    }
+
+    @Override
+    public void deleteAll(Iterable<? extends Album> albums) {
+        Map<String, Album> writes = new LinkedHashMap<>();
+        for (Album album : albums) {
+            writes.put(album.getId(), null);
+        }
+        enqueue(writes);
+    }
+
+    @Override
+    public void deleteAll() {
+        synchronized (flushLock) {
+            synchronized (journalLock) {
+                synchronized (this) {
+                    pending.clear();
+                }
+                journal.rewrite(Collections.emptyMap());
+            }
+            delegate.deleteAll();
+        }
+    }
+
+    @Override
+    public boolean existsByArtistAndTitle(String artist, String album) {
+        return hasPendingAlbum(artist, album) || albumDelegate.existsByArtistAndTitle(artist, album);
+    }
+
+    @Override
+    public boolean insertIfAbsent(Album album) {
+        synchronized (insertLock) {
+            if (existsByArtistAndTitle(album.getArtist(), album.getTitle())) {
+                return false;
+            }
+            save(album);
+            return true;
+        }
+    }
+
+    @Override
+    public AlbumPage findPage(String position, int limit) {
+        flush();
+        return albumDelegate.findPage(position, limit);
+    }
+
+    @Override
+    public Stream<Album> streamAll() {
+        flush();
+        return albumDelegate.streamAll();
+    }
+
+    /**
+     * Saves all pending writes to the repository, batch by batch. A failed batch stays
+     * pending and is retried by the next flush, unless the repository rejected it
+     * {@code maxAttempts} times.
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            boolean flushedAny = false;
+            try {
+                Map<String, PendingWrite> batch;
+                do {
+                    batch = nextBatch();
+                    if (batch.isEmpty()) {
+                        break;
+                    }
+                    long start = System.nanoTime();
+                    Set<String> rejected;
+                    try {
+                        rejected = write(batch);
+                    } catch (RuntimeException e) {
+                        if (isTransient(e) || !exhausted(batch)) {
+                            throw e;
+                        }
+                        logger.warn("Album write-behind batch failed " + maxAttempts + " times, writing it one album at a time: " + e.getMessage());
+                        rejected = writeOneByOne(batch);
+                    }
+                    setAside(batch, rejected);
+                    synchronized (this) {
+                        batch.forEach(pending::remove);
+                    }
+                    flushedAny = true;
+                    flushedWrites += batch.size() - rejected.size();
+                    flushes++;
+                    flushNanos += System.nanoTime() - start;
+                } while (batch.size() == batchSize);
+            } catch (RuntimeException e) {
+                failedFlushes++;
+                logger.warn("Album write-behind flush failed, keeping writes pending: " + e.getMessage());
+            } finally {
+                if (flushedAny) {
+                    synchronized (journalLock) {
+                        journal.rewrite(pendingAlbums());
+                    }
+                }
+            }
+        }
+    }
+
+    public synchronized int getPendingWrites() {
+        return pending.size();
+    }
+
+    /** Age of the oldest write not yet in the repository, 0 when nothing is pending. */
+    public synchronized long getFlushLagMillis() {
+        Iterator<PendingWrite> oldest = pending.values().iterator();
+        return oldest.hasNext() ? TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - oldest.next().enqueuedAt) : 0;
+    }
+
+    public long getFlushedWrites() {
+        return flushedWrites;
+    }
+
+    public long getFlushes() {
+        return flushes;
+    }
+
+    public long getFlushNanos() {
+        return flushNanos;
+    }
+
+    public long getFailedFlushes() {
+        return failedFlushes;
+    }
+
+    /** Writes the repository kept rejecting, moved to the set-aside journal. */
+    public long getSetAsideWrites() {
+        return setAsideWrites;
+    }
+
+    @Override
+    public void close() throws IOException {
+        flusher.shutdownNow();
+        flush();
+        journal.close();
+        setAsideJournal.close();
+    }
+
+    private void enqueue(Map<String, Album> writes) {
+        if (writes.isEmpty()) {
+            return;
+        }
+        synchronized (journalLock) {
+            journal.append(writes);
+            synchronized (this) {
+                long now = System.nanoTime();
+                writes.forEach((id, album) -> {
+                    PendingWrite previous = pending.get(id);
+                    pending.put(id, new PendingWrite(album, previous != null ? previous.enqueuedAt : now));
+                });
+                if (pending.size() < batchSize) {
+                    return;
+                }
+            }
+        }
+        if (earlyFlushQueued.compareAndSet(false, true)) {
+            flusher.execute(() -> {
+                earlyFlushQueued.set(false);
+                flushQuietly();
+            });
+        }
+    }
+
+    // Returns the ids of the saves the repository rejected while writing the rest.
+    private Set<String> write(Map<String, PendingWrite> batch) {
+        List<Album> saves = new ArrayList<>();
+        List<String> deletes = new ArrayList<>();
+        batch.forEach((id, write) -> {
+            if (write.album != null) {
+                saves.add(write.album);
+            } else {
+                deletes.add(id);
+            }
+        });
+        Set<String> rejected = new HashSet<>();
+        if (!saves.isEmpty()) {
+            try {
+                delegate.saveAll(saves);
+            } catch (PartialBatchWriteException e) {
+                logger.warn("Album write-behind flush saved " + (saves.size() - e.getFailures().size()) + " of " + saves.size() + " albums: " + e.getMessage());
+                e.getFailures().keySet().forEach(index -> rejected.add(saves.get(index).getId()));
+            }
+        }
+        if (!deletes.isEmpty()) {
+            // deleting what is there keeps replayed deletes of already removed albums harmless
+            List<Album> existing = new ArrayList<>();
+            delegate.findAllById(deletes).forEach(album -> {
+                if (album != null) {
+                    existing.add(album);
+                }
+            });
+            if (!existing.isEmpty()) {
+                delegate.deleteAll(existing);
+            }
+        }
+        return rejected;
+    }
+
+    // A transient failure ends the flush, so an unreachable repository never sets writes aside.
+    private Set<String> writeOneByOne(Map<String, PendingWrite> batch) {
+        Set<String> rejected = new HashSet<>();
+        batch.forEach((id, write) -> {
+            try {
+                rejected.addAll(write(Collections.singletonMap(id, write)));
+            } catch (RuntimeException e) {
+                if (isTransient(e)) {
+                    throw e;
+                }
+                logger.warn("Album write-behind could not write album " + id + ": " + e.getMessage());
+                rejected.add(id);
+            }
+        });
+        return rejected;
+    }
+
+    // Counts a rejected attempt for every write in the batch and reports whether the
+    // oldest one has used up its attempts.
+    private synchronized boolean exhausted(Map<String, PendingWrite> batch) {
+        int attempts = 0;
+        for (PendingWrite write : batch.values()) {
+            attempts = Math.max(attempts, ++write.attempts);
+        }
+        return attempts >= maxAttempts;
+    }
+
+    private void setAside(Map<String, PendingWrite> batch, Set<String> rejected) {
+        if (rejected.isEmpty()) {
+            return;
+        }
+        Map<String, Album> writes = new LinkedHashMap<>();
+        rejected.forEach(id -> writes.put(id, batch.get(id).album));
+        setAsideWrites += rejected.size();
+        try {
+            setAsideJournal.append(writes);
+            logger.error("Set aside " + rejected.size() + " album writes the repository rejected: " + rejected);
+        } catch (UncheckedIOException e) {
+            logger.error("Could not set aside " + rejected.size() + " album writes the repository rejected, dropping them: " + rejected, e);
+        }
+    }
+
+    private static boolean isTransient(RuntimeException e) {
+        return e instanceof TransientDataAccessException
+                || e instanceof RecoverableDataAccessException
+                || e instanceof DataAccessResourceFailureException
+                || e instanceof TransactionException;
+    }
+
+    private synchronized Map<String, PendingWrite> nextBatch() {
+        Map<String, PendingWrite> batch = new LinkedHashMap<>();
+        for (Map.Entry<String, PendingWrite> write : pending.entrySet()) {
+            if (batch.size() == batchSize) {
+                break;
+            }
+            batch.put(write.getKey(), write.getValue());
+        }
+        return batch;
+    }
+
+    private synchronized Map<String, Album> pendingAlbums() {
+        Map<String, Album> albums = new LinkedHashMap<>();
+        pending.forEach((id, write) -> albums.put(id, write.album));
+        return albums;
+    }
+
+    private synchronized boolean hasPendingAlbum(String artist, String title) {
+        for (PendingWrite write : pending.values()) {
+            if (write.album != null && Objects.equals(artist, write.album.getArtist()) && Objects.equals(title, write.album.getTitle())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            logger.warn("Album write-behind flush failed: " + e.getMessage());
+        }
+    }
+
+    private static List<Album> overlay(Map<String, Album> albums, Map<String, Album> overlay) {
+        overlay.forEach((id, album) -> {
+            if (album == null) {
+                albums.remove(id);
+            } else {
+                albums.put(id, album);
+            }
+        });
+        return new ArrayList<>(albums.values());
+    }
+
+    private static final class PendingWrite {
+
+        private final Album album;
+
+        private final long enqueuedAt;
+
+        // rejected flush attempts, guarded by the repository
+        private int attempts;
+
+        PendingWrite(Album album, long enqueuedAt) {
+            this.album = album;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+}
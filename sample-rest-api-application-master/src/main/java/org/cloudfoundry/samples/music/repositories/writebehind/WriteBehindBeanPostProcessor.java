@@ -0,0 +1,98 @@
+package org.cloudfoundry.samples.music.repositories.writebehind;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import org.cloudfoundry.samples.music.domain.Album;
+import org.cloudfoundry.samples.music.domain.IdGenerator;
+import org.cloudfoundry.samples.music.repositories.AlbumRepository;
+import org.cloudfoundry.samples.music.repositories.cache.CachingAlbumRepository;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.core.Ordered;
+import org.springframework.core.env.Environment;
+import org.springframework.data.repository.CrudRepository;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Puts a {@link WriteBehindAlbumRepository} in front of the active album repository. It is
+ * ordered, so it runs before the near-cache wrapper and the near-cache ends up outermost,
+ * reading through the write-behind buffer. Pending writes are flushed when the context
+ * closes, before the repositories are destroyed.
+ *
+ * <p>Meters: {@code albums.write-behind.pending} (queue depth), {@code albums.write-behind.lag}
+ * (age of the oldest pending write), {@code albums.write-behind.flush} (time per flushed
+ * batch), {@code albums.write-behind.flushed} and {@code albums.write-behind.flush.failures}.
+ */
+public class WriteBehindBeanPostProcessor implements BeanPostProcessor, BeanFactoryAware, Ordered, ApplicationListener<ContextClosedEvent> {
+
+    private final List<WriteBehindAlbumRepository> repositories = new CopyOnWriteArrayList<>();
+
+    private ListableBeanFactory beanFactory;
+
+    @Override
+    public void setBeanFactory(BeanFactory beanFactory) throws BeansException {
+        this.beanFactory = (ListableBeanFactory) beanFactory;
+    }
+
+    @Override
+    public int getOrder() {
+        return 0;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+        if (!(bean instanceof CrudRepository) || !(bean instanceof AlbumRepository)
+                || bean instanceof WriteBehindAlbumRepository || bean instanceof CachingAlbumRepository) {
+            return bean;
+        }
+
+        WriteBehindProperties properties = beanFactory.getBean(WriteBehindProperties.class);
+        IdGenerator idGenerator = IdGenerator.forName(beanFactory.getBean(Environment.class).getProperty("albums.id-generator"));
+        WriteBehindAlbumRepository repository = new WriteBehindAlbumRepository((CrudRepository<Album, String>) bean, properties, idGenerator);
+        repositories.add(repository);
+
+        if (beanFactory.getBeanNamesForType(MeterRegistry.class).length > 0) {
+            bindMetrics(beanFactory.getBean(MeterRegistry.class), repository);
+        }
+        return repository;
+    }
+
+    @Override
+    public void onApplicationEvent(ContextClosedEvent event) {
+        for (WriteBehindAlbumRepository repository : repositories) {
+            try {
+                repository.close();
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not close album write-behind journal", e);
+            }
+        }
+    }
+
+    static void bindMetrics(MeterRegistry meterRegistry, WriteBehindAlbumRepository repository) {
+        Gauge.builder("albums.write-behind.pending", repository, WriteBehindAlbumRepository::getPendingWrites)
+                .description("Album writes acknowledged but not yet in the repository").register(meterRegistry);
+        TimeGauge.builder("albums.write-behind.lag", repository, TimeUnit.MILLISECONDS, WriteBehindAlbumRepository::getFlushLagMillis)
+                .description("Age of the oldest pending album write").register(meterRegistry);
+        FunctionTimer.builder("albums.write-behind.flush", repository, WriteBehindAlbumRepository::getFlushes,
+                WriteBehindAlbumRepository::getFlushNanos, TimeUnit.NANOSECONDS).register(meterRegistry);
+        FunctionCounter.builder("albums.write-behind.flushed", repository, WriteBehindAlbumRepository::getFlushedWrites)
+                .register(meterRegistry);
+        FunctionCounter.builder("albums.write-behind.flush.failures", repository, WriteBehindAlbumRepository::getFailedFlushes)
+                .register(meterRegistry);
+        FunctionCounter.builder("albums.write-behind.set-aside", repository, WriteBehindAlbumRepository::getSetAsideWrites)
+                .description("Album writes the repository kept rejecting, moved to the set-aside journal").register(meterRegistry);
+    }
+}
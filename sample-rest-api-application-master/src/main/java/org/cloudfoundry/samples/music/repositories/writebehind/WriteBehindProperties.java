@@ -0,0 +1,79 @@
+package org.cloudfoundry.samples.music.repositories.writebehind;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.nio.file.Paths;
+import java.time.Duration;
+
+/**
+ * Write-behind settings, bound from {@code albums.write-behind}.
+ */
+@ConfigurationProperties(prefix = "albums.write-behind")
+public class WriteBehindProperties {
+
+    /** Acknowledges album writes once journaled and saves them to the repository in the background. */
+    private boolean enabled = false;
+
+    /** Local journal holding acknowledged writes until they are flushed; replayed on startup. */
+    private String journal = Paths.get(System.getProperty("java.io.tmpdir"), "spring-music", "album-writes.journal").toString();
+
+    /** Forces every journal append to disk before the write is acknowledged. */
+    private boolean fsync = true;
+
+    /** Time between scheduled flushes. */
+    private Duration flushInterval = Duration.ofSeconds(1);
+
+    /** Pending albums that trigger an early flush, and the most albums saved by one flush batch. */
+    private int batchSize = 500;
+
+    /** Times the repository may reject a batch before its writes are retried one by one and those still rejected are set aside. */
+    private int maxAttempts = 5;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public String getJournal() {
+        return journal;
+    }
+
+    public void setJournal(String journal) {
+        this.journal = journal;
+    }
+
+    public boolean isFsync() {
+        return fsync;
+    }
+
+    public void setFsync(boolean fsync) {
+        this.fsync = fsync;
+    }
+
+    public Duration getFlushInterval() {
+        return flushInterval;
+    }
+
+    public void setFlushInterval(Duration flushInterval) {
+        this.flushInterval = flushInterval;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+}
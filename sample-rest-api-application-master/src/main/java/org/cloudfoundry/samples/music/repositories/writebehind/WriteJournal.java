@@ -0,0 +1,163 @@
+package org.cloudfoundry.samples.music.repositories.writebehind;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.cloudfoundry.samples.music.domain.Album;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+/**
+ * Append-only NDJSON log of acknowledged album writes, {@code {"op":"save","album":{...}}}
+ * and {@code {"op":"delete","id":"..."}}. Replaying the log in
+ * order rebuilds the pending writes; once writes are flushed the log is rewritten with
+ * only what is still pending. A torn last line from a crash is skipped on replay.
+ */
+class WriteJournal implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(WriteJournal.class);
+
+    private final Path path;
+
+    private final boolean fsync;
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private FileChannel channel;
+
+    WriteJournal(Path path, boolean fsync) {
+        this.path = path;
+        this.fsync = fsync;
+    }
+
+    /**
+     * Applies every journaled write to {@code pending}, keyed by album id with {@code null}
+     * values for deletes, then opens the journal for appending.
+     */
+    void replay(Map<String, Album> pending) {
+        try {
+            if (Files.exists(path)) {
+                try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        apply(line, pending);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open write-behind journal " + path, e);
+        }
+        open();
+    }
+
+    /** Opens the journal for appending without replaying it. */
+    void open() {
+        try {
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open write-behind journal " + path, e);
+        }
+    }
+
+    /**
+     * Appends the writes, keyed by album id with {@code null} values for deletes, in
+     * iteration order and forces them to disk once.
+     */
+    void append(Map<String, Album> writes) {
+        try {
+            for (Map.Entry<String, Album> write : writes.entrySet()) {
+                channel.write(line(record(write.getKey(), write.getValue())));
+            }
+            if (fsync) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not append to write-behind journal " + path, e);
+        }
+    }
+
+    /**
+     * Replaces the journal with the given pending writes, written to a sibling file first
+     * and moved into place, so a crash leaves either the old or the new journal.
+     */
+    void rewrite(Map<String, Album> pending) {
+        Path rewritten = path.resolveSibling(path.getFileName() + ".rewrite");
+        try (FileChannel out = FileChannel.open(rewritten, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (Map.Entry<String, Album> write : pending.entrySet()) {
+                out.write(line(record(write.getKey(), write.getValue())));
+            }
+            out.force(true);
+            channel.close();
+            Files.move(rewritten, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not rewrite write-behind journal " + path, e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    private ObjectNode record(String id, Album album) {
+        if (album == null) {
+            return objectMapper.createObjectNode().put("op", "delete").put("id", id);
+        }
+        ObjectNode record = objectMapper.createObjectNode().put("op", "save");
+        record.set("album", objectMapper.valueToTree(album));
+        return record;
+    }
+
+    private ByteBuffer line(ObjectNode record) throws JsonProcessingException {
+        return ByteBuffer.wrap((objectMapper.writeValueAsString(record) + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void apply(String line, Map<String, Album> pending) {
+        JsonNode record;
+        try {
+            record = objectMapper.readTree(line);
+        } catch (IOException e) {
+            logger.warn("Skipping unreadable write-behind journal record: " + line);
+            return;
+        }
+        if (record == null) {
+            return;
+        }
+        switch (record.path("op").asText()) {
+            case "save":
+                try {
+                    Album album = objectMapper.treeToValue(record.get("album"), Album.class);
+                    pending.put(album.getId(), album);
+                } catch (JsonProcessingException e) {
+                    logger.warn("Skipping unreadable write-behind journal record: " + line);
+                }
+                break;
+            case "delete":
+                pending.put(record.path("id").asText(), null);
+                break;
+            default:
+                logger.warn("Skipping unknown write-behind journal record: " + line);
+        }
+    }
+}
@@ -10,8 +10,8 @@ import org.springframework.validation.Validator;
 @Component
 public class AlbumCreateRequestValidator implements Validator {
 
-    private static final String ALREADY_EXISTS_CODE = "album-already-exists";
-    private static final String ALREADY_EXISTS_DESC = "Album already exists for the provided artist and title";
+    public static final String ALREADY_EXISTS_CODE = "album-already-exists";
+    public static final String ALREADY_EXISTS_DESC = "Album already exists for the provided artist and title";
 
     private AlbumRepository repository;
 
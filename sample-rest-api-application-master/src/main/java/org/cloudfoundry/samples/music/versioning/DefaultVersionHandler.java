@@ -9,6 +9,11 @@ import java.time.LocalDate;
 @Component
 public class DefaultVersionHandler implements VersionHandler {
 
+    @Override
+    public boolean supports(Type type, LocalDate localDate) {
+        return false;
+    }
+
     @Override
     public void beforeBodyRead(JsonNode bodyJsonNode, Type targetType, LocalDate localDate) {
         // noop
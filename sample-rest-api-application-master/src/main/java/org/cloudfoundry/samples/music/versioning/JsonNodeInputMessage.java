@@ -0,0 +1,44 @@
+package org.cloudfoundry.samples.music.versioning;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpInputMessage;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A request body that has already been parsed and versioned. The Jackson converter
+ * binds the tree directly; the body is only serialized again if another converter
+ * asks for the raw stream.
+ */
+public class JsonNodeInputMessage implements HttpInputMessage {
+
+    private final JsonNode jsonNode;
+
+    private final HttpHeaders headers;
+
+    private final ObjectMapper objectMapper;
+
+    public JsonNodeInputMessage(JsonNode jsonNode, HttpHeaders headers, ObjectMapper objectMapper) {
+        this.jsonNode = jsonNode;
+        this.headers = headers;
+        this.objectMapper = objectMapper;
+    }
+
+    public JsonNode getJsonNode() {
+        return jsonNode;
+    }
+
+    @Override
+    public InputStream getBody() throws IOException {
+        return new ByteArrayInputStream(objectMapper.writeValueAsBytes(jsonNode));
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+        return headers;
+    }
+}
@@ -0,0 +1,47 @@
+package org.cloudfoundry.samples.music.versioning;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Bounds of the {@link VersionedResponseCache}, bound from {@code versioning.response-cache}.
+ */
+@Component
+@ConfigurationProperties(prefix = "versioning.response-cache")
+public class ResponseCacheProperties {
+
+    /** Bodies kept across all endpoints, versions and x-version dates. */
+    private int maxEntries = 256;
+
+    /** Bytes of cached bodies; a body larger than this is never stored. */
+    private long maxBytes = 32 * 1024 * 1024;
+
+    /** How long a body is served before it is rendered again, bounding how long writes of other instances stay invisible. */
+    private Duration timeToLive = Duration.ofSeconds(5);
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public Duration getTimeToLive() {
+        return timeToLive;
+    }
+
+    public void setTimeToLive(Duration timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+}
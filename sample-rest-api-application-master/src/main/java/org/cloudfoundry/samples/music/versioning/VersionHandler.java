@@ -1,11 +1,59 @@
 package org.cloudfoundry.samples.music.versioning;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import org.springframework.core.ResolvableType;
 
 import java.lang.reflect.Type;
 import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Collections;
 
 public interface VersionHandler {
+
+    /**
+     * Body types this handler transforms, matched against the raw class of the request
+     * target type or of the response body. An empty collection matches every type.
+     */
+    default Collection<Class<?>> getTargetTypes() {
+        return Collections.emptySet();
+    }
+
+    /**
+     * Earliest version date (inclusive) this handler applies to.
+     */
+    default LocalDate getVersionFrom() {
+        return LocalDate.MIN;
+    }
+
+    /**
+     * Latest version date (inclusive) this handler applies to.
+     */
+    default LocalDate getVersionUntil() {
+        return LocalDate.MAX;
+    }
+
+    /**
+     * Whether this handler may change bodies of the given type for the given version date.
+     * {@link VersioningManager} caches the answer per type and date, so it must only depend
+     * on its arguments. When no handler supports a body, no JSON tree is built for it.
+     */
+    default boolean supports(Type type, LocalDate localDate) {
+        if (localDate.isBefore(getVersionFrom()) || localDate.isAfter(getVersionUntil())) {
+            return false;
+        }
+        Collection<Class<?>> targetTypes = getTargetTypes();
+        if (targetTypes.isEmpty()) {
+            return true;
+        }
+        Class<?> rawClass = ResolvableType.forType(type).resolve(Object.class);
+        for (Class<?> targetType : targetTypes) {
+            if (targetType.isAssignableFrom(rawClass)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     void beforeBodyRead(JsonNode bodyJsonNode, Type targetType, LocalDate localDate);
     void beforeBodyWrite(JsonNode bodyJsonNode, Class<?> returnType, LocalDate localDate);
 }
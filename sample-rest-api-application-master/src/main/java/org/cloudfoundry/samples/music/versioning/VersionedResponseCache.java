@@ -0,0 +1,154 @@
+package org.cloudfoundry.samples.music.versioning;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * Serialized, version-transformed response bodies keyed by endpoint, resource version and
+ * x-version date, so clients pinned to the same version get a byte copy instead of a tree
+ * transform and serialization. Entries are evicted least-recently-used once either the
+ * entry or the byte budget is exceeded, and {@link #invalidate()} drops everything when
+ * the underlying data changes. Writes this instance never sees, such as those of other
+ * instances, are picked up once an entry outlives {@code time-to-live}.
+ */
+@Component
+public class VersionedResponseCache {
+
+    private VersioningManager versioningManager;
+
+    private ObjectMapper objectMapper;
+
+    private int maxEntries;
+
+    private long maxBytes;
+
+    private long timeToLiveNanos;
+
+    private LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long totalBytes;
+
+    // Bumped on every invalidation; bodies rendered before the bump are not stored.
+    private long generation;
+
+    @Autowired
+    public VersionedResponseCache(VersioningManager versioningManager, ObjectMapper objectMapper,
+                                  ResponseCacheProperties properties) {
+        this(versioningManager, objectMapper, properties.getMaxEntries(), properties.getMaxBytes(), properties.getTimeToLive());
+    }
+
+    public VersionedResponseCache(VersioningManager versioningManager, ObjectMapper objectMapper,
+                                  int maxEntries, long maxBytes, Duration timeToLive) {
+        this.versioningManager = versioningManager;
+        this.objectMapper = objectMapper;
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.timeToLiveNanos = timeToLive.toNanos();
+    }
+
+    public byte[] getOrWrite(String endpoint, long resourceVersion, HttpHeaders headers, Supplier<?> bodySupplier) {
+        Key key = new Key(endpoint, resourceVersion, versioningManager.extractVersionDate(headers));
+        long renderGeneration;
+        synchronized (this) {
+            Entry cached = entries.get(key);
+            if (cached != null) {
+                if (System.nanoTime() - cached.storedAt < timeToLiveNanos) {
+                    return cached.body;
+                }
+                entries.remove(key);
+                totalBytes -= cached.body.length;
+            }
+            renderGeneration = generation;
+        }
+
+        byte[] rendered = render(bodySupplier.get(), headers);
+        synchronized (this) {
+            if (renderGeneration == generation && rendered.length <= maxBytes) {
+                Entry previous = entries.put(key, new Entry(rendered, System.nanoTime()));
+                totalBytes += rendered.length - (previous == null ? 0 : previous.body.length);
+                evict();
+            }
+        }
+        return rendered;
+    }
+
+    public synchronized void invalidate() {
+        generation++;
+        entries.clear();
+        totalBytes = 0;
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    private byte[] render(Object body, HttpHeaders headers) {
+        try {
+            return objectMapper.writeValueAsBytes(versioningManager.beforeBodyWrite(body, headers));
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void evict() {
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (eldest.hasNext() && (entries.size() > maxEntries || totalBytes > maxBytes)) {
+            totalBytes -= eldest.next().body.length;
+            eldest.remove();
+        }
+    }
+
+    private static final class Entry {
+
+        private final byte[] body;
+
+        private final long storedAt;
+
+        Entry(byte[] body, long storedAt) {
+            this.body = body;
+            this.storedAt = storedAt;
+        }
+    }
+
+    private static final class Key {
+
+        private final String endpoint;
+
+        private final long resourceVersion;
+
+        private final LocalDate versionDate;
+
+        Key(String endpoint, long resourceVersion, LocalDate versionDate) {
+            this.endpoint = endpoint;
+            this.resourceVersion = resourceVersion;
+            this.versionDate = versionDate;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return resourceVersion == other.resourceVersion && endpoint.equals(other.endpoint) && versionDate.equals(other.versionDate);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(endpoint, resourceVersion, versionDate);
+        }
+    }
+}
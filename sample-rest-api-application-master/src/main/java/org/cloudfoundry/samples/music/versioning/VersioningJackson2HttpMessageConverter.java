@@ -0,0 +1,54 @@
+package org.cloudfoundry.samples.music.versioning;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.exc.InvalidDefinitionException;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.converter.HttpMessageConversionException;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+
+/**
+ * Replaces Boot's default Jackson converter so that bodies rewritten by
+ * {@link VersioningManager} are bound straight from their tree instead of being
+ * written back to bytes and parsed a second time.
+ */
+@Component
+public class VersioningJackson2HttpMessageConverter extends MappingJackson2HttpMessageConverter {
+
+    public VersioningJackson2HttpMessageConverter(ObjectMapper objectMapper) {
+        super(objectMapper);
+    }
+
+    @Override
+    public Object read(Type type, Class<?> contextClass, HttpInputMessage inputMessage) throws IOException, HttpMessageNotReadableException {
+        if (inputMessage instanceof JsonNodeInputMessage) {
+            return readTree(type, contextClass, (JsonNodeInputMessage) inputMessage);
+        }
+        return super.read(type, contextClass, inputMessage);
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) throws IOException, HttpMessageNotReadableException {
+        if (inputMessage instanceof JsonNodeInputMessage) {
+            return readTree(clazz, null, (JsonNodeInputMessage) inputMessage);
+        }
+        return super.readInternal(clazz, inputMessage);
+    }
+
+    private Object readTree(Type type, Class<?> contextClass, JsonNodeInputMessage inputMessage) {
+        try {
+            return getObjectMapper().readerFor(getJavaType(type, contextClass)).readValue(inputMessage.getJsonNode());
+        } catch (InvalidDefinitionException e) {
+            throw new HttpMessageConversionException("Type definition error: " + e.getType(), e);
+        } catch (JsonProcessingException e) {
+            throw new HttpMessageNotReadableException("JSON parse error: " + e.getOriginalMessage(), e);
+        } catch (IOException e) {
+            throw new HttpMessageNotReadableException("I/O error while reading tree: " + e.getMessage(), e);
+        }
+    }
+}
@@ -1,6 +1,5 @@
 package org.cloudfoundry.samples.music.versioning;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
@@ -12,16 +11,17 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpInputMessage;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.converter.json.MappingJacksonInputMessage;
 import org.springframework.stereotype.Component;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.lang.reflect.Type;
 import java.time.LocalDate;
 import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 @Component
 public class VersioningManager {
@@ -30,8 +30,19 @@ public class VersioningManager {
 
     public static String VERSION_HEADER_NAME = "x-version";
 
+    // Chains are cached per body type and version date, least recently used first out,
+    // so client-supplied dates and each new day's default cannot crowd out the hot ones.
+    static final int MAX_CACHED_CHAINS = 1024;
+
     private List<VersionHandler> handlers;
 
+    private final Map<ChainKey, List<VersionHandler>> chains = new LinkedHashMap<ChainKey, List<VersionHandler>>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ChainKey, List<VersionHandler>> eldest) {
+            return size() > MAX_CACHED_CHAINS;
+        }
+    };
+
     private ObjectMapper objectMapper;
 
     @Autowired
@@ -47,15 +58,47 @@ public class VersioningManager {
         }
 
         LocalDate localDate = extractVersionDate(inputMessage.getHeaders());
+        List<VersionHandler> chain = getChain(targetType, localDate);
+        if (chain.isEmpty()) {
+            return inputMessage;
+        }
+
         JsonNode bodyJsonNode = readJsonNode(inputMessage);
-        for (VersionHandler handler : this.handlers) {
+        for (VersionHandler handler : chain) {
             handler.beforeBodyRead(bodyJsonNode, targetType, localDate);
         }
-        InputStream requestStream = writeJsonNode(bodyJsonNode);
-        return new MappingJacksonInputMessage(requestStream, inputMessage.getHeaders());
+        return new JsonNodeInputMessage(bodyJsonNode, inputMessage.getHeaders(), this.objectMapper);
+    }
+
+    List<VersionHandler> getChain(Type type, LocalDate localDate) {
+        ChainKey key = new ChainKey(type, localDate);
+        List<VersionHandler> chain;
+        synchronized (this.chains) {
+            chain = this.chains.get(key);
+        }
+        if (chain == null) {
+            chain = compileChain(type, localDate);
+            synchronized (this.chains) {
+                List<VersionHandler> cached = this.chains.putIfAbsent(key, chain);
+                if (cached != null) {
+                    chain = cached;
+                }
+            }
+        }
+        return chain;
+    }
+
+    private List<VersionHandler> compileChain(Type type, LocalDate localDate) {
+        List<VersionHandler> chain = new ArrayList<>();
+        for (VersionHandler handler : this.handlers) {
+            if (handler.supports(type, localDate)) {
+                chain.add(handler);
+            }
+        }
+        return chain.isEmpty() ? Collections.emptyList() : Collections.unmodifiableList(chain);
     }
 
-    private LocalDate extractVersionDate(HttpHeaders headers) {
+    public LocalDate extractVersionDate(HttpHeaders headers) {
         try {
             String version = headers.getFirst(VERSION_HEADER_NAME);
             return (version == null ? LocalDate.now() : LocalDate.parse(version));
@@ -65,14 +108,6 @@ public class VersioningManager {
         }
     }
 
-    private ByteArrayInputStream writeJsonNode(JsonNode bodyJsonNode) {
-        try {
-            return new ByteArrayInputStream(this.objectMapper.writeValueAsBytes(bodyJsonNode));
-        } catch (JsonProcessingException e) {
-            throw new RuntimeException(e);
-        }
-    }
-
     private JsonNode readJsonNode(HttpInputMessage inputMessage) {
         try {
             return this.objectMapper.readValue(inputMessage.getBody(), JsonNode.class);
@@ -88,10 +123,44 @@ public class VersioningManager {
         }
 
         LocalDate localDate = extractVersionDate(headers);
+        List<VersionHandler> chain = getChain(body.getClass(), localDate);
+        if (chain.isEmpty()) {
+            return body;
+        }
+
         JsonNode bodyJsonNode = this.objectMapper.convertValue(body, JsonNode.class);
-        for (VersionHandler handler : this.handlers) {
+        for (VersionHandler handler : chain) {
             handler.beforeBodyWrite(bodyJsonNode, body.getClass(), localDate);
         }
         return bodyJsonNode;
     }
+
+    private static final class ChainKey {
+
+        private final Type type;
+
+        private final LocalDate localDate;
+
+        ChainKey(Type type, LocalDate localDate) {
+            this.type = type;
+            this.localDate = localDate;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ChainKey)) {
+                return false;
+            }
+            ChainKey other = (ChainKey) o;
+            return type.equals(other.type) && localDate.equals(other.localDate);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * type.hashCode() + localDate.hashCode();
+        }
+    }
 }
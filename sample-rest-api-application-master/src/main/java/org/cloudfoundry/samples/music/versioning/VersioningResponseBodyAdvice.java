@@ -2,6 +2,7 @@ package org.cloudfoundry.samples.music.versioning;
 
 import org.springframework.core.MethodParameter;
 import org.springframework.http.MediaType;
+import org.springframework.http.converter.ByteArrayHttpMessageConverter;
 import org.springframework.http.converter.HttpMessageConverter;
 import org.springframework.http.server.ServerHttpRequest;
 import org.springframework.http.server.ServerHttpResponse;
@@ -19,7 +20,8 @@ public class VersioningResponseBodyAdvice implements ResponseBodyAdvice<Object>
 
     @Override
     public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
-        return true;
+        // raw bytes, such as cached response bodies, are already versioned
+        return !ByteArrayHttpMessageConverter.class.isAssignableFrom(converterType);
     }
 
     @Override
@@ -1,42 +1,98 @@
 package org.cloudfoundry.samples.music.web;
 
 import org.cloudfoundry.samples.music.domain.Album;
+import org.cloudfoundry.samples.music.domain.AlbumPage;
 import org.cloudfoundry.samples.music.domain.ApiError;
+import org.cloudfoundry.samples.music.domain.BatchItemResult;
 import org.cloudfoundry.samples.music.errors.ApplicationException;
+import org.cloudfoundry.samples.music.latency.LatencySimulator;
+import org.cloudfoundry.samples.music.repositories.AlbumRepository;
+import org.cloudfoundry.samples.music.repositories.AlbumSeedHealthIndicator;
+import org.cloudfoundry.samples.music.repositories.AlbumsSeededEvent;
+import org.cloudfoundry.samples.music.repositories.InvalidPageTokenException;
+import org.cloudfoundry.samples.music.repositories.PartialBatchWriteException;
 import org.cloudfoundry.samples.music.validators.AlbumCreateRequestValidator;
+import org.cloudfoundry.samples.music.versioning.VersionedResponseCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.validation.BindingResult;
+import org.springframework.validation.beanvalidation.SpringValidatorAdapter;
 import org.springframework.web.bind.WebDataBinder;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.util.UriComponents;
 import org.springframework.web.util.UriComponentsBuilder;
 
 import javax.validation.Valid;
+import javax.validation.Validator;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.Date;
-import java.util.concurrent.TimeUnit;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
-@RequestMapping(value = "/albums", produces = MediaType.APPLICATION_JSON_VALUE)
+@RequestMapping(produces = MediaType.APPLICATION_JSON_VALUE)
 public class AlbumController {
 
     private static final Logger logger = LoggerFactory.getLogger(AlbumController.class);
 
+    static final int MAX_PAGE_LIMIT = 1000;
+
+    static final int MAX_BATCH_SIZE = 1000;
+
     private CrudRepository<Album, String> repository;
 
+    private AlbumRepository albumRepository;
+
     private AlbumCreateRequestValidator albumCreateRequestValidator;
 
+    private LatencySimulator latencySimulator;
+
+    private SpringValidatorAdapter beanValidator;
+
+    private VersionedResponseCache responseCache;
+
+    private AlbumSeedHealthIndicator seedHealthIndicator;
+
     private Date lastModified = new Date();
 
     @Autowired
-    public AlbumController(CrudRepository<Album, String> repository, AlbumCreateRequestValidator albumCreateRequestValidator) {
+    public AlbumController(CrudRepository<Album, String> repository, AlbumCreateRequestValidator albumCreateRequestValidator, LatencySimulator latencySimulator, Validator validator, VersionedResponseCache responseCache) {
         this.repository = repository;
         this.albumCreateRequestValidator = albumCreateRequestValidator;
+        this.latencySimulator = latencySimulator;
+        this.beanValidator = new SpringValidatorAdapter(validator);
+        this.responseCache = responseCache;
+        if (AlbumRepository.class.isAssignableFrom(repository.getClass())) {
+            this.albumRepository = (AlbumRepository) repository;
+        }
+    }
+
+    // registered by the seed populator, which only runs when started through Application
+    @Autowired(required = false)
+    public void setSeedHealthIndicator(AlbumSeedHealthIndicator seedHealthIndicator) {
+        this.seedHealthIndicator = seedHealthIndicator;
+    }
+
+    @EventListener
+    public void albumsSeeded(AlbumsSeededEvent event) {
+        albumsChanged();
     }
 
     @InitBinder("album")
@@ -44,51 +100,264 @@ public class AlbumController {
         binder.addValidators(albumCreateRequestValidator);
     }
 
-    @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
+    @PostMapping(value = "/albums", consumes = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<Album> add(@RequestBody @Valid Album album, UriComponentsBuilder builder) {
+        rejectWhileSeeding(seedHealthIndicator);
         logger.info("Adding album " + album.getId());
-        Album savedAlbum = repository.save(album);
-        this.lastModified = new Date();
+        Album savedAlbum = album;
+        if (albumRepository == null) {
+            savedAlbum = repository.save(album);
+        } else if (!albumRepository.insertIfAbsent(album)) {
+            // created since the validator ran; backends without an atomic insertIfAbsent
+            // can still let a concurrent duplicate through
+            throw new ApplicationException(HttpStatus.BAD_REQUEST, new ApiError(AlbumCreateRequestValidator.ALREADY_EXISTS_CODE, null, AlbumCreateRequestValidator.ALREADY_EXISTS_DESC));
+        }
+        albumsChanged();
 
         UriComponents uriComponents = builder.path("/albums/{id}").buildAndExpand(savedAlbum.getId());
         return ResponseEntity.created(uriComponents.toUri()).body(savedAlbum);
     }
 
-    @RequestMapping(method = RequestMethod.GET)
-    public ResponseEntity<Iterable<Album>> albums(@RequestHeader(name=HttpHeaders.IF_MODIFIED_SINCE, required = false) Date modifiedSince) throws Exception {
+    @RequestMapping(value = "/albums", method = RequestMethod.GET)
+    public CompletableFuture<ResponseEntity<byte[]>> albums(@RequestHeader(name=HttpHeaders.IF_MODIFIED_SINCE, required = false) Date modifiedSince, @RequestHeader HttpHeaders requestHeaders) {
+        rejectWhileSeeding(seedHealthIndicator);
 
         logger.info("Initiating GET albums request. Modified Since Header: "+modifiedSince);
         HttpHeaders headers = new HttpHeaders();
         headers.setLastModified(lastModified.getTime());
         if (modifiedSince != null && (modifiedSince.getTime() - this.lastModified.getTime()) >= -1000) {
             logger.info("Returning Not Modified response");
-            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(headers).build();
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(headers).build());
+        }
+
+        long resourceVersion = lastModified.getTime();
+        // runs on the latency simulator's thread, in the repository's own read-only transaction
+        return latencySimulator.supply("albums-list", () -> {
+            logger.info("Returning GET albums response");
+            byte[] body = responseCache.getOrWrite("albums-list", resourceVersion, requestHeaders, repository::findAll);
+            return ResponseEntity.ok().headers(headers).contentType(MediaType.APPLICATION_JSON_UTF8).body(body);
+        });
+    }
+
+    @RequestMapping(value = "/albums", method = RequestMethod.GET, params = "limit")
+    public CompletableFuture<ResponseEntity<List<Album>>> albumsPage(@RequestParam int limit, @RequestParam(required = false) String after, UriComponentsBuilder builder) {
+        rejectWhileSeeding(seedHealthIndicator);
+        logger.info("Getting albums page. Limit: " + limit + ", After: " + after);
+
+        if (limit < 1 || limit > MAX_PAGE_LIMIT) {
+            throw new ApplicationException(HttpStatus.BAD_REQUEST, new ApiError("invalid-request", "invalid-page-limit", String.format("limit must be between 1 and %d", MAX_PAGE_LIMIT)));
+        }
+        if (albumRepository == null) {
+            throw new ApplicationException(HttpStatus.NOT_IMPLEMENTED, new ApiError("operation-not-supported", null, "paging is not supported by the active repository"));
         }
 
-        TimeUnit.SECONDS.sleep(5);
-        logger.info("Returning GET albums response");
-        return ResponseEntity.ok().headers(headers).body(repository.findAll());
+        String position = decodePageToken(after);
+        HttpHeaders headers = new HttpHeaders();
+        headers.setLastModified(lastModified.getTime());
+
+        return latencySimulator.supply("albums-page", () -> {
+            AlbumPage page;
+            try {
+                page = albumRepository.findPage(position, limit);
+            } catch (InvalidPageTokenException e) {
+                throw invalidPageToken(after);
+            }
+            if (page.hasNext()) {
+                String next = builder.path("/albums")
+                        .queryParam("limit", limit)
+                        .queryParam("after", encodePageToken(page.getNextPosition()))
+                        .build().toUriString();
+                headers.add(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+            }
+            return ResponseEntity.ok().headers(headers).body(page.getAlbums());
+        });
     }
 
-    @RequestMapping(value = "/{id}", method = RequestMethod.PUT, consumes = MediaType.APPLICATION_JSON_VALUE)
+    @RequestMapping(value = "/albums/{id}", method = RequestMethod.PUT, consumes = MediaType.APPLICATION_JSON_VALUE)
     public Album update(@PathVariable String id, @RequestBody @Valid Album album) {
+        rejectWhileSeeding(seedHealthIndicator);
         logger.info("Updating album " + album.getId());
         album.setId(id);
-        this.lastModified = new Date();
-        return repository.save(album);
+        Album savedAlbum;
+        try {
+            savedAlbum = repository.save(album);
+        } catch (DuplicateKeyException e) {
+            throw new ApplicationException(HttpStatus.BAD_REQUEST, new ApiError(AlbumCreateRequestValidator.ALREADY_EXISTS_CODE, null, AlbumCreateRequestValidator.ALREADY_EXISTS_DESC));
+        }
+        albumsChanged();
+        return savedAlbum;
     }
 
-    @RequestMapping(value = "/{id}", method = RequestMethod.GET)
+    @RequestMapping(value = "/albums/{id}", method = RequestMethod.GET)
+    @Transactional(readOnly = true)
     public Album getById(@PathVariable String id) {
+        rejectWhileSeeding(seedHealthIndicator);
         logger.info("Getting album " + id);
         return repository.findById(id).orElseThrow(() ->
                 new ApplicationException(HttpStatus.NOT_FOUND, new ApiError("resource-not-found", null, String.format("album could not be found for parameters {id=%s}", id))));
     }
 
-    @RequestMapping(value = "/{id}", method = RequestMethod.DELETE)
+    @RequestMapping(value = "/albums/{id}", method = RequestMethod.DELETE)
     public void deleteById(@PathVariable String id) {
+        rejectWhileSeeding(seedHealthIndicator);
         logger.info("Deleting album " + id);
-        this.lastModified = new Date();
         repository.deleteById(id);
+        albumsChanged();
+    }
+
+    @PostMapping(value = "/albums:batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public List<BatchItemResult> addAll(@RequestBody List<Album> albums) {
+        rejectWhileSeeding(seedHealthIndicator);
+        logger.info("Adding batch of " + albums.size() + " albums");
+        return saveBatch(albums, true);
+    }
+
+    @PutMapping(value = "/albums:batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public List<BatchItemResult> updateAll(@RequestBody List<Album> albums) {
+        rejectWhileSeeding(seedHealthIndicator);
+        logger.info("Updating batch of " + albums.size() + " albums");
+        return saveBatch(albums, false);
+    }
+
+    // Invalid albums are reported in place. Creates go through insertIfAbsent one album at
+    // a time, like a single create, so an album created concurrently since validation is
+    // reported as a 409 instead of being stored twice; only repositories without
+    // insertIfAbsent fall back to saveAll. Updates skip the create-time duplicate check,
+    // as they replace an existing album by id, and are persisted with a single saveAll so
+    // the backend can batch the writes.
+    private List<BatchItemResult> saveBatch(List<Album> albums, boolean create) {
+        if (albums.size() > MAX_BATCH_SIZE) {
+            throw new ApplicationException(HttpStatus.BAD_REQUEST, new ApiError("invalid-request", "batch-too-large", String.format("a batch may contain at most %d albums", MAX_BATCH_SIZE)));
+        }
+
+        BatchItemResult[] results = new BatchItemResult[albums.size()];
+        List<Album> accepted = new ArrayList<>();
+        List<Integer> acceptedIndexes = new ArrayList<>();
+        Set<String> batchKeys = new HashSet<>();
+
+        for (int i = 0; i < albums.size(); i++) {
+            Album album = albums.get(i);
+            List<ApiError> errors = validateBatchItem(album, create, batchKeys);
+            if (errors.isEmpty()) {
+                accepted.add(album);
+                acceptedIndexes.add(i);
+            } else {
+                results[i] = new BatchItemResult(i, HttpStatus.BAD_REQUEST.value(), null, errors);
+            }
+        }
+
+        if (create && albumRepository != null) {
+            if (!accepted.isEmpty()) {
+                insertBatch(accepted, acceptedIndexes, results);
+                albumsChanged();
+            }
+            return Arrays.asList(results);
+        }
+
+        if (!accepted.isEmpty()) {
+            HttpStatus savedStatus = create ? HttpStatus.CREATED : HttpStatus.OK;
+            try {
+                Iterator<Album> saved = repository.saveAll(accepted).iterator();
+                for (Integer index : acceptedIndexes) {
+                    results[index] = new BatchItemResult(index, savedStatus.value(), saved.next(), null);
+                }
+            } catch (PartialBatchWriteException e) {
+                logger.error("Failed to save " + e.getFailures().size() + " of a batch of " + accepted.size() + " albums", e);
+                for (int i = 0; i < accepted.size(); i++) {
+                    int index = acceptedIndexes.get(i);
+                    DataAccessException failure = e.getFailures().get(i);
+                    results[index] = failure == null
+                            ? new BatchItemResult(index, savedStatus.value(), accepted.get(i), null)
+                            : failedItem(index, failure);
+                }
+            } catch (RuntimeException e) {
+                logger.error("Failed to save batch of " + accepted.size() + " albums", e);
+                List<ApiError> errors = Arrays.asList(new ApiError("operation-failed", null, "an unexpected error occurred"));
+                for (Integer index : acceptedIndexes) {
+                    results[index] = new BatchItemResult(index, HttpStatus.INTERNAL_SERVER_ERROR.value(), null, errors);
+                }
+            }
+            albumsChanged();
+        }
+
+        return Arrays.asList(results);
+    }
+
+    private void insertBatch(List<Album> accepted, List<Integer> acceptedIndexes, BatchItemResult[] results) {
+        for (int i = 0; i < accepted.size(); i++) {
+            int index = acceptedIndexes.get(i);
+            Album album = accepted.get(i);
+            try {
+                results[index] = albumRepository.insertIfAbsent(album)
+                        ? new BatchItemResult(index, HttpStatus.CREATED.value(), album, null)
+                        : new BatchItemResult(index, HttpStatus.CONFLICT.value(), null,
+                                Arrays.asList(new ApiError(AlbumCreateRequestValidator.ALREADY_EXISTS_CODE, null, AlbumCreateRequestValidator.ALREADY_EXISTS_DESC)));
+            } catch (RuntimeException e) {
+                logger.error("Failed to create album " + index + " of a batch of " + results.length, e);
+                results[index] = new BatchItemResult(index, HttpStatus.INTERNAL_SERVER_ERROR.value(), null,
+                        Arrays.asList(new ApiError("operation-failed", null, "an unexpected error occurred")));
+            }
+        }
+    }
+
+    private BatchItemResult failedItem(int index, DataAccessException failure) {
+        if (failure instanceof DuplicateKeyException) {
+            return new BatchItemResult(index, HttpStatus.BAD_REQUEST.value(), null,
+                    Arrays.asList(new ApiError(AlbumCreateRequestValidator.ALREADY_EXISTS_CODE, null, AlbumCreateRequestValidator.ALREADY_EXISTS_DESC)));
+        }
+        return new BatchItemResult(index, HttpStatus.INTERNAL_SERVER_ERROR.value(), null,
+                Arrays.asList(new ApiError("operation-failed", null, "an unexpected error occurred")));
+    }
+
+    // A partly seeded catalog would be served, and cached, as if it were complete.
+    static void rejectWhileSeeding(AlbumSeedHealthIndicator seedHealthIndicator) {
+        if (seedHealthIndicator != null && seedHealthIndicator.isSeeding()) {
+            throw new ApplicationException(HttpStatus.SERVICE_UNAVAILABLE, new ApiError("service-unavailable", "seeding-in-progress", "albums are still being seeded, retry later"));
+        }
+        if (seedHealthIndicator != null && seedHealthIndicator.hasFailed()) {
+            throw new ApplicationException(HttpStatus.SERVICE_UNAVAILABLE, new ApiError("service-unavailable", "seeding-failed", "album seeding failed and the catalog is incomplete"));
+        }
+    }
+
+    private void albumsChanged() {
+        this.lastModified = new Date();
+        responseCache.invalidate();
+    }
+
+    private List<ApiError> validateBatchItem(Album album, boolean create, Set<String> batchKeys) {
+        if (album == null) {
+            return Arrays.asList(new ApiError("missing-information", null, "album must not be null"));
+        }
+
+        BindingResult bindingResult = new BeanPropertyBindingResult(album, "album");
+        beanValidator.validate(album, bindingResult);
+        if (create) {
+            albumCreateRequestValidator.validate(album, bindingResult);
+            if (!batchKeys.add(album.getArtist() + '\u0000' + album.getTitle()) && !bindingResult.hasGlobalErrors()) {
+                bindingResult.reject(AlbumCreateRequestValidator.ALREADY_EXISTS_CODE, AlbumCreateRequestValidator.ALREADY_EXISTS_DESC);
+            }
+        } else if (album.getId() == null) {
+            bindingResult.reject("missing-information", "id is required to update an album");
+        }
+        return ApplicationExceptionHandler.toApiErrors(bindingResult);
+    }
+
+    private String encodePageToken(String position) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String decodePageToken(String token) {
+        if (token == null) {
+            return null;
+        }
+        try {
+            return new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw invalidPageToken(token);
+        }
+    }
+
+    private ApplicationException invalidPageToken(String token) {
+        return new ApplicationException(HttpStatus.BAD_REQUEST, new ApiError("invalid-request", "invalid-page-token", String.format("after is not a valid continuation token {after=%s}", token)));
     }
-}
\ No newline at end of file
+}
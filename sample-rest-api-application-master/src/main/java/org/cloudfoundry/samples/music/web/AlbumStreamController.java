@@ -0,0 +1,127 @@
+package org.cloudfoundry.samples.music.web;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.cloudfoundry.samples.music.domain.Album;
+import org.cloudfoundry.samples.music.repositories.AlbumRepository;
+import org.cloudfoundry.samples.music.repositories.AlbumSeedHealthIndicator;
+import org.cloudfoundry.samples.music.versioning.VersioningManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Full album dumps written to the response one album at a time while the repository is
+ * iterated, so neither the list nor its JSON tree is ever held in memory. Versioning is
+ * applied per album, with {@link Album} as the return type seen by the handlers.
+ */
+@RestController
+@RequestMapping(value = "/albums")
+public class AlbumStreamController {
+
+    private static final Logger logger = LoggerFactory.getLogger(AlbumStreamController.class);
+
+    public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+    private static final int FLUSH_INTERVAL = 100;
+
+    private CrudRepository<Album, String> repository;
+
+    private AlbumRepository albumRepository;
+
+    private VersioningManager versioningManager;
+
+    private ObjectMapper objectMapper;
+
+    private ObjectWriter albumWriter;
+
+    private AlbumSeedHealthIndicator seedHealthIndicator;
+
+    @Autowired
+    public AlbumStreamController(CrudRepository<Album, String> repository, VersioningManager versioningManager, ObjectMapper objectMapper) {
+        this.repository = repository;
+        this.versioningManager = versioningManager;
+        this.objectMapper = objectMapper;
+        this.albumWriter = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        if (AlbumRepository.class.isAssignableFrom(repository.getClass())) {
+            this.albumRepository = (AlbumRepository) repository;
+        }
+    }
+
+    @Autowired(required = false)
+    public void setSeedHealthIndicator(AlbumSeedHealthIndicator seedHealthIndicator) {
+        this.seedHealthIndicator = seedHealthIndicator;
+    }
+
+    @RequestMapping(method = RequestMethod.GET, produces = APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> albumsNdjson(@RequestHeader HttpHeaders headers) {
+        AlbumController.rejectWhileSeeding(seedHealthIndicator);
+        logger.info("Streaming albums as NDJSON");
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(APPLICATION_NDJSON_VALUE))
+                .body(outputStream -> writeAlbums(outputStream, headers, false));
+    }
+
+    @RequestMapping(method = RequestMethod.GET, params = {"stream=true", "!limit"}, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> albumsJsonArray(@RequestHeader HttpHeaders headers) {
+        AlbumController.rejectWhileSeeding(seedHealthIndicator);
+        logger.info("Streaming albums as a chunked JSON array");
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .body(outputStream -> writeAlbums(outputStream, headers, true));
+    }
+
+    private void writeAlbums(OutputStream outputStream, HttpHeaders headers, boolean asArray) throws IOException {
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        generator.setRootValueSeparator(null);
+
+        if (asArray) {
+            generator.writeStartArray();
+        }
+
+        long count = 0;
+        try (Stream<Album> albums = openAlbumStream()) {
+            Iterator<Album> iterator = albums.iterator();
+            while (iterator.hasNext()) {
+                albumWriter.writeValue(generator, versioningManager.beforeBodyWrite(iterator.next(), headers));
+                if (!asArray) {
+                    generator.writeRaw('\n');
+                }
+                if (count++ % FLUSH_INTERVAL == 0) {
+                    generator.flush();
+                }
+            }
+        }
+
+        if (asArray) {
+            generator.writeEndArray();
+        }
+        generator.close();
+        logger.info("Streamed " + count + " albums");
+    }
+
+    private Stream<Album> openAlbumStream() {
+        if (albumRepository != null) {
+            return albumRepository.streamAll();
+        }
+        return StreamSupport.stream(repository.findAll().spliterator(), false);
+    }
+}
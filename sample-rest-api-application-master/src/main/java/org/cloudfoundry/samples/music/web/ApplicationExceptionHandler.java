@@ -64,20 +64,23 @@ public class ApplicationExceptionHandler extends ResponseEntityExceptionHandler
     @Override
     protected ResponseEntity<Object> handleMethodArgumentNotValid(MethodArgumentNotValidException ex, HttpHeaders headers, HttpStatus status, WebRequest request) {
 
-        BindingResult bindingResult = ex.getBindingResult();
+        List<ApiError> apiErrors = toApiErrors(ex.getBindingResult());
+        return new ResponseEntity(apiErrors, status);
+    }
+
+    static List<ApiError> toApiErrors(BindingResult bindingResult) {
         List<FieldError> fieldErrors = bindingResult.getFieldErrors();
         List<ApiError> apiErrors = fieldErrors.stream()
-                .map(this::createApiError)
+                .map(ApplicationExceptionHandler::createApiError)
                 .collect(Collectors.toList());
         List<ObjectError> globalErrors = bindingResult.getGlobalErrors();
         apiErrors.addAll(globalErrors.stream()
                 .map(e -> new ApiError(e.getCode(), null, e.getDefaultMessage()))
                 .collect(Collectors.toList()));
-
-        return new ResponseEntity(apiErrors, status);
+        return apiErrors;
     }
 
-    private ApiError createApiError(FieldError fieldError) {
+    private static ApiError createApiError(FieldError fieldError) {
         ApiError apiError;
         if (StringUtils.equals("artist", fieldError.getField())) {
             apiError = new ApiError("missing-information", "artist-required", fieldError.getDefaultMessage());
@@ -75,7 +75,48 @@ public class AlbumIntegrationTest {
         RequestBuilder requestBuilder = MockMvcRequestBuilders
                 .get("/albums")
                 .accept(MediaType.APPLICATION_JSON);
+        MvcResult asyncResult = mockMvc.perform(requestBuilder).andReturn();
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(asyncResult)).andReturn();
+
+        // then
+        String expected = "[{\"id\":\"aid\",\"title\":\"Blah Blah Title\",\"artist\":\"Blah Blah\",\"releaseYear\":\"2000\",\"genre\":\"The Genre\",\"trackCount\":5}]";
+        assertEquals(HttpStatus.OK.value(), result.getResponse().getStatus());
+        assertEquals(expected, result.getResponse().getContentAsString(), JSONCompareMode.NON_EXTENSIBLE);
+    }
+
+    @Test
+    public void shouldStreamAlbumsAsNdjson() throws Exception {
+
+        // given
+        when(this.repository.findAll()).thenReturn(Arrays.asList(createAlbum(), createAlbum()));
+
+        // when
+        RequestBuilder requestBuilder = MockMvcRequestBuilders
+                .get("/albums")
+                .accept(MediaType.parseMediaType("application/x-ndjson"));
         MvcResult result = mockMvc.perform(requestBuilder).andReturn();
+        result.getAsyncResult();
+
+        // then
+        String album = "{\"id\":\"aid\",\"title\":\"Blah Blah Title\",\"artist\":\"Blah Blah\",\"releaseYear\":\"2000\",\"genre\":\"The Genre\",\"trackCount\":5}";
+        assertEquals(HttpStatus.OK.value(), result.getResponse().getStatus());
+        assertEquals("application/x-ndjson", result.getResponse().getContentType());
+        assertEquals(album + "\n" + album + "\n", result.getResponse().getContentAsString());
+    }
+
+    @Test
+    public void shouldStreamAlbumsAsJsonArray() throws Exception {
+
+        // given
+        when(this.repository.findAll()).thenReturn(Arrays.asList(createAlbum()));
+
+        // when
+        RequestBuilder requestBuilder = MockMvcRequestBuilders
+                .get("/albums")
+                .param("stream", "true")
+                .accept(MediaType.APPLICATION_JSON);
+        MvcResult result = mockMvc.perform(requestBuilder).andReturn();
+        result.getAsyncResult();
 
         // then
         String expected = "[{\"id\":\"aid\",\"title\":\"Blah Blah Title\",\"artist\":\"Blah Blah\",\"releaseYear\":\"2000\",\"genre\":\"The Genre\",\"trackCount\":5}]";
@@ -123,6 +164,53 @@ public class AlbumIntegrationTest {
         assertEquals(copyToString(this.createAlbumResponse.getInputStream(), StandardCharsets.UTF_8), result.getResponse().getContentAsString(), JSONCompareMode.STRICT);
     }
 
+    @Test
+    public void shouldCreateAlbumsInBatchReportingInvalidItems() throws Exception {
+
+        // given
+        Album album = createAlbum();
+        when(this.repository.saveAll(any())).thenReturn(Arrays.asList(album));
+        String requestContent = "[{\"title\":\"Blah Blah Title\",\"artist\":\"Blah Blah\"},{\"title\":\"No Artist\"}]";
+
+        // when
+        RequestBuilder requestBuilder = MockMvcRequestBuilders
+                .post("/albums:batch")
+                .content(requestContent)
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON);
+        MvcResult result = mockMvc.perform(requestBuilder).andReturn();
+
+        // then
+        String expected = "[" +
+                "{\"index\":0,\"status\":201,\"album\":{\"id\":\"aid\",\"title\":\"Blah Blah Title\",\"artist\":\"Blah Blah\",\"releaseYear\":\"2000\",\"genre\":\"The Genre\",\"trackCount\":5}}," +
+                "{\"index\":1,\"status\":400,\"errors\":[{\"code\":\"missing-information\",\"subcode\":\"artist-required\",\"description\":\"must not be null\"}]}" +
+                "]";
+        assertEquals(HttpStatus.OK.value(), result.getResponse().getStatus());
+        assertEquals(expected, result.getResponse().getContentAsString(), JSONCompareMode.NON_EXTENSIBLE);
+        Mockito.verify(this.repository, Mockito.times(1)).saveAll(any());
+    }
+
+    @Test
+    public void shouldRejectBatchUpdateItemsWithoutId() throws Exception {
+
+        // given
+        String requestContent = "[{\"title\":\"Blah Blah Title\",\"artist\":\"Blah Blah\"}]";
+
+        // when
+        RequestBuilder requestBuilder = MockMvcRequestBuilders
+                .put("/albums:batch")
+                .content(requestContent)
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON);
+        MvcResult result = mockMvc.perform(requestBuilder).andReturn();
+
+        // then
+        String expected = "[{\"index\":0,\"status\":400,\"errors\":[{\"code\":\"missing-information\",\"description\":\"id is required to update an album\"}]}]";
+        assertEquals(HttpStatus.OK.value(), result.getResponse().getStatus());
+        assertEquals(expected, result.getResponse().getContentAsString(), JSONCompareMode.NON_EXTENSIBLE);
+        Mockito.verify(this.repository, Mockito.never()).saveAll(any());
+    }
+
     @Test
     public void shouldFailGetAlbumWhenUnexpectedErrorOccurs() throws Exception {
 
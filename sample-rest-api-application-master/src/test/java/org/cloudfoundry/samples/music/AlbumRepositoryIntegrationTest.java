@@ -0,0 +1,110 @@
+package org.cloudfoundry.samples.music;
+
+import org.cloudfoundry.samples.music.domain.Album;
+import org.cloudfoundry.samples.music.domain.AlbumPage;
+import org.cloudfoundry.samples.music.repositories.AlbumRepository;
+import org.cloudfoundry.samples.music.repositories.cache.CachingAlbumRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = Application.class, properties = "albums.near-cache.enabled=true")
+@ActiveProfiles("in-memory")
+public class AlbumRepositoryIntegrationTest {
+
+    @Autowired
+    private CrudRepository<Album, String> repository;
+
+    private AlbumRepository albumRepository;
+
+    @Before
+    public void setUp() {
+        this.albumRepository = (AlbumRepository) this.repository;
+        this.repository.deleteAll();
+        for (int i = 0; i < 5; i++) {
+            this.repository.save(new Album("Title " + i, "Artist", "2000", "Rock"));
+        }
+    }
+
+    @Test
+    public void shouldPageThroughAllAlbums() {
+
+        // when
+        AlbumPage first = this.albumRepository.findPage(null, 2);
+        AlbumPage second = this.albumRepository.findPage(first.getNextPosition(), 2);
+        AlbumPage last = this.albumRepository.findPage(second.getNextPosition(), 2);
+
+        // then
+        assertEquals(2, first.getAlbums().size());
+        assertEquals(2, second.getAlbums().size());
+        assertEquals(1, last.getAlbums().size());
+        assertFalse(last.hasNext());
+
+        Set<String> ids = new HashSet<>();
+        Stream.of(first, second, last).forEach(page -> page.getAlbums().forEach(album -> ids.add(album.getId())));
+        assertEquals(5, ids.size());
+    }
+
+    @Test
+    public void shouldStreamAllAlbums() {
+
+        // when
+        List<String> titles;
+        try (Stream<Album> albums = this.albumRepository.streamAll()) {
+            titles = albums.map(Album::getTitle).sorted().collect(Collectors.toList());
+        }
+
+        // then
+        assertEquals(5, titles.size());
+        assertEquals("Title 0", titles.get(0));
+        assertTrue(this.albumRepository.existsByArtistAndTitle("Artist", "Title 4"));
+    }
+
+    @Test
+    public void shouldInsertOnlyAbsentAlbums() {
+
+        // when
+        boolean duplicateInserted = this.albumRepository.insertIfAbsent(new Album("Title 1", "Artist", "2001", "Jazz"));
+        Album newAlbum = new Album("Title 5", "Artist", "2001", "Jazz");
+        boolean newInserted = this.albumRepository.insertIfAbsent(newAlbum);
+
+        // then
+        assertFalse(duplicateInserted);
+        assertTrue(newInserted);
+        assertTrue(this.repository.existsById(newAlbum.getId()));
+        assertEquals(6, this.repository.count());
+    }
+
+    @Test
+    public void shouldReadUpdatedAlbumThroughNearCache() {
+
+        // given
+        Album album = this.repository.findAll().iterator().next();
+        this.repository.findById(album.getId());
+
+        // when
+        Album renamed = new Album("Renamed", album.getArtist(), album.getReleaseYear(), album.getGenre());
+        renamed.setId(album.getId());
+        this.repository.save(renamed);
+
+        // then
+        assertTrue(this.repository instanceof CachingAlbumRepository);
+        assertEquals("Renamed", this.repository.findById(album.getId()).get().getTitle());
+    }
+}
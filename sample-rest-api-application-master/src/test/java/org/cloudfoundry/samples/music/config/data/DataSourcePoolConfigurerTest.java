@@ -0,0 +1,87 @@
+package org.cloudfoundry.samples.music.config.data;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DataSourcePoolConfigurerTest {
+
+    private MeterRegistry meterRegistry;
+
+    private BasicDataSource pool;
+
+    @Before
+    public void setUp() {
+        this.meterRegistry = new SimpleMeterRegistry();
+        this.pool = new BasicDataSource();
+        this.pool.setUrl("jdbc:h2:mem:pool-test");
+        this.pool.setDriverClassName("org.h2.Driver");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.pool.close();
+    }
+
+    @Test
+    public void shouldSizePoolFromCoreCountAndCacheStatements() {
+
+        // given:
+        DataSourcePoolProperties properties = new DataSourcePoolProperties();
+
+        // when:
+        new DataSourcePoolConfigurer(properties, meterRegistry).configure(pool, "test");
+
+        // then:
+        assertEquals(Runtime.getRuntime().availableProcessors() * 2 + 1, pool.getMaxTotal());
+        assertTrue(pool.isPoolPreparedStatements());
+        assertEquals(100, pool.getMaxOpenPreparedStatements());
+        assertEquals(5000, pool.getMaxWaitMillis());
+    }
+
+    @Test
+    public void shouldRecordConnectionAcquisition() throws Exception {
+
+        // given:
+        DataSourcePoolProperties properties = new DataSourcePoolProperties();
+        properties.setMaxTotal(3);
+        DataSource dataSource = new DataSourcePoolConfigurer(properties, meterRegistry).configure(pool, "test");
+
+        // when:
+        try (Connection connection = dataSource.getConnection()) {
+
+            // then:
+            assertEquals(1, meterRegistry.get("datasource.pool.active").tag("pool", "test").gauge().value(), 0);
+            assertEquals(0, meterRegistry.get("datasource.pool.pending").tag("pool", "test").gauge().value(), 0);
+        }
+        assertEquals(1, meterRegistry.get("datasource.pool.acquire").tag("outcome", "success").timer().count());
+        assertEquals(3, meterRegistry.get("datasource.pool.max").tag("pool", "test").gauge().value(), 0);
+    }
+
+    @Test
+    public void shouldFetchMySqlResultsThroughCursor() {
+
+        // given:
+        BasicDataSource mysql = new BasicDataSource();
+        mysql.setUrl("jdbc:mysql://localhost/music");
+
+        // when:
+        new DataSourcePoolConfigurer(new DataSourcePoolProperties(), meterRegistry).configure(mysql, "mysql");
+
+        // then:
+        assertEquals("jdbc:mysql://localhost/music?useCursorFetch=true", mysql.getUrl());
+        assertEquals("jdbc:mysql://db/music?useSSL=false&useCursorFetch=true", DataSourcePoolConfigurer.withCursorFetch("jdbc:mysql://db/music?useSSL=false"));
+        assertEquals("jdbc:mysql://db/music?useCursorFetch=false", DataSourcePoolConfigurer.withCursorFetch("jdbc:mysql://db/music?useCursorFetch=false"));
+        assertEquals("jdbc:postgresql://localhost/music", DataSourcePoolConfigurer.withCursorFetch("jdbc:postgresql://localhost/music"));
+        assertEquals("jdbc:h2:mem:pool-test", pool.getUrl());
+    }
+}
@@ -0,0 +1,176 @@
+package org.cloudfoundry.samples.music.config.data;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+public class ReplicaRoutingDataSourceTest {
+
+    private BasicDataSource primary;
+
+    private BasicDataSource replicaA;
+
+    private BasicDataSource replicaB;
+
+    @Before
+    public void setUp() {
+        this.primary = database("primary");
+        this.replicaA = database("replica-a");
+        this.replicaB = database("replica-b");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        primary.close();
+        replicaA.close();
+        replicaB.close();
+    }
+
+    @Test
+    public void shouldRouteReadOnlyTransactionsToReplicasInTurn() throws Exception {
+
+        // given:
+        ReplicaRoutingDataSource dataSource = new ReplicaRoutingDataSource(primary, Arrays.asList(replicaA, replicaB), ReplicaRoutingDataSource.Selection.ROUND_ROBIN);
+
+        // when:
+        String first = databaseName(dataSource, true);
+        String second = databaseName(dataSource, true);
+        String third = databaseName(dataSource, true);
+        String write = databaseName(dataSource, false);
+
+        // then:
+        assertEquals("replica-a", first);
+        assertEquals("replica-b", second);
+        assertEquals("replica-a", third);
+        assertEquals("primary", write);
+    }
+
+    @Test
+    public void shouldPreferLeastBusyReplica() throws Exception {
+
+        // given:
+        ReplicaRoutingDataSource dataSource = new ReplicaRoutingDataSource(primary, Arrays.asList(replicaA, replicaB), ReplicaRoutingDataSource.Selection.LEAST_BUSY);
+        TransactionTemplate readOnly = transactionTemplate(dataSource, true);
+
+        // when:
+        String nested = readOnly.execute(outer -> {
+            new JdbcTemplate(dataSource).queryForObject("select name from database_name", String.class);
+            // the outer transaction keeps its replica connection while the new one is routed
+            return databaseName(dataSource, true);
+        });
+
+        // then:
+        assertEquals("replica-b", nested);
+        assertEquals("replica-a", databaseName(dataSource, true));
+    }
+
+    @Test
+    public void shouldFallBackToPrimaryWhenReplicasAreDown() throws Exception {
+
+        // given:
+        BasicDataSource broken = new BasicDataSource();
+        broken.setUrl("jdbc:h2:mem:missing;IFEXISTS=TRUE");
+        broken.setDriverClassName("org.h2.Driver");
+        ReplicaRoutingDataSource dataSource = new ReplicaRoutingDataSource(primary, Collections.singletonList(broken), ReplicaRoutingDataSource.Selection.ROUND_ROBIN);
+
+        // when:
+        String name = databaseName(dataSource, true);
+
+        // then:
+        assertEquals("primary", name);
+        broken.close();
+    }
+
+    @Test
+    public void shouldKeepReadsOnPrimaryRightAfterWrite() throws Exception {
+
+        // given:
+        ReplicaRoutingDataSource dataSource = new ReplicaRoutingDataSource(primary, Collections.singletonList(replicaA), ReplicaRoutingDataSource.Selection.ROUND_ROBIN, Duration.ofMillis(200));
+        String before = databaseName(dataSource, true);
+
+        // when:
+        databaseName(dataSource, false);
+        String afterWrite = databaseName(dataSource, true);
+        Thread.sleep(300);
+        String later = databaseName(dataSource, true);
+
+        // then:
+        assertEquals("replica-a", before);
+        assertEquals("primary", afterWrite);
+        assertEquals("replica-a", later);
+    }
+
+    @Test
+    public void shouldSendExplicitCredentialsToPrimary() throws Exception {
+
+        // given:
+        DataSource primaryWithCredentials = new DriverManagerDataSource("jdbc:h2:mem:primary;DB_CLOSE_DELAY=-1");
+        ReplicaRoutingDataSource dataSource = new ReplicaRoutingDataSource(primaryWithCredentials, Collections.singletonList(replicaA), ReplicaRoutingDataSource.Selection.ROUND_ROBIN);
+
+        // when:
+        String name;
+        try (Connection connection = dataSource.getConnection("", "");
+             ResultSet resultSet = connection.createStatement().executeQuery("select name from database_name")) {
+            resultSet.next();
+            name = resultSet.getString(1);
+        }
+
+        // then:
+        assertEquals("primary", name);
+    }
+
+    @Test
+    public void shouldRouteReadOnlyConnectionsOutsideTransactions() throws Exception {
+
+        // given:
+        ReplicaRoutingDataSource dataSource = new ReplicaRoutingDataSource(primary, Collections.singletonList(replicaA), ReplicaRoutingDataSource.Selection.ROUND_ROBIN);
+
+        // when:
+        String name;
+        try (Connection connection = dataSource.getReadOnlyConnection();
+             ResultSet resultSet = connection.createStatement().executeQuery("select name from database_name")) {
+            resultSet.next();
+            name = resultSet.getString(1);
+        }
+
+        // then:
+        assertEquals("replica-a", name);
+    }
+
+    private static BasicDataSource database(String name) {
+        BasicDataSource dataSource = new BasicDataSource();
+        dataSource.setUrl("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+        dataSource.setDriverClassName("org.h2.Driver");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("create table if not exists database_name (name varchar(20))");
+        jdbcTemplate.update("delete from database_name");
+        jdbcTemplate.update("insert into database_name values (?)", name);
+        return dataSource;
+    }
+
+    private static String databaseName(DataSource dataSource, boolean readOnly) {
+        return transactionTemplate(dataSource, readOnly).execute(status ->
+                new JdbcTemplate(dataSource).queryForObject("select name from database_name", String.class));
+    }
+
+    private static TransactionTemplate transactionTemplate(DataSource dataSource, boolean readOnly) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        transactionTemplate.setReadOnly(readOnly);
+        transactionTemplate.setPropagationBehaviorName("PROPAGATION_REQUIRES_NEW");
+        return transactionTemplate;
+    }
+}
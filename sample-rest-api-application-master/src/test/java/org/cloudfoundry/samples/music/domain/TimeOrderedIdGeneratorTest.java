@@ -0,0 +1,70 @@
+package org.cloudfoundry.samples.music.domain;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TimeOrderedIdGeneratorTest {
+
+    @Test
+    public void shouldGenerateIncreasingVersion7Ids() {
+
+        // given:
+        TimeOrderedIdGenerator idGenerator = new TimeOrderedIdGenerator();
+        long before = System.currentTimeMillis();
+
+        // when:
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            ids.add(idGenerator.generateId());
+        }
+
+        // then:
+        for (int i = 1; i < ids.size(); i++) {
+            assertTrue(ids.get(i - 1) + " < " + ids.get(i), ids.get(i - 1).compareTo(ids.get(i)) < 0);
+        }
+        UUID first = UUID.fromString(ids.get(0));
+        assertEquals(7, first.version());
+        assertEquals(2, first.variant());
+        assertTrue((first.getMostSignificantBits() >>> 16) >= before);
+        assertEquals(36, ids.get(0).length());
+    }
+
+    @Test
+    public void shouldGenerateUniqueIdsAcrossThreads() throws Exception {
+
+        // given:
+        TimeOrderedIdGenerator idGenerator = new TimeOrderedIdGenerator();
+        Set<String> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        // when:
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    ids.add(idGenerator.generateId());
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+
+        // then:
+        assertEquals(80000, ids.size());
+    }
+}
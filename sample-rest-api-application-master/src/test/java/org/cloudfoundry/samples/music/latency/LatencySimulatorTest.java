@@ -0,0 +1,206 @@
+package org.cloudfoundry.samples.music.latency;
+
+import org.cloudfoundry.samples.music.errors.ApplicationException;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LatencySimulatorTest {
+
+    private LatencyProperties properties;
+
+    private LatencySimulator latencySimulator;
+
+    @Before
+    public void setUp() {
+        this.properties = new LatencyProperties();
+        this.latencySimulator = new LatencySimulator(this.properties);
+    }
+
+    private void configure(String endpoint, LatencyProperties.Distribution distribution, long delayMillis, long jitterMillis) {
+        LatencyProperties.Endpoint config = new LatencyProperties.Endpoint();
+        config.setDistribution(distribution);
+        config.setDelay(Duration.ofMillis(delayMillis));
+        config.setJitter(Duration.ofMillis(jitterMillis));
+        this.properties.getEndpoints().put(endpoint, config);
+    }
+
+    @Test
+    public void shouldCompleteImmediatelyWithoutConfiguredLatency() {
+
+        // when
+        CompletableFuture<String> result = this.latencySimulator.supply("unconfigured", () -> "done");
+
+        // then
+        assertTrue(result.isDone());
+        assertEquals("done", result.join());
+    }
+
+    @Test
+    public void shouldCompleteAfterConfiguredDelayOffTheCallingThread() {
+
+        // given
+        configure("slow", LatencyProperties.Distribution.FIXED, 200, 0);
+        Thread caller = Thread.currentThread();
+
+        // when
+        long start = System.nanoTime();
+        CompletableFuture<Thread> result = this.latencySimulator.supply("slow", Thread::currentThread);
+
+        // then
+        assertFalse(result.isDone());
+        assertTrue(result.join() != caller);
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() >= 200);
+    }
+
+    @Test
+    public void shouldProduceDelayedResponsesOnWorkerThreads() {
+
+        // given
+        configure("slow", LatencyProperties.Distribution.FIXED, 10, 0);
+
+        // when
+        CompletableFuture<String> result = this.latencySimulator.supply("slow", () -> Thread.currentThread().getName());
+
+        // then
+        assertTrue(result.join().startsWith("latency-worker-"));
+    }
+
+    @Test
+    public void shouldFailDelayedResponseWhenSupplierThrowsError() {
+
+        // given
+        configure("slow", LatencyProperties.Distribution.FIXED, 10, 0);
+        AssertionError failure = new AssertionError("broken");
+
+        // when
+        CompletableFuture<String> result = this.latencySimulator.supply("slow", () -> {
+            throw failure;
+        });
+
+        // then
+        try {
+            result.join();
+            fail();
+        } catch (CompletionException e) {
+            assertSame(failure, e.getCause());
+        }
+    }
+
+    @Test
+    public void shouldAnswerServiceUnavailableWhenWorkersAreSaturated() throws Exception {
+
+        // given
+        this.properties.setWorkerThreads(1);
+        this.properties.setWorkerQueueCapacity(1);
+        LatencySimulator saturated = new LatencySimulator(this.properties);
+        configure("slow", LatencyProperties.Distribution.FIXED, 1, 0);
+        CountDownLatch release = new CountDownLatch(1);
+        List<CompletableFuture<Boolean>> waiting = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            waiting.add(saturated.supply("slow", () -> awaitQuietly(release)));
+        }
+        Thread.sleep(100);
+
+        // when
+        CompletableFuture<Boolean> rejected = saturated.supply("slow", () -> true);
+
+        // then
+        try {
+            rejected.join();
+            fail();
+        } catch (CompletionException e) {
+            assertEquals(HttpStatus.SERVICE_UNAVAILABLE, ((ApplicationException) e.getCause()).getStatus());
+        } finally {
+            release.countDown();
+        }
+        for (CompletableFuture<Boolean> accepted : waiting) {
+            assertTrue(accepted.join());
+        }
+        saturated.destroy();
+    }
+
+    @Test
+    public void shouldFailQueuedResponsesOnShutdown() throws Exception {
+
+        // given
+        this.properties.setWorkerThreads(1);
+        LatencySimulator stopping = new LatencySimulator(this.properties);
+        configure("slow", LatencyProperties.Distribution.FIXED, 1, 0);
+        CountDownLatch release = new CountDownLatch(1);
+        stopping.supply("slow", () -> awaitQuietly(release));
+        CompletableFuture<Boolean> queued = stopping.supply("slow", () -> true);
+        Thread.sleep(100);
+
+        // when
+        stopping.destroy();
+
+        // then
+        try {
+            queued.join();
+            fail();
+        } catch (CompletionException e) {
+            assertEquals(HttpStatus.SERVICE_UNAVAILABLE, ((ApplicationException) e.getCause()).getStatus());
+        }
+    }
+
+    @Test
+    public void shouldAnswerServiceUnavailableAfterShutdown() {
+
+        // given
+        configure("slow", LatencyProperties.Distribution.FIXED, 10, 0);
+        this.latencySimulator.destroy();
+
+        // when
+        CompletableFuture<String> result = this.latencySimulator.supply("slow", () -> "done");
+
+        // then
+        try {
+            result.join();
+            fail();
+        } catch (CompletionException e) {
+            assertEquals(HttpStatus.SERVICE_UNAVAILABLE, ((ApplicationException) e.getCause()).getStatus());
+        }
+    }
+
+    @Test
+    public void shouldKeepDistributedDelaysWithinBounds() {
+
+        // given
+        configure("uniform", LatencyProperties.Distribution.UNIFORM, 100, 20);
+        configure("gaussian", LatencyProperties.Distribution.GAUSSIAN, 0, 50);
+
+        for (int i = 0; i < 1000; i++) {
+            // when
+            long uniform = this.latencySimulator.nextDelayMillis("uniform");
+            long gaussian = this.latencySimulator.nextDelayMillis("gaussian");
+
+            // then
+            assertTrue(uniform >= 80 && uniform <= 120);
+            assertTrue(gaussian >= 0);
+        }
+    }
+
+    private static boolean awaitQuietly(CountDownLatch latch) {
+        try {
+            return latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
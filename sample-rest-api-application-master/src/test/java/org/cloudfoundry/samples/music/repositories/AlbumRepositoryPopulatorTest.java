@@ -0,0 +1,371 @@
+package org.cloudfoundry.samples.music.repositories;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.cloudfoundry.samples.music.domain.Album;
+import org.cloudfoundry.samples.music.repositories.compact.CompactAlbumRepository;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AlbumRepositoryPopulatorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final AlbumRepositoryPopulator populator = new AlbumRepositoryPopulator();
+
+    private final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+
+    private CompactAlbumRepository repository;
+
+    private AlbumSeedProperties properties;
+
+    private MeterRegistry meterRegistry;
+
+    private volatile int failFromBatch = Integer.MAX_VALUE;
+
+    private volatile int crashAfterBatch = Integer.MAX_VALUE;
+
+    private volatile String failingTitle;
+
+    @Before
+    public void setUp() {
+        this.repository = new CompactAlbumRepository() {
+            @Override
+            public <S extends Album> Iterable<S> saveAll(Iterable<S> albums) {
+                if (batchSizes.size() >= failFromBatch) {
+                    throw new IllegalStateException("repository unavailable");
+                }
+                for (S album : albums) {
+                    if (album.getTitle().equals(failingTitle)) {
+                        awaitSavedBatches(7);
+                        throw new IllegalStateException("repository unavailable");
+                    }
+                }
+                Iterable<S> saved = super.saveAll(albums);
+                int size = 0;
+                for (S ignored : saved) {
+                    size++;
+                }
+                batchSizes.add(size);
+                if (batchSizes.size() > crashAfterBatch) {
+                    throw new IllegalStateException("process died before the batch was checkpointed");
+                }
+                return saved;
+            }
+        };
+        this.properties = new AlbumSeedProperties();
+        this.meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    public void shouldSeedBundledAlbumsInBatches() {
+
+        // given:
+        properties.setBatchSize(10);
+
+        // when:
+        long saved = populator.populate(repository, new ClassPathResource("albums.json"), properties, meterRegistry);
+
+        // then:
+        assertEquals(saved, repository.count());
+        assertTrue(saved > 10);
+        for (int i = 0; i < batchSizes.size() - 1; i++) {
+            assertEquals(Integer.valueOf(10), batchSizes.get(i));
+        }
+        assertEquals(saved, (long) meterRegistry.get("albums.seed.saved").counter().count());
+        assertEquals(batchSizes.size(), meterRegistry.get("albums.seed.batch").timer().count());
+    }
+
+    @Test
+    public void shouldSeedGzippedNdjson() throws IOException {
+
+        // given:
+        StringBuilder ndjson = new StringBuilder();
+        for (int i = 0; i < 25; i++) {
+            ndjson.append("{\"title\":\"Title ").append(i).append("\",\"artist\":\"Artist\",\"unknown\":true}\n");
+        }
+        properties.setBatchSize(10);
+
+        // when:
+        long saved = populator.populate(repository, new ByteArrayResource(gzip(ndjson.toString())), properties, meterRegistry);
+
+        // then:
+        assertEquals(25, saved);
+        assertEquals(25, repository.count());
+        assertEquals(3, batchSizes.size());
+        assertTrue(repository.existsByArtistAndTitle("Artist", "Title 24"));
+    }
+
+    @Test
+    public void shouldSeedBatchesInParallel() {
+
+        // given:
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 1000; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"title\":\"Title ").append(i).append("\",\"artist\":\"Artist\"}");
+        }
+        json.append("]");
+        properties.setBatchSize(50);
+        properties.setParallelism(4);
+
+        // when:
+        long saved = populator.populate(repository, new ByteArrayResource(json.toString().getBytes(StandardCharsets.UTF_8)), properties, meterRegistry);
+
+        // then:
+        assertEquals(1000, saved);
+        assertEquals(1000, repository.count());
+        assertEquals(20, batchSizes.size());
+    }
+
+    @Test
+    public void shouldSkipSeedAlbumsRejectedAsDuplicates() {
+
+        // given:
+        CompactAlbumRepository rejecting = rejectingStoredAlbumsWith(DuplicateKeyException::new);
+        rejecting.save(new Album("Title 3", "Artist", "1999", "Rock"));
+        properties.setBatchSize(10);
+
+        // when:
+        long saved = populator.populate(rejecting, ndjson(25), properties, meterRegistry);
+
+        // then:
+        assertEquals(24, saved);
+        assertEquals(25, rejecting.count());
+        assertEquals(24, (long) meterRegistry.get("albums.seed.saved").counter().count());
+    }
+
+    @Test(expected = PartialBatchWriteException.class)
+    public void shouldStopOnSeedAlbumsRejectedForOtherReasons() {
+
+        // given:
+        CompactAlbumRepository rejecting = rejectingStoredAlbumsWith(DataIntegrityViolationException::new);
+        rejecting.save(new Album("Title 3", "Artist", "1999", "Rock"));
+
+        // when:
+        populator.populate(rejecting, ndjson(25), properties, meterRegistry);
+    }
+
+    @Test
+    public void shouldStopOnMalformedSeedData() {
+
+        // given:
+        ByteArrayResource source = new ByteArrayResource("[{\"title\":\"Title\",\"artist\":\"Artist\"}, {\"title\":".getBytes(StandardCharsets.UTF_8));
+
+        // when:
+        try {
+            populator.populate(repository, source, properties, meterRegistry);
+            fail("expected the truncated seed data to be rejected");
+        } catch (RuntimeException e) {
+
+            // then:
+            assertTrue(e instanceof UncheckedIOException || e.getCause() instanceof IOException);
+            assertEquals(0, repository.count());
+        }
+    }
+
+    @Test
+    public void shouldReportOutOfServiceUntilSeeded() throws IOException {
+
+        // given:
+        properties.setCheckpoint(folder.getRoot().toPath().resolve("album-seed.checkpoint").toString());
+        Health before = populator.getHealthIndicator().health();
+
+        // when:
+        populator.seed(repository, ndjson(25), properties, meterRegistry);
+
+        // then:
+        assertEquals(Status.OUT_OF_SERVICE, before.getStatus());
+        Health after = populator.getHealthIndicator().health();
+        assertEquals(Status.UP, after.getStatus());
+        assertEquals("seeded", after.getDetails().get("state"));
+        assertEquals(25L, after.getDetails().get("saved"));
+        assertEquals(25, repository.count());
+    }
+
+    @Test
+    public void shouldReportSeedingUntilSeedEnds() throws IOException {
+
+        // given:
+        boolean before = populator.getHealthIndicator().isSeeding();
+
+        // when:
+        populator.seed(repository, ndjson(5), properties, meterRegistry);
+
+        // then:
+        assertTrue(before);
+        assertFalse(populator.getHealthIndicator().isSeeding());
+        repository.findAll().forEach(album -> assertNotNull(album.getId()));
+    }
+
+    @Test
+    public void shouldSkipSeedingPopulatedRepository() throws IOException {
+
+        // given:
+        properties.setCheckpoint(folder.getRoot().toPath().resolve("album-seed.checkpoint").toString());
+        repository.save(new Album("Title", "Artist", "1999", "Rock"));
+
+        // when:
+        populator.seed(repository, ndjson(25), properties, meterRegistry);
+
+        // then:
+        Health health = populator.getHealthIndicator().health();
+        assertEquals(Status.UP, health.getStatus());
+        assertEquals("skipped", health.getDetails().get("state"));
+        assertEquals(1, repository.count());
+    }
+
+    @Test
+    public void shouldResumeInterruptedSeedWithoutDuplicates() throws IOException {
+
+        // given:
+        Path checkpoint = folder.getRoot().toPath().resolve("album-seed.checkpoint");
+        properties.setCheckpoint(checkpoint.toString());
+        properties.setBatchSize(10);
+        failFromBatch = 2;
+        populator.seed(repository, ndjson(25), properties, meterRegistry);
+        assertEquals(Status.DOWN, populator.getHealthIndicator().health().getStatus());
+        assertTrue(populator.getHealthIndicator().hasFailed());
+        assertFalse(populator.getHealthIndicator().isSeeding());
+        assertEquals(20, repository.count());
+        assertTrue(Files.exists(checkpoint));
+
+        // when:
+        failFromBatch = Integer.MAX_VALUE;
+        batchSizes.clear();
+        AlbumRepositoryPopulator restarted = new AlbumRepositoryPopulator();
+        restarted.seed(repository, ndjson(25), properties, meterRegistry);
+
+        // then:
+        Health health = restarted.getHealthIndicator().health();
+        assertEquals(Status.UP, health.getStatus());
+        assertEquals(25L, health.getDetails().get("saved"));
+        assertEquals(25, repository.count());
+        assertEquals(Collections.emptyList(), batchSizes);
+        assertTrue(repository.existsByArtistAndTitle("Artist", "Title 24"));
+        assertFalse(Files.exists(checkpoint));
+    }
+
+    @Test
+    public void shouldNotDuplicateAlbumsSavedBeforeTheirBatchWasCheckpointed() throws IOException {
+
+        // given:
+        Path checkpoint = folder.getRoot().toPath().resolve("album-seed.checkpoint");
+        properties.setCheckpoint(checkpoint.toString());
+        properties.setBatchSize(10);
+        crashAfterBatch = 1;
+        populator.seed(repository, ndjson(25), properties, meterRegistry);
+        assertEquals(20, repository.count());
+
+        // when:
+        crashAfterBatch = Integer.MAX_VALUE;
+        AlbumRepositoryPopulator restarted = new AlbumRepositoryPopulator();
+        restarted.seed(repository, ndjson(25), properties, meterRegistry);
+
+        // then:
+        assertEquals(Status.UP, restarted.getHealthIndicator().health().getStatus());
+        assertEquals(25, repository.count());
+        for (int i = 0; i < 25; i++) {
+            assertTrue(repository.existsByArtistAndTitle("Artist", "Title " + i));
+        }
+    }
+
+    @Test
+    public void shouldNotDuplicateAlbumsSavedAheadOfTheCheckpoint() throws IOException {
+
+        // given: the batch of album 30 fails once seven other batches are saved, four of them past it
+        Path checkpoint = folder.getRoot().toPath().resolve("album-seed.checkpoint");
+        properties.setCheckpoint(checkpoint.toString());
+        properties.setBatchSize(10);
+        properties.setParallelism(4);
+        failingTitle = "Title 30";
+        populator.seed(repository, ndjson(200), properties, meterRegistry);
+        long storedBeforeRestart = repository.count();
+
+        // when:
+        failingTitle = null;
+        AlbumRepositoryPopulator restarted = new AlbumRepositoryPopulator();
+        restarted.seed(repository, ndjson(200), properties, meterRegistry);
+
+        // then:
+        assertTrue(storedBeforeRestart >= 70);
+        assertEquals(Status.UP, restarted.getHealthIndicator().health().getStatus());
+        assertEquals(200, repository.count());
+    }
+
+    // saves each album of a batch unless its artist and title are stored, which fails
+    // that position of the batch with the given exception
+    private static CompactAlbumRepository rejectingStoredAlbumsWith(Function<String, DataAccessException> failure) {
+        return new CompactAlbumRepository() {
+            @Override
+            public <S extends Album> Iterable<S> saveAll(Iterable<S> albums) {
+                List<S> saved = new ArrayList<>();
+                Map<Integer, DataAccessException> failures = new HashMap<>();
+                for (S album : albums) {
+                    if (existsByArtistAndTitle(album.getArtist(), album.getTitle())) {
+                        failures.put(saved.size() + failures.size(), failure.apply(album.getTitle() + " is already stored"));
+                    } else {
+                        saved.add(save(album));
+                    }
+                }
+                if (!failures.isEmpty()) {
+                    throw new PartialBatchWriteException("Albums are already stored", failures, null);
+                }
+                return saved;
+            }
+        };
+    }
+
+    private void awaitSavedBatches(int batches) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (batchSizes.size() < batches && System.nanoTime() < deadline) {
+            Thread.yield();
+        }
+    }
+
+    private static ByteArrayResource ndjson(int albums) {
+        StringBuilder ndjson = new StringBuilder();
+        for (int i = 0; i < albums; i++) {
+            ndjson.append("{\"title\":\"Title ").append(i).append("\",\"artist\":\"Artist\"}\n");
+        }
+        return new ByteArrayResource(ndjson.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static byte[] gzip(String value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(value.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,145 @@
+package org.cloudfoundry.samples.music.repositories;
+
+import org.cloudfoundry.samples.music.domain.Album;
+import org.cloudfoundry.samples.music.domain.AlbumPage;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.repository.CrudRepository;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Map-backed album repository for unit tests of the repository decorators; counts reads
+ * so tests can tell cache hits from backend calls.
+ */
+public class InMemoryAlbumRepository implements CrudRepository<Album, String>, AlbumRepository {
+
+    private final Map<String, Album> albums = new LinkedHashMap<>();
+
+    private int findByIdCalls;
+
+    private int findAllCalls;
+
+    private RuntimeException saveFailure;
+
+    private String rejectedTitle;
+
+    public int getFindByIdCalls() {
+        return findByIdCalls;
+    }
+
+    public int getFindAllCalls() {
+        return findAllCalls;
+    }
+
+    public Map<String, Album> getAlbums() {
+        return albums;
+    }
+
+    public void failSavesWith(RuntimeException saveFailure) {
+        this.saveFailure = saveFailure;
+    }
+
+    public void rejectSavesOf(String title) {
+        this.rejectedTitle = title;
+    }
+
+    @Override
+    public <S extends Album> S save(S album) {
+        if (saveFailure != null) {
+            throw saveFailure;
+        }
+        if (album.getTitle().equals(rejectedTitle)) {
+            throw new DataIntegrityViolationException("Album " + rejectedTitle + " is rejected");
+        }
+        if (album.getId() == null) {
+            album.setId(UUID.randomUUID().toString());
+        }
+        albums.put(album.getId(), album);
+        return album;
+    }
+
+    @Override
+    public <S extends Album> Iterable<S> saveAll(Iterable<S> entities) {
+        entities.forEach(this::save);
+        return entities;
+    }
+
+    @Override
+    public Optional<Album> findById(String id) {
+        findByIdCalls++;
+        return Optional.ofNullable(albums.get(id));
+    }
+
+    @Override
+    public boolean existsById(String id) {
+        return albums.containsKey(id);
+    }
+
+    @Override
+    public Iterable<Album> findAll() {
+        findAllCalls++;
+        return new ArrayList<>(albums.values());
+    }
+
+    @Override
+    public Iterable<Album> findAllById(Iterable<String> ids) {
+        List<Album> found = new ArrayList<>();
+        ids.forEach(id -> findById(id).ifPresent(found::add));
+        return found;
+    }
+
+    @Override
+    public long count() {
+        return albums.size();
+    }
+
+    @Override
+    public void deleteById(String id) {
+        albums.remove(id);
+    }
+
+    @Override
+    public void delete(Album album) {
+        albums.remove(album.getId());
+    }
+
+    @Override
+    public void deleteAll(Iterable<? extends Album> entities) {
+        entities.forEach(this::delete);
+    }
+
+    @Override
+    public void deleteAll() {
+        albums.clear();
+    }
+
+    @Override
+    public boolean existsByArtistAndTitle(String artist, String album) {
+        return albums.values().stream().anyMatch(a -> a.getArtist().equals(artist) && a.getTitle().equals(album));
+    }
+
+    @Override
+    public boolean insertIfAbsent(Album album) {
+        if (existsByArtistAndTitle(album.getArtist(), album.getTitle())) {
+            return false;
+        }
+        save(album);
+        return true;
+    }
+
+    @Override
+    public AlbumPage findPage(String position, int limit) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Stream<Album> streamAll() {
+        return new ArrayList<>(albums.values()).stream();
+    }
+}
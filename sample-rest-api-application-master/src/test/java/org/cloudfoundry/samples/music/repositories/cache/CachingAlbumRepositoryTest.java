@@ -0,0 +1,107 @@
+package org.cloudfoundry.samples.music.repositories.cache;
+
+import org.cloudfoundry.samples.music.domain.Album;
+import org.cloudfoundry.samples.music.repositories.InMemoryAlbumRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class CachingAlbumRepositoryTest {
+
+    private InMemoryAlbumRepository backend;
+
+    private InProcessInvalidationChannel channel;
+
+    @Before
+    public void setUp() {
+        this.backend = new InMemoryAlbumRepository();
+        this.channel = new InProcessInvalidationChannel();
+    }
+
+    @Test
+    public void shouldReadThroughOncePerAlbum() {
+
+        // given:
+        CachingAlbumRepository repository = new CachingAlbumRepository(backend, 100, 1, TimeUnit.MINUTES, channel);
+        Album album = backend.save(new Album("Title", "Artist", "2000", "Rock"));
+
+        // when:
+        repository.findById(album.getId());
+        repository.findById(album.getId());
+        repository.findAll();
+        repository.findAll();
+
+        // then:
+        assertEquals(1, backend.getFindByIdCalls());
+        assertEquals(1, backend.getFindAllCalls());
+        assertEquals(2, repository.getAlbumCache().missCount() + repository.getAlbumCache().hitCount());
+        assertEquals(1, repository.getAlbumCache().hitCount());
+    }
+
+    @Test
+    public void shouldInvalidateOnSave() {
+
+        // given:
+        CachingAlbumRepository repository = new CachingAlbumRepository(backend, 100, 1, TimeUnit.MINUTES, channel);
+        Album album = repository.save(new Album("Title", "Artist", "2000", "Rock"));
+        repository.findById(album.getId());
+        repository.findAll();
+
+        // when:
+        Album renamed = new Album("Other Title", "Artist", "2000", "Rock");
+        renamed.setId(album.getId());
+        repository.save(renamed);
+
+        // then:
+        assertEquals("Other Title", repository.findById(album.getId()).get().getTitle());
+        assertEquals("Other Title", repository.findAll().iterator().next().getTitle());
+        assertEquals(2, backend.getFindByIdCalls());
+        assertEquals(2, backend.getFindAllCalls());
+    }
+
+    @Test
+    public void shouldInvalidatePartiallyWrittenBatch() {
+
+        // given:
+        CachingAlbumRepository repository = new CachingAlbumRepository(backend, 100, 1, TimeUnit.MINUTES, channel);
+        Album album = repository.save(new Album("Title", "Artist", "2000", "Rock"));
+        repository.findById(album.getId());
+        backend.rejectSavesOf("Rejected");
+        Album renamed = new Album("Other Title", "Artist", "2000", "Rock");
+        renamed.setId(album.getId());
+
+        try {
+            // when:
+            repository.saveAll(Arrays.asList(renamed, new Album("Rejected", "Artist", "2000", "Rock")));
+            fail("expected the rejected album to fail the batch");
+        } catch (DataIntegrityViolationException e) {
+            // then:
+            assertEquals("Other Title", repository.findById(album.getId()).get().getTitle());
+            assertEquals(2, backend.getFindByIdCalls());
+        }
+    }
+
+    @Test
+    public void shouldInvalidateOtherInstancesThroughChannel() {
+
+        // given:
+        CachingAlbumRepository first = new CachingAlbumRepository(backend, 100, 1, TimeUnit.MINUTES, channel);
+        CachingAlbumRepository second = new CachingAlbumRepository(backend, 100, 1, TimeUnit.MINUTES, channel);
+        Album album = first.save(new Album("Title", "Artist", "2000", "Rock"));
+        second.findById(album.getId());
+
+        // when:
+        first.deleteById(album.getId());
+
+        // then:
+        assertEquals(Optional.empty(), second.findById(album.getId()));
+        assertEquals(2, backend.getFindByIdCalls());
+    }
+}
@@ -0,0 +1,78 @@
+package org.cloudfoundry.samples.music.repositories.cache;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class WindowTinyLfuCacheTest {
+
+    @Test
+    public void shouldCountHitsAndMisses() {
+
+        // given:
+        WindowTinyLfuCache<String, String> cache = new WindowTinyLfuCache<>(10, 1, TimeUnit.MINUTES);
+        cache.put("a", "A");
+
+        // when:
+        String hit = cache.getIfPresent("a");
+        String miss = cache.getIfPresent("b");
+
+        // then:
+        assertEquals("A", hit);
+        assertNull(miss);
+        assertEquals(1, cache.hitCount());
+        assertEquals(1, cache.missCount());
+    }
+
+    @Test
+    public void shouldExpireEntriesAfterTimeToLive() throws Exception {
+
+        // given:
+        WindowTinyLfuCache<String, String> cache = new WindowTinyLfuCache<>(10, 20, TimeUnit.MILLISECONDS);
+        cache.put("a", "A");
+
+        // when:
+        Thread.sleep(50);
+
+        // then:
+        assertNull(cache.getIfPresent("a"));
+        assertEquals(1, cache.expirationCount());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void shouldKeepFrequentlyReadEntriesDuringScan() {
+
+        // given:
+        WindowTinyLfuCache<Integer, Integer> cache = new WindowTinyLfuCache<>(100, 1, TimeUnit.MINUTES);
+        for (int key = 0; key < 50; key++) {
+            cache.put(key, key);
+            for (int read = 0; read < 5; read++) {
+                cache.getIfPresent(key);
+            }
+        }
+
+        // when: each hot album is read once per 200 scanned ones, too rarely for plain LRU to keep it
+        for (int key = 1000; key < 11000; key++) {
+            cache.put(key, key);
+            if (key % 4 == 0) {
+                cache.getIfPresent((key / 4) % 50);
+            }
+        }
+
+        // then:
+        int hotEntriesKept = 0;
+        for (int key = 0; key < 50; key++) {
+            if (cache.getIfPresent(key) != null) {
+                hotEntriesKept++;
+            }
+        }
+        assertTrue("kept " + hotEntriesKept, hotEntriesKept >= 45);
+        assertTrue(cache.size() <= 100);
+        assertTrue(cache.evictionCount() > 0);
+    }
+}
@@ -0,0 +1,247 @@
+package org.cloudfoundry.samples.music.repositories.compact;
+
+import org.cloudfoundry.samples.music.domain.Album;
+import org.cloudfoundry.samples.music.domain.AlbumPage;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CompactAlbumRepositoryTest {
+
+    private static final int FOOTPRINT_ALBUMS = 50000;
+
+    private CompactAlbumRepository repository;
+
+    @Before
+    public void setUp() {
+        this.repository = new CompactAlbumRepository();
+    }
+
+    @Test
+    public void shouldRebuildSavedAlbum() {
+
+        // given:
+        Album album = new Album("Title", "Artist", "1973", "Rock");
+        album.setTrackCount(12);
+
+        // when:
+        repository.save(album);
+
+        // then:
+        assertNotNull(album.getId());
+        Album found = repository.findById(album.getId()).get();
+        assertEquals(album.getId(), found.getId());
+        assertEquals("Title", found.getTitle());
+        assertEquals("Artist", found.getArtist());
+        assertEquals("1973", found.getReleaseYear());
+        assertEquals("Rock", found.getGenre());
+        assertEquals(Integer.valueOf(12), found.getTrackCount());
+    }
+
+    @Test
+    public void shouldKeepMissingAndIrregularFields() {
+
+        // given:
+        Album missing = new Album("Missing", null, null, null);
+        Album irregular = new Album("Irregular", "Artist", "0199", "Rock");
+        Album unknown = new Album("Unknown", "Artist", "19xx", "Rock");
+
+        // when:
+        repository.saveAll(Arrays.asList(missing, irregular, unknown));
+
+        // then:
+        Album found = repository.findById(missing.getId()).get();
+        assertNull(found.getArtist());
+        assertNull(found.getReleaseYear());
+        assertNull(found.getGenre());
+        assertNull(found.getTrackCount());
+        assertEquals("0199", repository.findById(irregular.getId()).get().getReleaseYear());
+        assertEquals("19xx", repository.findById(unknown.getId()).get().getReleaseYear());
+    }
+
+    @Test
+    public void shouldShareDictionaryEntriesBetweenAlbums() {
+
+        // given:
+        for (int i = 0; i < 100; i++) {
+            repository.save(new Album("Title " + i, "Artist " + (i % 5), "2000", "Genre " + (i % 3)));
+        }
+
+        // then:
+        assertEquals(8, repository.getDictionarySize());
+    }
+
+    @Test
+    public void shouldUpdateAndDeleteRows() {
+
+        // given:
+        Album first = repository.save(new Album("First", "Artist", "2000", "Rock"));
+        Album second = repository.save(new Album("Second", "Artist", "2000", "Rock"));
+        Album third = repository.save(new Album("Third", "Artist", "2000", "Rock"));
+
+        // when:
+        Album renamed = new Album("Renamed", "Other", "2001", "Pop");
+        renamed.setId(second.getId());
+        repository.save(renamed);
+        repository.deleteById(first.getId());
+
+        // then:
+        assertEquals(2, repository.count());
+        assertFalse(repository.existsById(first.getId()));
+        assertEquals("Renamed", repository.findById(second.getId()).get().getTitle());
+        assertEquals("Third", repository.findById(third.getId()).get().getTitle());
+        assertTrue(repository.existsByArtistAndTitle("Other", "Renamed"));
+        assertFalse(repository.existsByArtistAndTitle("Artist", "Second"));
+        assertFalse(repository.existsByArtistAndTitle("Artist", "First"));
+    }
+
+    @Test
+    public void shouldInsertOnlyIfArtistAndTitleAreFree() {
+
+        // given:
+        repository.save(new Album("Title", "Artist", "2000", "Rock"));
+
+        // when:
+        boolean duplicate = repository.insertIfAbsent(new Album("Title", "Artist", "2001", "Pop"));
+        boolean other = repository.insertIfAbsent(new Album("Title", "Other Artist", "2001", "Pop"));
+
+        // then:
+        assertFalse(duplicate);
+        assertTrue(other);
+        assertEquals(2, repository.count());
+    }
+
+    @Test
+    public void shouldPageInIdOrder() {
+
+        // given:
+        for (int i = 0; i < 25; i++) {
+            repository.save(new Album("Title " + i, "Artist", "2000", "Rock"));
+        }
+        List<String> ids = new ArrayList<>();
+        repository.findAll().forEach(album -> ids.add(album.getId()));
+        ids.sort(null);
+
+        // when:
+        List<String> paged = new ArrayList<>();
+        String position = null;
+        do {
+            AlbumPage page = repository.findPage(position, 10);
+            page.getAlbums().forEach(album -> paged.add(album.getId()));
+            position = page.getNextPosition();
+        } while (position != null);
+
+        // then:
+        assertEquals(ids, paged);
+        try (Stream<Album> stream = repository.streamAll()) {
+            assertEquals(ids, stream.map(Album::getId).collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    public void shouldPageOverIdsAddedAndRemovedBetweenPages() {
+
+        // given:
+        for (String id : Arrays.asList("a", "b", "c", "e")) {
+            Album album = new Album("Title " + id, "Artist", "2000", "Rock");
+            album.setId(id);
+            repository.save(album);
+        }
+        AlbumPage first = repository.findPage(null, 2);
+
+        // when:
+        repository.deleteById("c");
+        Album added = new Album("Title d", "Artist", "2000", "Rock");
+        added.setId("d");
+        repository.save(added);
+        AlbumPage second = repository.findPage(first.getNextPosition(), 2);
+
+        // then:
+        assertEquals(Arrays.asList("d", "e"), second.getAlbums().stream().map(Album::getId).collect(Collectors.toList()));
+        assertNull(second.getNextPosition());
+    }
+
+    @Test
+    public void shouldHandEveryAlbumToForEachAlbum() {
+
+        // given:
+        for (int i = 0; i < 5; i++) {
+            repository.save(new Album("Title " + i, "Artist", "2000", "Rock"));
+        }
+        repository.deleteById(repository.findPage(null, 1).getNextPosition());
+
+        // when:
+        List<String> visited = new ArrayList<>();
+        repository.forEachAlbum(album -> visited.add(album.getId()));
+
+        // then:
+        List<String> ids = new ArrayList<>();
+        repository.findAll().forEach(album -> ids.add(album.getId()));
+        assertEquals(4, visited.size());
+        assertEquals(ids, visited);
+    }
+
+    @Test
+    public void shouldUseFewerBytesPerAlbumThanAlbumObjects() {
+
+        // given:
+        // measured as retained minus released, so garbage left by earlier tests does not skew it
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        Map<String, Album> albums = new HashMap<>();
+        for (Album album : catalog()) {
+            albums.put(album.getId(), album);
+        }
+        long retained = usedHeapAfterGc(memory);
+        albums.clear();
+        albums = null;
+        long baseline = usedHeapAfterGc(memory);
+        long objectBytes = retained - baseline;
+
+        // when:
+        repository.saveAll(catalog());
+        long compactBytes = usedHeapAfterGc(memory) - baseline;
+
+        // then:
+        long objectBytesPerAlbum = objectBytes / FOOTPRINT_ALBUMS;
+        long compactBytesPerAlbum = compactBytes / FOOTPRINT_ALBUMS;
+        assertEquals(FOOTPRINT_ALBUMS, repository.count());
+        assertTrue("compact albums take " + compactBytesPerAlbum + " bytes against " + objectBytesPerAlbum,
+                compactBytesPerAlbum * 3 < objectBytesPerAlbum * 2);
+    }
+
+    // every album gets its own strings, as if it had been read from a request or a database row
+    private static List<Album> catalog() {
+        List<Album> albums = new ArrayList<>(FOOTPRINT_ALBUMS);
+        for (int i = 0; i < FOOTPRINT_ALBUMS; i++) {
+            Album album = new Album("Title " + i, "Artist " + (i % 500), String.valueOf(1950 + i % 70), "Genre " + (i % 12));
+            album.setId(String.format("%036d", i));
+            album.setTrackCount(10 + i % 8);
+            albums.add(album);
+        }
+        return albums;
+    }
+
+    private static long usedHeapAfterGc(MemoryMXBean memory) {
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            used = Math.min(used, memory.getHeapMemoryUsage().getUsed());
+        }
+        return used;
+    }
+}
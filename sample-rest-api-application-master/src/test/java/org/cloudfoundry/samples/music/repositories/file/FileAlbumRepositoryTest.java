@@ -0,0 +1,199 @@
+package org.cloudfoundry.samples.music.repositories.file;
+
+import org.cloudfoundry.samples.music.domain.Album;
+import org.cloudfoundry.samples.music.domain.TimeOrderedIdGenerator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FileAlbumRepositoryTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private FileAlbumProperties properties;
+
+    private List<FileAlbumRepository> repositories = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        this.properties = new FileAlbumProperties();
+        this.properties.setDirectory(temporaryFolder.newFolder().toString());
+        this.properties.setInitialLogSize(256);
+        this.properties.setSnapshotInterval(Duration.ofHours(1));
+        this.properties.setFsync(false);
+    }
+
+    @After
+    public void tearDown() {
+        for (FileAlbumRepository repository : repositories) {
+            repository.close();
+        }
+    }
+
+    @Test
+    public void shouldRecoverAlbumsFromLog() {
+
+        // given:
+        FileAlbumRepository repository = open();
+        Album kept = repository.save(new Album("Kept", "Artist", "2000", "Rock"));
+        Album renamed = repository.save(new Album("Title", "Artist", "2000", "Rock"));
+        Album deleted = repository.save(new Album("Deleted", "Artist", "2000", "Rock"));
+        renamed.setTitle("Renamed");
+        repository.save(renamed);
+        repository.deleteById(deleted.getId());
+
+        // when:
+        repository.close();
+        FileAlbumRepository recovered = open();
+
+        // then:
+        assertEquals(2, recovered.count());
+        assertEquals("Kept", recovered.findById(kept.getId()).get().getTitle());
+        assertEquals("Renamed", recovered.findById(renamed.getId()).get().getTitle());
+        assertFalse(recovered.existsById(deleted.getId()));
+    }
+
+    @Test
+    public void shouldRecoverFromSnapshotAndLogTail() throws Exception {
+
+        // given:
+        FileAlbumRepository repository = open();
+        List<Album> albums = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            albums.add(new Album("Title " + i, "Artist", "2000", "Rock"));
+        }
+        repository.saveAll(albums);
+        repository.snapshot();
+        Album tail = repository.save(new Album("Tail", "Artist", "2001", "Pop"));
+        repository.deleteById(albums.get(0).getId());
+
+        // when:
+        repository.close();
+        FileAlbumRepository recovered = open();
+
+        // then:
+        assertEquals(50, recovered.count());
+        assertTrue(recovered.existsById(tail.getId()));
+        assertFalse(recovered.existsById(albums.get(0).getId()));
+        assertTrue(recovered.existsByArtistAndTitle("Artist", "Title 49"));
+        try (Stream<Path> files = Files.list(Paths.get(properties.getDirectory()))) {
+            assertEquals(2, files.count());
+        }
+    }
+
+    @Test
+    public void shouldDropTornRecordAtEndOfLog() throws Exception {
+
+        // given:
+        FileAlbumRepository repository = open();
+        Album first = repository.save(new Album("First", "Artist", "2000", "Rock"));
+        Album second = repository.save(new Album("Second", "Artist", "2000", "Rock"));
+        repository.close();
+        Path log = logFile();
+        try (RandomAccessFile file = new RandomAccessFile(log.toFile(), "rw")) {
+            // flips the last byte of the second album, as a write cut short by a crash would leave it
+            long end = Files.size(log);
+            while (end > 0) {
+                file.seek(--end);
+                if (file.read() != 0) {
+                    break;
+                }
+            }
+            file.seek(end);
+            file.write(0x7F);
+        }
+
+        // when:
+        FileAlbumRepository recovered = open();
+        Album third = recovered.save(new Album("Third", "Artist", "2000", "Rock"));
+        recovered.close();
+        FileAlbumRepository reopened = open();
+
+        // then:
+        assertTrue(reopened.existsById(first.getId()));
+        assertFalse(reopened.existsById(second.getId()));
+        assertTrue(reopened.existsById(third.getId()));
+    }
+
+    @Test
+    public void shouldPersistDeleteAll() {
+
+        // given:
+        FileAlbumRepository repository = open();
+        repository.save(new Album("Title", "Artist", "2000", "Rock"));
+
+        // when:
+        repository.deleteAll();
+        Album after = repository.save(new Album("After", "Artist", "2000", "Rock"));
+        repository.close();
+        FileAlbumRepository recovered = open();
+
+        // then:
+        assertEquals(1, recovered.count());
+        assertTrue(recovered.existsById(after.getId()));
+    }
+
+    @Test
+    public void shouldGrowLogBeyondInitialMapping() {
+
+        // given:
+        FileAlbumRepository repository = open();
+        for (int i = 0; i < 200; i++) {
+            repository.save(new Album("Title " + i, "Artist " + i, "2000", "Rock"));
+        }
+
+        // when:
+        repository.close();
+        FileAlbumRepository recovered = open();
+
+        // then:
+        assertEquals(200, recovered.count());
+        assertEquals(200, recovered.streamAll().map(Album::getArtist).collect(Collectors.toSet()).size());
+    }
+
+    @Test
+    public void shouldInsertOnlyIfArtistAndTitleAreFree() {
+
+        // given:
+        FileAlbumRepository repository = open();
+        repository.save(new Album("Title", "Artist", "2000", "Rock"));
+
+        // when:
+        boolean duplicate = repository.insertIfAbsent(new Album("Title", "Artist", "2001", "Pop"));
+        boolean other = repository.insertIfAbsent(new Album("Other", "Artist", "2001", "Pop"));
+
+        // then:
+        assertFalse(duplicate);
+        assertTrue(other);
+        assertEquals(2, repository.count());
+    }
+
+    private FileAlbumRepository open() {
+        FileAlbumRepository repository = new FileAlbumRepository(properties, new TimeOrderedIdGenerator());
+        repositories.add(repository);
+        return repository;
+    }
+
+    private Path logFile() throws Exception {
+        try (Stream<Path> files = Files.list(Paths.get(properties.getDirectory()))) {
+            return files.filter(path -> path.getFileName().toString().endsWith(".log")).findFirst().get();
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package org.cloudfoundry.samples.music.repositories.mongodb;
+
+import org.bson.Document;
+import org.cloudfoundry.samples.music.domain.Album;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexField;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(MockitoJUnitRunner.class)
+public class MongoAlbumIndexesTest {
+
+    @Mock
+    private MongoOperations mongoOperations;
+
+    @Mock
+    private IndexOperations indexOps;
+
+    @Before
+    public void setUp() {
+        Mockito.when(mongoOperations.indexOps(Album.class)).thenReturn(indexOps);
+    }
+
+    @Test
+    public void shouldCreateNonUniqueArtistTitleIndexByDefault() {
+        // given:
+        Mockito.when(indexOps.getIndexInfo()).thenReturn(
+                Collections.emptyList(),
+                Collections.singletonList(artistTitleIndex(false)));
+
+        // when:
+        new MongoAlbumIndexes(mongoOperations).afterPropertiesSet();
+
+        // then:
+        Mockito.verify(indexOps).ensureIndex(Mockito.argThat((IndexDefinition index) ->
+                !index.getIndexOptions().containsKey("unique")));
+        Mockito.verify(mongoOperations, Mockito.never()).aggregate(Mockito.any(Aggregation.class), Mockito.eq(Album.class), Mockito.eq(Document.class));
+    }
+
+    @Test
+    public void shouldKeepExistingArtistTitleIndexWhenUniquenessIsNotRequired() {
+        // given:
+        Mockito.when(indexOps.getIndexInfo()).thenReturn(Collections.singletonList(artistTitleIndex(true)));
+
+        // when:
+        new MongoAlbumIndexes(mongoOperations).afterPropertiesSet();
+
+        // then:
+        Mockito.verify(indexOps, Mockito.never()).dropIndex(Mockito.anyString());
+        Mockito.verify(indexOps, Mockito.never()).ensureIndex(Mockito.any());
+    }
+
+    @Test
+    public void shouldReplaceNonUniqueArtistTitleIndexWhenUniquenessIsRequired() {
+        // given:
+        Mockito.when(indexOps.getIndexInfo()).thenReturn(
+                Collections.singletonList(artistTitleIndex(false)),
+                Collections.singletonList(artistTitleIndex(true)));
+        duplicates();
+
+        // when:
+        new MongoAlbumIndexes(mongoOperations, unique()).afterPropertiesSet();
+
+        // then:
+        Mockito.verify(indexOps).dropIndex(MongoAlbumIndexes.ARTIST_TITLE_INDEX);
+        Mockito.verify(indexOps).ensureIndex(Mockito.argThat((IndexDefinition index) ->
+                Boolean.TRUE.equals(index.getIndexOptions().get("unique"))));
+    }
+
+    @Test
+    public void shouldNameDuplicateAlbumsBeforeTouchingTheIndex() {
+        // given:
+        Mockito.when(indexOps.getIndexInfo()).thenReturn(Collections.singletonList(artistTitleIndex(false)));
+        duplicates(new Document("_id", new Document("artist", "Nirvana").append("title", "Nevermind")).append("albums", 2));
+
+        try {
+            // when:
+            new MongoAlbumIndexes(mongoOperations, unique()).afterPropertiesSet();
+            fail();
+        } catch (IllegalStateException e) {
+            // then:
+            assertTrue(e.getMessage().contains("Nevermind"));
+            assertTrue(e.getMessage().contains("remove the duplicates"));
+            Mockito.verify(indexOps, Mockito.never()).dropIndex(Mockito.anyString());
+            Mockito.verify(indexOps, Mockito.never()).ensureIndex(Mockito.any());
+        }
+    }
+
+    @Test
+    public void shouldFailStartupWhenDuplicateAlbumsArriveDuringUniqueIndexBuild() {
+        // given:
+        Mockito.when(indexOps.getIndexInfo()).thenReturn(Collections.emptyList());
+        duplicates();
+        Mockito.when(indexOps.ensureIndex(Mockito.any())).thenThrow(new DuplicateKeyException("E11000 duplicate key error"));
+
+        try {
+            // when:
+            new MongoAlbumIndexes(mongoOperations, unique()).afterPropertiesSet();
+            fail();
+        } catch (IllegalStateException e) {
+            // then:
+            assertTrue(e.getMessage().contains("remove the duplicates"));
+            assertEquals(DuplicateKeyException.class, e.getCause().getClass());
+        }
+    }
+
+    private void duplicates(Document... found) {
+        Mockito.when(mongoOperations.aggregate(Mockito.any(Aggregation.class), Mockito.eq(Album.class), Mockito.eq(Document.class)))
+                .thenReturn(new AggregationResults<>(Arrays.asList(found), new Document()));
+    }
+
+    private static MongoAlbumProperties unique() {
+        MongoAlbumProperties properties = new MongoAlbumProperties();
+        properties.setUniqueArtistTitle(true);
+        return properties;
+    }
+
+    private static IndexInfo artistTitleIndex(boolean unique) {
+        return new IndexInfo(Arrays.asList(IndexField.create("artist", Sort.Direction.ASC), IndexField.create("title", Sort.Direction.ASC)),
+                MongoAlbumIndexes.ARTIST_TITLE_INDEX, unique, false, null);
+    }
+}
@@ -0,0 +1,207 @@
+package org.cloudfoundry.samples.music.repositories.offheap;
+
+import org.cloudfoundry.samples.music.domain.Album;
+import org.cloudfoundry.samples.music.domain.AlbumPage;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class OffHeapAlbumRepositoryTest {
+
+    private OffHeapAlbumRepository repository;
+
+    @Before
+    public void setUp() {
+        OffHeapAlbumProperties properties = new OffHeapAlbumProperties();
+        properties.setSlabSize(4096);
+        properties.setInitialCapacity(4);
+        this.repository = new OffHeapAlbumRepository(properties);
+    }
+
+    @Test
+    public void shouldSaveAndFindAlbum() {
+
+        // given:
+        Album album = new Album("Title", "Artist", "2000", "Rock");
+        album.setTrackCount(12);
+
+        // when:
+        repository.save(album);
+
+        // then:
+        assertNotNull(album.getId());
+        Album found = repository.findById(album.getId()).get();
+        assertEquals("Title", found.getTitle());
+        assertEquals("Artist", found.getArtist());
+        assertEquals("2000", found.getReleaseYear());
+        assertEquals("Rock", found.getGenre());
+        assertEquals(Integer.valueOf(12), found.getTrackCount());
+        assertTrue(repository.existsById(album.getId()));
+        assertFalse(repository.findById("missing").isPresent());
+        assertEquals(1, repository.count());
+    }
+
+    @Test
+    public void shouldReplaceAlbumAndItsArtistTitleEntry() {
+
+        // given:
+        Album album = repository.save(new Album("Title", "Artist", "2000", "Rock"));
+
+        // when:
+        Album renamed = new Album("Other Title", "Artist", "2000", "Rock");
+        renamed.setId(album.getId());
+        repository.save(renamed);
+
+        // then:
+        assertEquals("Other Title", repository.findById(album.getId()).get().getTitle());
+        assertEquals(1, repository.count());
+        assertFalse(repository.existsByArtistAndTitle("Artist", "Title"));
+        assertTrue(repository.existsByArtistAndTitle(" artist ", "OTHER TITLE"));
+    }
+
+    @Test
+    public void shouldInsertOnlyIfArtistAndTitleAreFree() {
+
+        // given:
+        Album first = repository.save(new Album("Title", "Artist", "2000", "Rock"));
+
+        // when:
+        boolean duplicate = repository.insertIfAbsent(new Album("title", "ARTIST", "2001", "Pop"));
+        boolean other = repository.insertIfAbsent(new Album("Other", "Artist", "2001", "Pop"));
+        boolean same = repository.insertIfAbsent(first);
+
+        // then:
+        assertFalse(duplicate);
+        assertTrue(other);
+        assertTrue(same);
+        assertEquals(2, repository.count());
+    }
+
+    @Test
+    public void shouldDeleteAlbums() {
+
+        // given:
+        Album first = repository.save(new Album("First", "Artist", "2000", "Rock"));
+        Album second = repository.save(new Album("Second", "Artist", "2000", "Rock"));
+
+        // when:
+        repository.deleteById(first.getId());
+
+        // then:
+        assertFalse(repository.findById(first.getId()).isPresent());
+        assertFalse(repository.existsByArtistAndTitle("Artist", "First"));
+        assertTrue(repository.existsById(second.getId()));
+
+        // when:
+        repository.deleteAll();
+
+        // then:
+        assertEquals(0, repository.count());
+        assertEquals(0, repository.getAllocatedBytes());
+    }
+
+    @Test
+    public void shouldCompactSlabsOnceMostlyDead() {
+
+        // given:
+        List<Album> albums = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            albums.add(new Album("Title " + i, "Artist", "2000", "Rock"));
+        }
+        repository.saveAll(albums);
+        long liveBytes = repository.getLiveBytes();
+
+        // when:
+        for (int round = 0; round < 10; round++) {
+            for (Album album : albums) {
+                album.setTrackCount(round);
+                repository.save(album);
+            }
+        }
+
+        // then:
+        assertTrue(repository.getAllocatedBytes() <= 4 * Math.max(liveBytes, 4096));
+        assertEquals(100, repository.count());
+        for (Album album : albums) {
+            Album found = repository.findById(album.getId()).get();
+            assertEquals(album.getTitle(), found.getTitle());
+            assertEquals(Integer.valueOf(9), found.getTrackCount());
+            assertTrue(repository.existsByArtistAndTitle("Artist", album.getTitle()));
+        }
+    }
+
+    @Test
+    public void shouldPageInIdOrder() {
+
+        // given:
+        for (int i = 0; i < 25; i++) {
+            repository.save(new Album("Title " + i, "Artist", "2000", "Rock"));
+        }
+        List<String> ids = new ArrayList<>();
+        repository.findAll().forEach(album -> ids.add(album.getId()));
+        ids.sort(null);
+
+        // when:
+        List<String> paged = new ArrayList<>();
+        String position = null;
+        do {
+            AlbumPage page = repository.findPage(position, 10);
+            page.getAlbums().forEach(album -> paged.add(album.getId()));
+            position = page.getNextPosition();
+        } while (position != null);
+
+        // then:
+        assertEquals(ids, paged);
+        assertNull(repository.findPage(ids.get(24), 10).getNextPosition());
+        try (Stream<Album> stream = repository.streamAll()) {
+            assertEquals(ids, stream.map(Album::getId).collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    public void shouldKeepPagesInIdOrderThroughUpdatesAndCompaction() {
+
+        // given:
+        List<Album> albums = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            albums.add(new Album("Title " + i, "Artist", "2000", "Rock"));
+        }
+        repository.saveAll(albums);
+        List<String> ids = albums.stream().map(Album::getId).sorted().collect(Collectors.toList());
+        repository.findPage(null, 10);
+
+        // when:
+        for (int round = 0; round < 10; round++) {
+            for (Album album : albums) {
+                album.setTrackCount(round);
+                repository.save(album);
+            }
+        }
+        repository.save(new Album("Late", "Artist", "2000", "Rock"));
+
+        // then:
+        AlbumPage page = repository.findPage(ids.get(49), 10);
+        assertEquals(ids.subList(50, 60), page.getAlbums().stream().map(Album::getId).collect(Collectors.toList()));
+        page.getAlbums().forEach(album -> assertEquals(Integer.valueOf(9), album.getTrackCount()));
+        try (Stream<Album> stream = repository.streamAll()) {
+            assertEquals(101, stream.count());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectNullId() {
+
+        // when:
+        repository.findById(null);
+    }
+}
@@ -0,0 +1,115 @@
+package org.cloudfoundry.samples.music.repositories.redis;
+
+import org.cloudfoundry.samples.music.domain.Album;
+import org.junit.Test;
+import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class AlbumRedisSerializerTest {
+
+    private AlbumRedisSerializer binarySerializer = new AlbumRedisSerializer(AlbumRedisSerializer.Codec.BINARY);
+
+    @Test
+    public void shouldRoundTripBinaryAlbum() {
+
+        // given:
+        Album album = createAlbum();
+
+        // when:
+        Album result = binarySerializer.deserialize(binarySerializer.serialize(album));
+
+        // then:
+        assertAlbumEquals(album, result);
+    }
+
+    @Test
+    public void shouldRoundTripBinaryAlbumWithMissingFields() {
+
+        // given:
+        Album album = new Album("Blue Train", null, null, null);
+
+        // when:
+        Album result = binarySerializer.deserialize(binarySerializer.serialize(album));
+
+        // then:
+        assertAlbumEquals(album, result);
+        assertNull(result.getTrackCount());
+    }
+
+    @Test
+    public void shouldReadLegacyJsonValues() {
+
+        // given:
+        Album album = createAlbum();
+        byte[] legacyValue = new Jackson2JsonRedisSerializer<>(Album.class).serialize(album);
+
+        // when:
+        Album result = binarySerializer.deserialize(legacyValue);
+
+        // then:
+        assertAlbumEquals(album, result);
+    }
+
+    @Test
+    public void shouldWriteSmallerValuesThanJson() {
+
+        // given:
+        Album album = createAlbum();
+
+        // when:
+        byte[] binaryValue = binarySerializer.serialize(album);
+        byte[] jsonValue = new AlbumRedisSerializer(AlbumRedisSerializer.Codec.JSON).serialize(album);
+
+        // then:
+        assertTrue(binaryValue.length * 3 < jsonValue.length * 2);
+    }
+
+    @Test
+    public void shouldKeepBenchmarkAlbumValueSizes() {
+
+        // given: the album AlbumRedisSerializerBenchmark encodes
+        Album album = new Album("The Dark Side of the Moon", "Pink Floyd", "1973", "Rock");
+        album.setId("5f1d7c2ab3e94c0d8a6f41e27b9c03d5");
+        album.setTrackCount(10);
+
+        // when:
+        byte[] binaryValue = binarySerializer.serialize(album);
+        byte[] jacksonValue = new Jackson2JsonRedisSerializer<>(Album.class).serialize(album);
+
+        // then:
+        assertEquals(83, binaryValue.length);
+        assertEquals(151, jacksonValue.length);
+    }
+
+    @Test(expected = SerializationException.class)
+    public void shouldRejectTruncatedBinaryValues() {
+
+        // given:
+        byte[] value = binarySerializer.serialize(createAlbum());
+
+        // when:
+        binarySerializer.deserialize(Arrays.copyOf(value, value.length - 3));
+    }
+
+    private Album createAlbum() {
+        Album album = new Album("Kind of Blue", "Miles Davis", "1959", "Jazz");
+        album.setId("c0ffee00c0ffee00c0ffee00c0ffee00");
+        album.setTrackCount(-5);
+        return album;
+    }
+
+    private void assertAlbumEquals(Album expected, Album actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getTitle(), actual.getTitle());
+        assertEquals(expected.getArtist(), actual.getArtist());
+        assertEquals(expected.getReleaseYear(), actual.getReleaseYear());
+        assertEquals(expected.getGenre(), actual.getGenre());
+        assertEquals(expected.getTrackCount(), actual.getTrackCount());
+    }
+}
@@ -0,0 +1,422 @@
+package org.cloudfoundry.samples.music.repositories.redis;
+
+import org.cloudfoundry.samples.music.domain.Album;
+import org.cloudfoundry.samples.music.domain.TimeOrderedIdGenerator;
+import org.cloudfoundry.samples.music.repositories.InvalidPageTokenException;
+import org.cloudfoundry.samples.music.repositories.PartialBatchWriteException;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RedisAlbumRepositoryTest {
+
+    private static RedisServer redisServer;
+
+    private static LettuceConnectionFactory connectionFactory;
+
+    private static RedisTemplate<String, Album> redisTemplate;
+
+    @BeforeClass
+    public static void startRedis() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        redisServer = new RedisServer(port);
+        redisServer.start();
+
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("localhost", port));
+        connectionFactory.afterPropertiesSet();
+
+        redisTemplate = template(new AlbumRedisSerializer(AlbumRedisSerializer.Codec.JSON));
+    }
+
+    private static RedisTemplate<String, Album> template(RedisSerializer<Album> albumSerializer) {
+        RedisTemplate<String, Album> template = new RedisTemplate<>();
+        template.setConnectionFactory(connectionFactory);
+        template.setKeySerializer(new StringRedisSerializer());
+        template.setHashKeySerializer(new StringRedisSerializer());
+        template.setValueSerializer(albumSerializer);
+        template.setHashValueSerializer(albumSerializer);
+        template.afterPropertiesSet();
+        return template;
+    }
+
+    @AfterClass
+    public static void stopRedis() {
+        connectionFactory.destroy();
+        redisServer.stop();
+    }
+
+    @Before
+    public void flushRedis() {
+        redisTemplate.execute((RedisCallback<Void>) connection -> {
+            connection.flushDb();
+            return null;
+        });
+    }
+
+    @Test
+    public void shouldKeepOriginalKeysWithSingleShard() {
+
+        // given:
+        RedisAlbumRepository repository = new RedisAlbumRepository(new RedisTemplate<String, Album>());
+
+        // when:
+        int shard = repository.shardOf("any-id");
+
+        // then:
+        assertEquals(0, shard);
+        assertEquals(RedisAlbumRepository.ALBUMS_KEY, repository.albumsKey(shard));
+        assertEquals(RedisAlbumRepository.ARTIST_TITLE_INDEX_KEY, repository.indexKey(shard));
+        assertEquals(RedisAlbumRepository.ARTIST_TITLE_BY_ID_KEY, repository.byIdKey(shard));
+    }
+
+    @Test
+    public void shouldSpreadIdsOverHashTaggedShards() {
+
+        // given:
+        RedisAlbumProperties properties = new RedisAlbumProperties();
+        properties.setShards(8);
+        RedisAlbumRepository repository = new RedisAlbumRepository(new RedisTemplate<String, Album>(), properties);
+        TimeOrderedIdGenerator idGenerator = new TimeOrderedIdGenerator();
+
+        // when:
+        Set<Integer> shards = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            shards.add(repository.shardOf(idGenerator.generateId()));
+        }
+
+        // then:
+        assertEquals(8, shards.size());
+        assertEquals("albums:{3}", repository.albumsKey(3));
+        assertEquals("albums:{3}:index:artist-title", repository.indexKey(3));
+        assertEquals("albums:{3}:index:artist-title-by-id", repository.byIdKey(3));
+    }
+
+    @Test
+    public void shouldRejectMalformedPagePositions() {
+
+        // given:
+        RedisAlbumProperties properties = new RedisAlbumProperties();
+        properties.setShards(4);
+        RedisAlbumRepository repository = new RedisAlbumRepository(new RedisTemplate<String, Album>(), properties);
+
+        for (String position : new String[]{"x:0", "1:cursor", "4:0", "-1:0", "1:"}) {
+            try {
+                // when:
+                repository.findPage(position, 10);
+                fail("expected " + position + " to be rejected");
+            } catch (InvalidPageTokenException e) {
+                // then:
+                assertTrue(e.getMessage().contains(position));
+            }
+        }
+    }
+
+    @Test
+    public void shouldIndexAlbumsStoredBeforeTheIndexExisted() {
+
+        // given:
+        redisTemplate.opsForHash().put(RedisAlbumRepository.ALBUMS_KEY, "a1", album("a1", "Nevermind"));
+        redisTemplate.opsForHash().put(RedisAlbumRepository.ALBUMS_KEY, "a2", album("a2", "In Utero"));
+        RedisAlbumRepository repository = new RedisAlbumRepository(redisTemplate);
+
+        // when:
+        repository.afterPropertiesSet();
+
+        // then:
+        assertTrue(repository.existsByArtistAndTitle("Nirvana", "Nevermind"));
+        assertTrue(repository.existsByArtistAndTitle("nirvana ", "IN UTERO"));
+        assertFalse(repository.insertIfAbsent(album(null, "Nevermind")));
+        assertTrue(redisTemplate.hasKey(RedisAlbumRepository.INDEX_BACKFILLED_KEY));
+    }
+
+    @Test
+    public void shouldBackfillShardedIndexOnlyOnce() {
+
+        // given:
+        RedisAlbumProperties properties = new RedisAlbumProperties();
+        properties.setShards(4);
+        RedisAlbumRepository repository = new RedisAlbumRepository(redisTemplate, properties);
+        for (int i = 0; i < 20; i++) {
+            String id = "a" + i;
+            redisTemplate.opsForHash().put(repository.albumsKey(repository.shardOf(id)), id, album(id, "Album " + i));
+        }
+        repository.afterPropertiesSet();
+        redisTemplate.opsForHash().put(repository.albumsKey(repository.shardOf("late")), "late", album("late", "Late"));
+
+        // when:
+        new RedisAlbumRepository(redisTemplate, properties).afterPropertiesSet();
+
+        // then:
+        for (int i = 0; i < 20; i++) {
+            assertTrue(repository.existsByArtistAndTitle("Nirvana", "Album " + i));
+        }
+        assertFalse(repository.existsByArtistAndTitle("Nirvana", "Late"));
+    }
+
+    @Test
+    public void shouldRefuseToStartWithAnotherShardCount() {
+
+        // given:
+        repository(4).save(album("a1", "Nevermind"));
+
+        try {
+            // when:
+            repository(8);
+            fail("expected a changed shard count to be refused");
+        } catch (IllegalStateException e) {
+            // then:
+            assertTrue(e.getMessage().contains("written with 4 shards"));
+        }
+        assertEquals(1, repository(4).count());
+    }
+
+    @Test
+    public void shouldRefuseToShardAlbumsStoredBeforeTheShardCountWasRecorded() {
+
+        // given:
+        redisTemplate.opsForHash().put(RedisAlbumRepository.ALBUMS_KEY, "a1", album("a1", "Nevermind"));
+
+        try {
+            // when:
+            repository(4);
+            fail("expected the unsharded albums hash to be refused");
+        } catch (IllegalStateException e) {
+            // then:
+            assertTrue(e.getMessage().contains(RedisAlbumRepository.ALBUMS_KEY));
+        }
+        assertFalse(redisTemplate.hasKey(RedisAlbumRepository.SHARDS_KEY));
+        assertEquals(1, repository(1).count());
+    }
+
+    @Test
+    public void shouldRejectSavingAlbumUnderAnotherAlbumsArtistAndTitle() {
+        for (int shards : new int[]{1, 4}) {
+            flushRedis();
+
+            // given:
+            RedisAlbumRepository repository = repository(shards);
+            repository.save(album("a1", "Nevermind"));
+
+            try {
+                // when:
+                repository.save(album("a2", " NEVERMIND"));
+                fail("expected a duplicate with " + shards + " shards to be rejected");
+            } catch (DuplicateKeyException e) {
+                // then:
+                assertFalse(repository.existsById("a2"));
+                assertEquals("a1", hashField(repository.indexKey(repository.shardOf(field("Nevermind"))), field("Nevermind")));
+            }
+        }
+    }
+
+    @Test
+    public void shouldReleaseFormerArtistAndTitleWhenAlbumIsRenamed() {
+        for (int shards : new int[]{1, 4}) {
+            flushRedis();
+
+            // given:
+            RedisAlbumRepository repository = repository(shards);
+            repository.save(album("a1", "Nevermind"));
+
+            // when:
+            repository.save(album("a1", "In Utero"));
+
+            // then:
+            assertFalse(repository.existsByArtistAndTitle("Nirvana", "Nevermind"));
+            assertTrue(repository.existsByArtistAndTitle("Nirvana", "In Utero"));
+            assertTrue(repository.insertIfAbsent(album("a2", "Nevermind")));
+        }
+    }
+
+    @Test
+    public void shouldReportEachDuplicateOfPartiallySavedBatch() {
+        for (int shards : new int[]{1, 4}) {
+            flushRedis();
+
+            // given:
+            RedisAlbumRepository repository = repository(shards);
+            repository.save(album("a1", "Nevermind"));
+
+            try {
+                // when:
+                repository.saveAll(Arrays.asList(album("a2", "Bleach"), album("a3", "Nevermind"), album("a4", "In Utero"), album("a5", "bleach")));
+                fail("expected duplicates with " + shards + " shards to be rejected");
+            } catch (PartialBatchWriteException e) {
+                // then:
+                assertEquals(new HashSet<>(Arrays.asList(1, 3)), e.getFailures().keySet());
+                assertTrue(e.getFailures().get(1) instanceof DuplicateKeyException);
+                assertTrue(repository.existsById("a2"));
+                assertTrue(repository.existsById("a4"));
+                assertFalse(repository.existsById("a3"));
+                assertFalse(repository.existsById("a5"));
+                assertEquals(3, repository.count());
+            }
+        }
+    }
+
+    @Test
+    public void shouldReleaseClaimedArtistAndTitleWhenInsertFails() {
+
+        // given:
+        RedisAlbumProperties properties = new RedisAlbumProperties();
+        properties.setShards(4);
+        RedisAlbumRepository repository = new RedisAlbumRepository(template(new AlbumRedisSerializer(AlbumRedisSerializer.Codec.JSON) {
+            @Override
+            public byte[] serialize(Album album) {
+                if ("Broken".equals(album.getTitle())) {
+                    throw new SerializationException("cannot write " + album.getTitle());
+                }
+                return super.serialize(album);
+            }
+        }), properties);
+
+        try {
+            // when:
+            repository.insertIfAbsent(album("a1", "Broken"));
+            fail();
+        } catch (SerializationException e) {
+            // then:
+            assertFalse(repository.existsByArtistAndTitle("Nirvana", "Broken"));
+            assertFalse(repository.existsById("a1"));
+        }
+    }
+
+    @Test
+    public void shouldReleaseArtistAndTitleOfDeletedAlbums() {
+        for (int shards : new int[]{1, 4}) {
+            flushRedis();
+
+            // given:
+            RedisAlbumRepository repository = repository(shards);
+            for (int i = 0; i < 12; i++) {
+                repository.save(album("a" + i, "Album " + i));
+            }
+
+            // when:
+            repository.deleteById("a0");
+            repository.deleteAll(Arrays.asList(album("a1", "Album 1"), album("a2", "Album 2"), album("missing", "Missing")));
+
+            // then:
+            assertEquals(9, repository.count());
+            for (int i = 0; i < 3; i++) {
+                assertFalse(repository.existsByArtistAndTitle("Nirvana", "Album " + i));
+                assertNull(hashField(repository.byIdKey(repository.shardOf("a" + i)), "a" + i));
+                assertTrue(repository.insertIfAbsent(album("b" + i, "Album " + i)));
+            }
+            assertTrue(repository.existsByArtistAndTitle("Nirvana", "Album 3"));
+        }
+    }
+
+    @Test
+    public void shouldLeaveMissingIdsOutOfFindAllById() {
+
+        // given:
+        RedisAlbumRepository repository = repository(4);
+        repository.save(album("a1", "Nevermind"));
+        repository.save(album("a2", "In Utero"));
+
+        // when:
+        Iterable<Album> albums = repository.findAllById(Arrays.asList("a2", "missing", "a1"));
+
+        // then:
+        List<String> ids = new ArrayList<>();
+        albums.forEach(album -> ids.add(album.getId()));
+        assertEquals(Arrays.asList("a2", "a1"), ids);
+    }
+
+    @Test
+    public void shouldScanEveryShardEachTimeFindAllIsIterated() {
+
+        // given:
+        RedisAlbumRepository repository = repository(4);
+        for (int i = 0; i < 20; i++) {
+            repository.save(album("a" + i, "Album " + i));
+        }
+        Iterable<Album> albums = repository.findAll();
+
+        // when:
+        Set<String> before = new HashSet<>();
+        albums.forEach(album -> before.add(album.getId()));
+        repository.save(album("a20", "Album 20"));
+        Set<String> after = new HashSet<>();
+        albums.forEach(album -> after.add(album.getId()));
+
+        // then:
+        assertEquals(20, before.size());
+        assertEquals(21, after.size());
+        assertTrue(after.contains("a20"));
+    }
+
+    @Test
+    public void shouldCountAndDeleteAllShards() {
+
+        // given:
+        RedisAlbumRepository repository = repository(4);
+        for (int i = 0; i < 20; i++) {
+            repository.save(album("a" + i, "Album " + i));
+        }
+
+        // when:
+        long count = repository.count();
+        repository.deleteAll();
+
+        // then:
+        assertEquals(20, count);
+        assertEquals(0, repository.count());
+        assertFalse(repository.existsByArtistAndTitle("Nirvana", "Album 0"));
+        assertEquals(new HashSet<>(Arrays.asList(RedisAlbumRepository.INDEX_BACKFILLED_KEY, RedisAlbumRepository.SHARDS_KEY)), redisTemplate.keys("*"));
+    }
+
+    private static RedisAlbumRepository repository(int shards) {
+        RedisAlbumProperties properties = new RedisAlbumProperties();
+        properties.setShards(shards);
+        RedisAlbumRepository repository = new RedisAlbumRepository(redisTemplate, properties);
+        repository.afterPropertiesSet();
+        return repository;
+    }
+
+    private static String hashField(String key, String field) {
+        byte[] value = redisTemplate.execute((RedisCallback<byte[]>) connection ->
+                connection.hGet(key.getBytes(StandardCharsets.UTF_8), field.getBytes(StandardCharsets.UTF_8)));
+        return value == null ? null : new String(value, StandardCharsets.UTF_8);
+    }
+
+    private static String field(String title) {
+        return RedisAlbumRepository.artistTitleKey("Nirvana", title);
+    }
+
+    private static Album album(String id, String title) {
+        Album album = new Album(title, "Nirvana", "1991", "Rock");
+        album.setId(id);
+        return album;
+    }
+}
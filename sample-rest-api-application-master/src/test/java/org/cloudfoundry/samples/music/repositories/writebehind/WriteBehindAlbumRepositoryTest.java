@@ -0,0 +1,187 @@
+package org.cloudfoundry.samples.music.repositories.writebehind;
+
+import org.cloudfoundry.samples.music.domain.Album;
+import org.cloudfoundry.samples.music.domain.TimeOrderedIdGenerator;
+import org.cloudfoundry.samples.music.repositories.InMemoryAlbumRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class WriteBehindAlbumRepositoryTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private InMemoryAlbumRepository backend;
+
+    private WriteBehindProperties properties;
+
+    private List<WriteBehindAlbumRepository> repositories = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        this.backend = new InMemoryAlbumRepository();
+        this.properties = new WriteBehindProperties();
+        this.properties.setJournal(temporaryFolder.newFolder().toPath().resolve("albums.journal").toString());
+        this.properties.setFlushInterval(Duration.ofHours(1));
+        this.properties.setFsync(false);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (WriteBehindAlbumRepository repository : repositories) {
+            repository.close();
+        }
+    }
+
+    @Test
+    public void shouldReadOwnWritesBeforeFlush() {
+
+        // given:
+        WriteBehindAlbumRepository repository = repository(backend);
+
+        // when:
+        Album album = repository.save(new Album("Title", "Artist", "2000", "Rock"));
+
+        // then:
+        assertTrue(backend.getAlbums().isEmpty());
+        assertEquals("Title", repository.findById(album.getId()).get().getTitle());
+        assertEquals(1, count(repository.findAll()));
+        assertTrue(repository.existsByArtistAndTitle("Artist", "Title"));
+        assertEquals(1, repository.getPendingWrites());
+
+        repository.deleteById(album.getId());
+        assertEquals(Optional.empty(), repository.findById(album.getId()));
+        assertEquals(0, count(repository.findAll()));
+    }
+
+    @Test
+    public void shouldFlushLastWritePerAlbum() {
+
+        // given:
+        WriteBehindAlbumRepository repository = repository(backend);
+        Album album = repository.save(new Album("Title", "Artist", "2000", "Rock"));
+        Album renamed = new Album("Other Title", "Artist", "2000", "Rock");
+        renamed.setId(album.getId());
+        repository.save(renamed);
+
+        // when:
+        repository.flush();
+
+        // then:
+        assertEquals(1, backend.getAlbums().size());
+        assertEquals("Other Title", backend.getAlbums().get(album.getId()).getTitle());
+        assertEquals(0, repository.getPendingWrites());
+        assertEquals(1, repository.getFlushedWrites());
+    }
+
+    @Test
+    public void shouldReplayJournaledWritesAfterRestart() {
+
+        // given:
+        Album album = repository(backend).save(new Album("Title", "Artist", "2000", "Rock"));
+
+        // when: a second instance starts on the same journal before the first one flushed
+        InMemoryAlbumRepository restartedBackend = new InMemoryAlbumRepository();
+        WriteBehindAlbumRepository restarted = repository(restartedBackend);
+        restarted.flush();
+
+        // then:
+        assertEquals("Title", restartedBackend.getAlbums().get(album.getId()).getTitle());
+    }
+
+    @Test
+    public void shouldKeepWritesPendingWhenFlushFails() {
+
+        // given:
+        WriteBehindAlbumRepository repository = repository(backend);
+        Album album = repository.save(new Album("Title", "Artist", "2000", "Rock"));
+        backend.failSavesWith(new IllegalStateException("backend down"));
+
+        // when:
+        repository.flush();
+
+        // then:
+        assertEquals(1, repository.getPendingWrites());
+        assertEquals(1, repository.getFailedFlushes());
+        assertTrue(repository.findById(album.getId()).isPresent());
+
+        backend.failSavesWith(null);
+        repository.flush();
+        assertEquals(0, repository.getPendingWrites());
+        assertFalse(backend.getAlbums().isEmpty());
+    }
+
+    @Test
+    public void shouldSetAsideWriteTheRepositoryKeepsRejecting() throws Exception {
+
+        // given:
+        properties.setMaxAttempts(2);
+        WriteBehindAlbumRepository repository = repository(backend);
+        repository.saveAll(Arrays.asList(new Album("First", "Artist", "2000", "Rock"), new Album("Poison", "Artist", "2000", "Rock"),
+                new Album("Last", "Artist", "2000", "Rock")));
+        backend.rejectSavesOf("Poison");
+
+        // when:
+        repository.flush();
+        int pendingAfterFirstAttempt = repository.getPendingWrites();
+        repository.flush();
+
+        // then:
+        assertEquals(3, pendingAfterFirstAttempt);
+        assertEquals(0, repository.getPendingWrites());
+        assertEquals(2, backend.getAlbums().size());
+        assertEquals(1, repository.getSetAsideWrites());
+        String setAside = new String(Files.readAllBytes(Paths.get(properties.getJournal() + ".set-aside")), StandardCharsets.UTF_8);
+        assertTrue(setAside.contains("Poison"));
+    }
+
+    @Test
+    public void shouldNeverSetAsideWritesWhileRepositoryIsUnreachable() {
+
+        // given:
+        properties.setMaxAttempts(1);
+        WriteBehindAlbumRepository repository = repository(backend);
+        repository.save(new Album("Title", "Artist", "2000", "Rock"));
+        backend.failSavesWith(new DataAccessResourceFailureException("backend unreachable"));
+
+        // when:
+        repository.flush();
+        repository.flush();
+
+        // then:
+        assertEquals(1, repository.getPendingWrites());
+        assertEquals(2, repository.getFailedFlushes());
+        assertEquals(0, repository.getSetAsideWrites());
+    }
+
+    private WriteBehindAlbumRepository repository(InMemoryAlbumRepository delegate) {
+        WriteBehindAlbumRepository repository = new WriteBehindAlbumRepository(delegate, properties, new TimeOrderedIdGenerator());
+        repositories.add(repository);
+        return repository;
+    }
+
+    private static int count(Iterable<Album> albums) {
+        int count = 0;
+        for (Album ignored : albums) {
+            count++;
+        }
+        return count;
+    }
+}
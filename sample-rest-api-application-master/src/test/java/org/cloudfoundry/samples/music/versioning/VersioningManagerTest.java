@@ -0,0 +1,155 @@
+package org.cloudfoundry.samples.music.versioning;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.cloudfoundry.samples.music.domain.Album;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.MockHttpInputMessage;
+
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class VersioningManagerTest {
+
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void shouldPassRequestThroughWhenNoHandlerSupportsIt() {
+
+        // given:
+        VersioningManager versioningManager = new VersioningManager(objectMapper, Arrays.asList(new DefaultVersionHandler()));
+        MockHttpInputMessage inputMessage = new MockHttpInputMessage("{\"title\":\"Nevermind\"}".getBytes(StandardCharsets.UTF_8));
+
+        // when:
+        HttpInputMessage result = versioningManager.beforeBodyRead(inputMessage, Album.class);
+
+        // then:
+        assertSame(inputMessage, result);
+    }
+
+    @Test
+    public void shouldBindVersionedRequestFromTree() throws Exception {
+
+        // given:
+        VersionHandler renamingHandler = new VersionHandler() {
+            @Override
+            public void beforeBodyRead(JsonNode bodyJsonNode, Type targetType, LocalDate localDate) {
+                ((ObjectNode) bodyJsonNode).set("title", bodyJsonNode.get("name"));
+            }
+            @Override
+            public void beforeBodyWrite(JsonNode bodyJsonNode, Class<?> returnType, LocalDate localDate) {
+            }
+        };
+        VersioningManager versioningManager = new VersioningManager(objectMapper, Arrays.asList(new DefaultVersionHandler(), renamingHandler));
+        MockHttpInputMessage inputMessage = new MockHttpInputMessage("{\"name\":\"Nevermind\"}".getBytes(StandardCharsets.UTF_8));
+        inputMessage.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+
+        // when:
+        HttpInputMessage result = versioningManager.beforeBodyRead(inputMessage, Album.class);
+        Album album = (Album) new VersioningJackson2HttpMessageConverter(objectMapper.copy().disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES))
+                .read(Album.class, null, result);
+
+        // then:
+        assertTrue(result instanceof JsonNodeInputMessage);
+        assertEquals("Nevermind", album.getTitle());
+    }
+
+    @Test
+    public void shouldReturnResponseBodyUnchangedWhenChainIsEmpty() {
+
+        // given:
+        VersionHandler datedHandler = new AlbumHandler(LocalDate.parse("2017-01-01"));
+        VersioningManager versioningManager = new VersioningManager(objectMapper, Arrays.asList(new DefaultVersionHandler(), datedHandler));
+        Album album = new Album("Nevermind", "Nirvana", "1991", "Rock");
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(VersioningManager.VERSION_HEADER_NAME, "2018-01-01");
+
+        // when:
+        Object result = versioningManager.beforeBodyWrite(album, headers);
+
+        // then:
+        assertSame(album, result);
+    }
+
+    @Test
+    public void shouldCompileChainFromDeclaredTypesAndDates() {
+
+        // given:
+        VersionHandler datedHandler = new AlbumHandler(LocalDate.parse("2017-01-01"));
+        VersioningManager versioningManager = new VersioningManager(objectMapper, Arrays.asList(new DefaultVersionHandler(), datedHandler));
+        LocalDate oldVersion = LocalDate.parse("2016-06-01");
+
+        // when:
+        List<VersionHandler> albumChain = versioningManager.getChain(Album.class, oldVersion);
+        List<VersionHandler> newAlbumChain = versioningManager.getChain(Album.class, LocalDate.parse("2017-01-02"));
+        List<VersionHandler> stringChain = versioningManager.getChain(String.class, oldVersion);
+
+        // then:
+        assertEquals(Arrays.asList(datedHandler), albumChain);
+        assertSame(albumChain, versioningManager.getChain(Album.class, oldVersion));
+        assertTrue(newAlbumChain.isEmpty());
+        assertTrue(stringChain.isEmpty());
+    }
+
+    @Test
+    public void shouldKeepRecentlyUsedChainsCachedPastTheLimit() {
+
+        // given:
+        VersioningManager versioningManager = new VersioningManager(objectMapper, Arrays.asList(new AlbumHandler(LocalDate.MAX)));
+        LocalDate today = LocalDate.parse("2018-03-01");
+        List<VersionHandler> todayChain = versioningManager.getChain(Album.class, today);
+        List<VersionHandler> firstPastChain = versioningManager.getChain(Album.class, today.minusDays(1));
+
+        // when:
+        for (int i = 2; i <= VersioningManager.MAX_CACHED_CHAINS * 2; i++) {
+            versioningManager.getChain(Album.class, today.minusDays(i));
+            versioningManager.getChain(Album.class, today);
+        }
+
+        // then:
+        assertSame(todayChain, versioningManager.getChain(Album.class, today));
+        assertNotSame(firstPastChain, versioningManager.getChain(Album.class, today.minusDays(1)));
+    }
+
+    private static class AlbumHandler implements VersionHandler {
+
+        private final LocalDate versionUntil;
+
+        AlbumHandler(LocalDate versionUntil) {
+            this.versionUntil = versionUntil;
+        }
+
+        @Override
+        public Collection<Class<?>> getTargetTypes() {
+            return Collections.singleton(Album.class);
+        }
+
+        @Override
+        public LocalDate getVersionUntil() {
+            return versionUntil;
+        }
+
+        @Override
+        public void beforeBodyRead(JsonNode bodyJsonNode, Type targetType, LocalDate localDate) {
+        }
+
+        @Override
+        public void beforeBodyWrite(JsonNode bodyJsonNode, Class<?> returnType, LocalDate localDate) {
+        }
+    }
+}
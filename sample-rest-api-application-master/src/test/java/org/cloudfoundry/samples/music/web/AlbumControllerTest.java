@@ -1,21 +1,46 @@
 package org.cloudfoundry.samples.music.web;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.cloudfoundry.samples.music.domain.Album;
+import org.cloudfoundry.samples.music.domain.AlbumPage;
+import org.cloudfoundry.samples.music.domain.BatchItemResult;
 import org.cloudfoundry.samples.music.errors.ApplicationException;
+import org.cloudfoundry.samples.music.latency.LatencyProperties;
+import org.cloudfoundry.samples.music.latency.LatencySimulator;
+import org.cloudfoundry.samples.music.repositories.AlbumRepository;
+import org.cloudfoundry.samples.music.repositories.AlbumSeedHealthIndicator;
+import org.cloudfoundry.samples.music.repositories.AlbumsSeededEvent;
+import org.cloudfoundry.samples.music.repositories.InvalidPageTokenException;
+import org.cloudfoundry.samples.music.repositories.PartialBatchWriteException;
 import org.cloudfoundry.samples.music.validators.AlbumCreateRequestValidator;
+import org.cloudfoundry.samples.music.versioning.DefaultVersionHandler;
+import org.cloudfoundry.samples.music.versioning.VersionedResponseCache;
+import org.cloudfoundry.samples.music.versioning.VersioningManager;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.util.UriComponents;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import javax.validation.Validation;
+import javax.validation.Validator;
 import java.net.URI;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.junit.Assert.*;
@@ -34,23 +59,136 @@ public class AlbumControllerTest {
     @Mock
     private AlbumCreateRequestValidator albumCreateRequestValidator;
 
+    private LatencySimulator latencySimulator = new LatencySimulator(new LatencyProperties());
+
+    private Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
+
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    private VersionedResponseCache responseCache = new VersionedResponseCache(
+            new VersioningManager(objectMapper, Collections.singletonList(new DefaultVersionHandler())), objectMapper, 16, 1 << 20, Duration.ofMinutes(1));
+
     @Before
     public void setUp() {
-        this.albumController = new AlbumController(this.repository, albumCreateRequestValidator);
+        this.albumController = new AlbumController(this.repository, albumCreateRequestValidator, latencySimulator, validator, responseCache);
     }
 
     @Test
     public void shouldGetAlbums() throws Exception {
         // given:
-        Iterable<Album> expectedAlbums = Mockito.mock(Iterable.class);
+        List<Album> expectedAlbums = Arrays.asList(new Album("Nevermind", "Nirvana", "1991", "Rock"));
         Mockito.when(repository.findAll()).thenReturn(expectedAlbums);
 
         // when:
-        ResponseEntity<Iterable<Album>> albums = this.albumController.albums(null);
+        ResponseEntity<byte[]> albums = this.albumController.albums(null, new HttpHeaders()).get();
 
         // then:
         assertEquals(HttpStatus.OK, albums.getStatusCode());
-        assertSame(expectedAlbums, albums.getBody());
+        assertArrayEquals(objectMapper.writeValueAsBytes(expectedAlbums), albums.getBody());
+    }
+
+    @Test
+    public void shouldServeCachedAlbumsUntilAlbumIsWritten() throws Exception {
+        // given:
+        Album album = new Album("Nevermind", "Nirvana", "1991", "Rock");
+        Mockito.when(repository.findAll()).thenReturn(Arrays.asList(album));
+        Mockito.when(repository.save(album)).thenReturn(album);
+
+        // when:
+        byte[] first = this.albumController.albums(null, new HttpHeaders()).get().getBody();
+        byte[] cached = this.albumController.albums(null, new HttpHeaders()).get().getBody();
+        this.albumController.update("aid", album);
+        this.albumController.albums(null, new HttpHeaders()).get();
+
+        // then:
+        assertSame(first, cached);
+        Mockito.verify(repository, Mockito.times(2)).findAll();
+    }
+
+    @Test
+    public void shouldRenderAlbumsAgainOnceCachedBodyExpires() throws Exception {
+        // given:
+        VersionedResponseCache shortLivedCache = new VersionedResponseCache(
+                new VersioningManager(objectMapper, Collections.singletonList(new DefaultVersionHandler())), objectMapper, 16, 1 << 20, Duration.ofMillis(1));
+        AlbumController controller = new AlbumController(this.repository, albumCreateRequestValidator, latencySimulator, validator, shortLivedCache);
+        Mockito.when(repository.findAll()).thenReturn(Arrays.asList(new Album("Nevermind", "Nirvana", "1991", "Rock")));
+
+        // when:
+        controller.albums(null, new HttpHeaders()).get();
+        Thread.sleep(5);
+        controller.albums(null, new HttpHeaders()).get();
+
+        // then:
+        Mockito.verify(repository, Mockito.times(2)).findAll();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldGetAlbumsPageWithNextLink() throws Exception {
+        // given:
+        CrudRepository<Album, String> pagingRepository = Mockito.mock(CrudRepository.class, Mockito.withSettings().extraInterfaces(AlbumRepository.class));
+        AlbumController pagingController = new AlbumController(pagingRepository, albumCreateRequestValidator, latencySimulator, validator, responseCache);
+        List<Album> expectedAlbums = Arrays.asList(new Album(), new Album());
+        Mockito.when(((AlbumRepository) pagingRepository).findPage("a1", 2)).thenReturn(new AlbumPage(expectedAlbums, "a3"));
+
+        // when:
+        ResponseEntity<List<Album>> page = pagingController.albumsPage(2, "YTE", UriComponentsBuilder.fromUriString("http://localhost")).get();
+
+        // then:
+        assertEquals(HttpStatus.OK, page.getStatusCode());
+        assertSame(expectedAlbums, page.getBody());
+        assertEquals("<http://localhost/albums?limit=2&after=YTM>; rel=\"next\"", page.getHeaders().getFirst("Link"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldRejectPageTokenTheRepositoryCannotRead() {
+        // given:
+        CrudRepository<Album, String> pagingRepository = Mockito.mock(CrudRepository.class, Mockito.withSettings().extraInterfaces(AlbumRepository.class));
+        AlbumController pagingController = new AlbumController(pagingRepository, albumCreateRequestValidator, latencySimulator, validator, responseCache);
+        Mockito.when(((AlbumRepository) pagingRepository).findPage("a1", 2)).thenThrow(new InvalidPageTokenException("Malformed album page position a1"));
+
+        try {
+            // when:
+            pagingController.albumsPage(2, "YTE", UriComponentsBuilder.fromUriString("http://localhost"));
+            fail();
+        } catch (ApplicationException e) {
+            // then:
+            assertEquals(HttpStatus.BAD_REQUEST, e.getStatus());
+            assertEquals("invalid-page-token", e.getErrors().get(0).getSubcode());
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldNotBlamePageTokenForOtherRepositoryFailures() {
+        // given:
+        CrudRepository<Album, String> pagingRepository = Mockito.mock(CrudRepository.class, Mockito.withSettings().extraInterfaces(AlbumRepository.class));
+        AlbumController pagingController = new AlbumController(pagingRepository, albumCreateRequestValidator, latencySimulator, validator, responseCache);
+        IllegalArgumentException failure = new IllegalArgumentException("limit must be positive");
+        Mockito.when(((AlbumRepository) pagingRepository).findPage("a1", 2)).thenThrow(failure);
+
+        try {
+            // when:
+            pagingController.albumsPage(2, "YTE", UriComponentsBuilder.fromUriString("http://localhost"));
+            fail();
+        } catch (IllegalArgumentException e) {
+            // then:
+            assertSame(failure, e);
+        }
+    }
+
+    @Test
+    public void shouldFailToGetAlbumsPageUsingInvalidLimit() {
+        try {
+            // when:
+            this.albumController.albumsPage(0, null, this.uriBuilder);
+            fail();
+        } catch (ApplicationException e) {
+            // then:
+            assertEquals(HttpStatus.BAD_REQUEST, e.getStatus());
+            assertEquals("invalid-page-limit", e.getErrors().get(0).getSubcode());
+        }
     }
 
     @Test
@@ -74,6 +212,52 @@ public class AlbumControllerTest {
         assertSame(expectedAlbum, response.getBody());
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldFailToAddAlbumWhenInsertLosesRace() {
+        // given:
+        CrudRepository<Album, String> albumRepository = Mockito.mock(CrudRepository.class, Mockito.withSettings().extraInterfaces(AlbumRepository.class));
+        AlbumController controller = new AlbumController(albumRepository, albumCreateRequestValidator, latencySimulator, validator, responseCache);
+        Album album = new Album("Nevermind", "Nirvana", "1991", "Rock");
+        Mockito.when(((AlbumRepository) albumRepository).insertIfAbsent(album)).thenReturn(false);
+
+        try {
+            // when:
+            controller.add(album, this.uriBuilder);
+            fail();
+        } catch (ApplicationException e) {
+            // then:
+            assertEquals(HttpStatus.BAD_REQUEST, e.getStatus());
+            assertEquals(AlbumCreateRequestValidator.ALREADY_EXISTS_CODE, e.getErrors().get(0).getCode());
+            Mockito.verify(albumRepository, Mockito.never()).save(album);
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldReportBatchCreatesThatLoseRaceAsConflicts() {
+        // given:
+        CrudRepository<Album, String> albumRepository = Mockito.mock(CrudRepository.class, Mockito.withSettings().extraInterfaces(AlbumRepository.class));
+        AlbumController controller = new AlbumController(albumRepository, albumCreateRequestValidator, latencySimulator, validator, responseCache);
+        Album created = new Album("Nevermind", "Nirvana", "1991", "Rock");
+        Album raced = new Album("In Utero", "Nirvana", "1993", "Rock");
+        Album failed = new Album("Bleach", "Nirvana", "1989", "Rock");
+        Mockito.when(((AlbumRepository) albumRepository).insertIfAbsent(created)).thenReturn(true);
+        Mockito.when(((AlbumRepository) albumRepository).insertIfAbsent(raced)).thenReturn(false);
+        Mockito.when(((AlbumRepository) albumRepository).insertIfAbsent(failed)).thenThrow(new DataIntegrityViolationException("rejected"));
+
+        // when:
+        List<BatchItemResult> results = controller.addAll(Arrays.asList(created, raced, failed));
+
+        // then:
+        assertEquals(HttpStatus.CREATED.value(), results.get(0).getStatus());
+        assertSame(created, results.get(0).getAlbum());
+        assertEquals(HttpStatus.CONFLICT.value(), results.get(1).getStatus());
+        assertEquals(AlbumCreateRequestValidator.ALREADY_EXISTS_CODE, results.get(1).getErrors().get(0).getCode());
+        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR.value(), results.get(2).getStatus());
+        Mockito.verify(albumRepository, Mockito.never()).saveAll(Mockito.any());
+    }
+
     @Test
     public void shouldUpdateAlbum() {
         // given:
@@ -87,6 +271,45 @@ public class AlbumControllerTest {
         assertSame(expectedAlbum, album);
     }
 
+    @Test
+    public void shouldFailToUpdateAlbumToAnotherAlbumsArtistAndTitle() {
+        // given:
+        Album album = new Album("Nevermind", "Nirvana", "1991", "Rock");
+        Mockito.when(repository.save(album)).thenThrow(new DuplicateKeyException("Another album is already stored as Nirvana - Nevermind"));
+
+        try {
+            // when:
+            this.albumController.update("aid", album);
+            fail();
+        } catch (ApplicationException e) {
+            // then:
+            assertEquals(HttpStatus.BAD_REQUEST, e.getStatus());
+            assertEquals(AlbumCreateRequestValidator.ALREADY_EXISTS_CODE, e.getErrors().get(0).getCode());
+        }
+    }
+
+    @Test
+    public void shouldReportPartialBatchFailuresPerAlbum() {
+        // given:
+        Album saved = new Album("Nevermind", "Nirvana", "1991", "Rock");
+        Album duplicate = new Album("In Utero", "Nirvana", "1993", "Rock");
+        Album rejected = new Album("Bleach", "Nirvana", "1989", "Rock");
+        Map<Integer, DataAccessException> failures = new HashMap<>();
+        failures.put(1, new DuplicateKeyException("E11000 duplicate key error"));
+        failures.put(2, new DataIntegrityViolationException("Document failed validation"));
+        Mockito.when(repository.saveAll(Mockito.anyList())).thenThrow(new PartialBatchWriteException("2 of 3 albums could not be saved", failures, null));
+
+        // when:
+        List<BatchItemResult> results = this.albumController.updateAll(Arrays.asList(withId(saved, "a1"), withId(duplicate, "a2"), withId(rejected, "a3")));
+
+        // then:
+        assertEquals(HttpStatus.OK.value(), results.get(0).getStatus());
+        assertSame(saved, results.get(0).getAlbum());
+        assertEquals(HttpStatus.BAD_REQUEST.value(), results.get(1).getStatus());
+        assertEquals(AlbumCreateRequestValidator.ALREADY_EXISTS_CODE, results.get(1).getErrors().get(0).getCode());
+        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR.value(), results.get(2).getStatus());
+    }
+
     @Test
     public void shoulGetById() {
         // given:
@@ -119,6 +342,60 @@ public class AlbumControllerTest {
         }
     }
 
+    @Test
+    public void shouldRejectAlbumRequestsWhileSeeding() {
+
+        // given:
+        AlbumSeedHealthIndicator seedHealthIndicator = Mockito.mock(AlbumSeedHealthIndicator.class);
+        Mockito.when(seedHealthIndicator.isSeeding()).thenReturn(true);
+        this.albumController.setSeedHealthIndicator(seedHealthIndicator);
+
+        try {
+            // when:
+            this.albumController.getById("aid");
+            fail();
+        } catch (ApplicationException e) {
+            // then:
+            assertEquals(HttpStatus.SERVICE_UNAVAILABLE, e.getStatus());
+            assertEquals("service-unavailable", e.getErrors().get(0).getCode());
+            Mockito.verifyZeroInteractions(repository);
+        }
+    }
+
+    @Test
+    public void shouldKeepRejectingAlbumRequestsAfterSeedingFailed() {
+
+        // given:
+        AlbumSeedHealthIndicator seedHealthIndicator = Mockito.mock(AlbumSeedHealthIndicator.class);
+        Mockito.when(seedHealthIndicator.hasFailed()).thenReturn(true);
+        this.albumController.setSeedHealthIndicator(seedHealthIndicator);
+
+        try {
+            // when:
+            this.albumController.getById("aid");
+            fail();
+        } catch (ApplicationException e) {
+            // then:
+            assertEquals(HttpStatus.SERVICE_UNAVAILABLE, e.getStatus());
+            assertEquals("seeding-failed", e.getErrors().get(0).getSubcode());
+            Mockito.verifyZeroInteractions(repository);
+        }
+    }
+
+    @Test
+    public void shouldRenderAlbumsAgainOnceSeeded() throws Exception {
+        // given:
+        Mockito.when(repository.findAll()).thenReturn(Arrays.asList(new Album("Nevermind", "Nirvana", "1991", "Rock")));
+        this.albumController.albums(null, new HttpHeaders()).get();
+
+        // when:
+        this.albumController.albumsSeeded(new AlbumsSeededEvent(this));
+        this.albumController.albums(null, new HttpHeaders()).get();
+
+        // then:
+        Mockito.verify(repository, Mockito.times(2)).findAll();
+    }
+
     @Test
     public void shouldDeleteById() {
         // given:
@@ -128,4 +405,8 @@ public class AlbumControllerTest {
         // then:
     }
 
-}
\ No newline at end of file
+    private static Album withId(Album album, String id) {
+        album.setId(id);
+        return album;
+    }
+}